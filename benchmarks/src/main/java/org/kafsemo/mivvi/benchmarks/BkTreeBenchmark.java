@@ -0,0 +1,125 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kafsemo.mivvi.algo.BkTree;
+import org.kafsemo.mivvi.algo.Metric;
+import org.kafsemo.mivvi.recognise.NormalisedString;
+import org.kafsemo.mivvi.recognise.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Building a {@link BkTree} over normalised episode titles, and querying it
+ * with slightly misspelt titles, for everything in range or just the
+ * nearest few.
+ *
+ * @author joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BkTreeBenchmark
+{
+    static final Metric<String> LEVENSHTEIN = new Metric<String>() {
+        public int dist(String a, String b)
+        {
+            return StringUtil.levenshteinDistanceBitParallel(a, b).distance;
+        }
+    };
+
+    @Param({"test-resources", "generated-100"})
+    public String catalogue;
+
+    @Param({"2"})
+    public int maxDistance;
+
+    private List<String> titles;
+    private String[] queries;
+    private BkTree<String> tree;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Catalogue c = Catalogue.named(catalogue);
+
+        titles = new ArrayList<String>();
+        for (int i = 0; i < c.series.size(); i++) {
+            for (String t : c.episodeTitles(c.series.get(i))) {
+                titles.add(new NormalisedString(t).toString());
+            }
+        }
+
+        /* Drop a character from the middle of some titles */
+        int n = Math.min(titles.size(), 100);
+        queries = new String[n];
+        for (int i = 0; i < n; i++) {
+            String t = titles.get(i * titles.size() / n);
+            queries[i] = t.substring(0, t.length() / 2) + t.substring(t.length() / 2 + 1);
+        }
+
+        tree = new BkTree<String>(LEVENSHTEIN, titles);
+    }
+
+    @Benchmark
+    public BkTree<String> build()
+    {
+        return new BkTree<String>(LEVENSHTEIN, titles);
+    }
+
+    @Benchmark
+    public List<String> find()
+    {
+        if (next >= queries.length) {
+            next = 0;
+        }
+
+        List<String> results = new ArrayList<String>();
+        tree.find(queries[next++], maxDistance, results);
+        return results;
+    }
+
+    @Benchmark
+    public List<BkTree.Neighbour<String>> nearest()
+    {
+        if (next >= queries.length) {
+            next = 0;
+        }
+
+        return tree.nearest(queries[next++], 3, maxDistance);
+    }
+}
@@ -0,0 +1,148 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * Series data for benchmarks to run against, with filenames that should
+ * be recognised.
+ *
+ * <p>A catalogue is named either <code>test-resources</code>, for the small
+ * shows used by the unit tests, or <code>generated-N</code>, for
+ * <code>N</code> generated series.</p>
+ *
+ * @author joe
+ */
+public class Catalogue
+{
+    /* From the test jar of mivvi-recognise */
+    private static final String[] TEST_RESOURCES = {
+        "named-episode-with-alternates-example",
+        "named-episode-tla",
+        "documentary"
+    };
+
+    private static final String[] TEST_FILENAMES = {
+        "Example Show - 1x01 - Named Episode.avi",
+        "Example Show - 1x02 - Theatre.avi",
+        "example.show.s02e01.hdtv.avi",
+        "Example Show - Alternate Title.avi",
+        "TLA - Named Episode.avi",
+        "Three-Letter Acronym - 1x1.avi",
+        "Documentary - Episode About Example Show.avi",
+        "Unknown Show - 1x01.avi"
+    };
+
+    public final SimpleSeriesData data;
+
+    /* Every series, in the order they were loaded */
+    public final List<URI> series;
+
+    /* Filenames that should be recognised */
+    public final List<String> filenames;
+
+    private Catalogue(SimpleSeriesData data, List<URI> series, List<String> filenames)
+    {
+        this.data = data;
+        this.series = Collections.unmodifiableList(series);
+        this.filenames = Collections.unmodifiableList(filenames);
+    }
+
+    public static Catalogue named(String name) throws IOException, URISyntaxException
+    {
+        if (name.equals("test-resources")) {
+            return testResources();
+        } else if (name.startsWith("generated-")) {
+            return generated(Integer.parseInt(name.substring("generated-".length())), 0);
+        } else {
+            throw new IllegalArgumentException("Unknown catalogue: " + name);
+        }
+    }
+
+    public static Catalogue testResources() throws IOException, URISyntaxException
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+        List<URI> series = new ArrayList<URI>();
+
+        for (String s : TEST_RESOURCES) {
+            ssd.load(Catalogue.class, "/org/kafsemo/mivvi/recognise/TestFilenameProcessor-" + s + ".txt");
+        }
+
+        series.add(new URI("http://www.example.com/#"));
+        series.add(new URI("http://www.example.com/tla/#"));
+        series.add(new URI("http://www.example.com/doc/#"));
+
+        List<String> filenames = new ArrayList<String>();
+        Collections.addAll(filenames, TEST_FILENAMES);
+
+        return new Catalogue(ssd, series, filenames);
+    }
+
+    /**
+     * Generate a catalogue with {@link CatalogueGenerator}, using its
+     * defaults for everything but the number of series.
+     *
+     * @param seriesCount
+     * @param seed
+     */
+    public static Catalogue generated(int seriesCount, long seed) throws IOException, URISyntaxException
+    {
+        CatalogueGenerator g = new CatalogueGenerator();
+        g.setSeriesCount(seriesCount);
+        g.setSeed(seed);
+
+        List<URI> series = new ArrayList<URI>();
+        List<String> filenames = new ArrayList<String>();
+
+        for (int i = 0; i < seriesCount; i++) {
+            CatalogueGenerator.Series s = g.series(i);
+            series.add(new URI(s.id));
+
+            for (CatalogueGenerator.Example e : g.examples(s, i)) {
+                filenames.add(e.filename);
+            }
+        }
+
+        return new Catalogue(g.toSimpleSeriesData(), series, filenames);
+    }
+
+    /**
+     * Every episode title of a series, primary and alternate.
+     */
+    public List<String> episodeTitles(URI s)
+    {
+        SeriesDetails<URI> sd = data.getSeriesDetails(s);
+
+        List<String> l = new ArrayList<String>();
+        for (EpisodeTitleDetails<URI> etd : sd.episodeTitlesAndDescriptions) {
+            l.add(etd.getTitle());
+        }
+        return l;
+    }
+}
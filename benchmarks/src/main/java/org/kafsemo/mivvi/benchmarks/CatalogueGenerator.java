@@ -0,0 +1,757 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * <p>Generates a catalogue of made-up series, as {@link SimpleSeriesData}
+ * text or Mivvi RDF/XML, and a corpus of filenames for its episodes with
+ * the episode each one should be recognised as.</p>
+ *
+ * <p>Each series has between one and <code>maxSeasons</code> seasons,
+ * of around <code>episodesPerSeason</code> episodes each, so ten thousand
+ * series with nine seasons of ten episodes come to about half a million
+ * episodes. Everything follows from the seed, and each series can be
+ * generated on its own, so large catalogues are written without holding
+ * them in memory.</p>
+ *
+ * <p>To write a catalogue to a directory:</p>
+ * <pre>
+ * java -cp benchmarks/target/benchmarks.jar org.kafsemo.mivvi.benchmarks.CatalogueGenerator \
+ *   /tmp/catalogue series=10000 seasons=9 episodes=10
+ * </pre>
+ *
+ * @author joe
+ */
+public class CatalogueGenerator
+{
+    private static final String[] WORDS = {
+        "night", "house", "blue", "river", "city", "doctor", "last", "secret",
+        "garden", "station", "north", "empire", "shadow", "signal", "harbour",
+        "winter", "crown", "engine", "island", "letter", "mirror", "orchard",
+        "paper", "quiet", "road", "silver", "tower", "valley", "wolf", "yard",
+        "zero", "angel", "bridge", "castle", "desert", "echo", "falcon",
+        "ghost", "hunter", "iron", "jungle", "king", "lantern", "market",
+        "nurse", "ocean", "palace", "queen", "rebel", "summer", "thunder",
+        "union", "voyage", "warden", "young", "academy", "border", "circle",
+        "detective", "evening", "frontier", "glass", "hospital", "inspector",
+        "justice", "kitchen", "lawyer", "machine", "neighbour", "office",
+        "pilot", "question", "railway", "school", "theater", "theatre",
+        "under", "village", "weekend", "family", "street", "friends",
+        "brothers", "sisters", "story", "line", "point", "west", "east",
+        "south", "code", "game", "time", "world", "life", "law", "order",
+        "fire", "water", "stone", "star", "moon", "sun", "heart", "mind"
+    };
+
+    private static final String[] NUMBERS = {
+        "One", "Two", "Three", "Four", "Five", "Six"
+    };
+
+    private static final String[] TAGS = {
+        "HDTV", "720p", "XviD", "x264", "WEB-DL", "PROPER"
+    };
+
+    private static final String BASE = "http://www.example.com/generated/";
+
+    private int seriesCount = 100;
+    private int maxSeasons = 5;
+    private int episodesPerSeason = 13;
+    private double alternateTitleRate = 0.1;
+    private double descriptionRate = 0.2;
+    private double articleRate = 0.3;
+    private double punctuationRate = 0.2;
+    private double noiseRate = 0.3;
+    private int filenamesPerSeries = 5;
+    private long seed;
+
+    /* Distinct series titles, generated on first use */
+    private String[] titles;
+
+    public void setSeriesCount(int seriesCount)
+    {
+        this.seriesCount = seriesCount;
+        this.titles = null;
+    }
+
+    public int getSeriesCount()
+    {
+        return seriesCount;
+    }
+
+    public void setMaxSeasons(int maxSeasons)
+    {
+        this.maxSeasons = maxSeasons;
+    }
+
+    /**
+     * Seasons have between half and one and a half times this many
+     * episodes.
+     *
+     * @param episodesPerSeason
+     */
+    public void setEpisodesPerSeason(int episodesPerSeason)
+    {
+        this.episodesPerSeason = episodesPerSeason;
+    }
+
+    /**
+     * The fraction of episodes with an alternate title.
+     *
+     * @param rate
+     */
+    public void setAlternateTitleRate(double rate)
+    {
+        this.alternateTitleRate = rate;
+    }
+
+    /**
+     * The fraction of series with a description, an alternate name such
+     * as an acronym.
+     *
+     * @param rate
+     */
+    public void setDescriptionRate(double rate)
+    {
+        this.descriptionRate = rate;
+    }
+
+    /**
+     * The fraction of series titles starting with "The".
+     *
+     * @param rate
+     */
+    public void setArticleRate(double rate)
+    {
+        this.articleRate = rate;
+        this.titles = null;
+    }
+
+    /**
+     * The fraction of titles with punctuation.
+     *
+     * @param rate
+     */
+    public void setPunctuationRate(double rate)
+    {
+        this.punctuationRate = rate;
+        this.titles = null;
+    }
+
+    /**
+     * How often each kind of noise is applied to a filename: a missing
+     * article, stripped punctuation, a misspelt title, lower case or a
+     * release tag.
+     *
+     * @param rate
+     */
+    public void setNoiseRate(double rate)
+    {
+        this.noiseRate = rate;
+    }
+
+    public void setFilenamesPerSeries(int count)
+    {
+        this.filenamesPerSeries = count;
+    }
+
+    public void setSeed(long seed)
+    {
+        this.seed = seed;
+        this.titles = null;
+    }
+
+    /**
+     * A generated series.
+     */
+    public static class Series
+    {
+        public final String id;
+        public final String title;
+        public final List<String> descriptions;
+
+        /* Episodes, in broadcast order */
+        public final List<Episode> episodes;
+
+        Series(String id, String title, List<String> descriptions, List<Episode> episodes)
+        {
+            this.id = id;
+            this.title = title;
+            this.descriptions = Collections.unmodifiableList(descriptions);
+            this.episodes = Collections.unmodifiableList(episodes);
+        }
+    }
+
+    /**
+     * A generated episode.
+     */
+    public static class Episode
+    {
+        public final String id;
+        public final int season, number;
+        public final String title;
+
+        /* Or null */
+        public final String alternateTitle;
+
+        Episode(String id, int season, int number, String title, String alternateTitle)
+        {
+            this.id = id;
+            this.season = season;
+            this.number = number;
+            this.title = title;
+            this.alternateTitle = alternateTitle;
+        }
+    }
+
+    /**
+     * A filename, with the series and episode it refers to.
+     */
+    public static class Example
+    {
+        public final String filename;
+        public final String series;
+        public final String episode;
+
+        Example(String filename, String series, String episode)
+        {
+            this.filename = filename;
+            this.series = series;
+            this.episode = episode;
+        }
+    }
+
+    private Random random(int i, int stream)
+    {
+        return new Random(seed * 1000003L + i * 31L + stream);
+    }
+
+    private static String capitalise(String w)
+    {
+        return Character.toUpperCase(w.charAt(0)) + w.substring(1);
+    }
+
+    private static String word(Random r)
+    {
+        return capitalise(WORDS[r.nextInt(WORDS.length)]);
+    }
+
+    private String title(Random r, int minWords, int maxWords)
+    {
+        int n = minWords + r.nextInt(maxWords - minWords + 1);
+
+        StringBuilder sb = new StringBuilder(word(r));
+
+        boolean punctuated = (n > 1 && r.nextDouble() < punctuationRate);
+        int p = punctuated ? 1 + r.nextInt(n - 1) : -1;
+        int form = r.nextInt(4);
+
+        for (int i = 1; i < n; i++) {
+            if (i == p) {
+                switch (form) {
+                    case 0:
+                        sb.append(": ");
+                        break;
+                    case 1:
+                        sb.append(" & ");
+                        break;
+                    case 2:
+                        sb.append("'s ");
+                        break;
+                    default:
+                        sb.append(", ");
+                }
+            } else {
+                sb.append(' ');
+            }
+            sb.append(word(r));
+        }
+
+        if (punctuated && form == 3 && r.nextBoolean()) {
+            sb.append('!');
+        }
+
+        return sb.toString();
+    }
+
+    private synchronized String[] titles()
+    {
+        if (titles == null) {
+            Random r = new Random(seed);
+            Set<String> seen = new HashSet<String>();
+
+            String[] t = new String[seriesCount];
+
+            for (int i = 0; i < seriesCount; i++) {
+                String s;
+                int attempts = 0;
+                do {
+                    s = title(r, 1 + attempts / 10, 3 + attempts / 10);
+                    if (r.nextDouble() < articleRate) {
+                        s = "The " + s;
+                    }
+                    attempts++;
+                } while (!seen.add(s.toLowerCase()));
+
+                t[i] = s;
+            }
+
+            titles = t;
+        }
+
+        return titles;
+    }
+
+    private static String acronym(String title)
+    {
+        StringBuilder sb = new StringBuilder();
+
+        for (String w : title.split("[^\\p{L}]+")) {
+            if (w.length() > 0 && !w.equals("The") && !w.equals("s")) {
+                sb.append(Character.toUpperCase(w.charAt(0)));
+            }
+        }
+
+        return sb.toString();
+    }
+
+    /**
+     * Generate a single series.
+     *
+     * @param i from zero to the series count
+     */
+    public Series series(int i)
+    {
+        String title = titles()[i];
+        String base = BASE + i + "/";
+
+        Random r = random(i, 0);
+
+        List<String> descriptions = new ArrayList<String>();
+        if (r.nextDouble() < descriptionRate) {
+            String a = acronym(title);
+            descriptions.add(a.length() > 1 ? a : title + " Show");
+        }
+
+        List<Episode> episodes = new ArrayList<Episode>();
+
+        int seasons = 1 + r.nextInt(maxSeasons);
+        for (int s = 1; s <= seasons; s++) {
+            int count = Math.max(1, episodesPerSeason / 2 + r.nextInt(episodesPerSeason + 1));
+
+            for (int e = 1; e <= count; e++) {
+                String t = title(r, 1, 4);
+
+                /* Two-part stories */
+                if (r.nextInt(20) == 0) {
+                    t = t + " Part " + NUMBERS[r.nextInt(2)];
+                }
+
+                String alt = null;
+                if (r.nextDouble() < alternateTitleRate) {
+                    alt = title(r, 1, 4);
+                }
+
+                episodes.add(new Episode(base + s + "/" + e + "#", s, e, t, alt));
+            }
+        }
+
+        return new Series(base + "#", title, descriptions, episodes);
+    }
+
+    /**
+     * Write a series in the format read by
+     * {@link SimpleSeriesData#load(java.io.Reader)}.
+     *
+     * @param s
+     * @param w
+     * @throws IOException
+     */
+    public static void writeSimpleSeriesData(Series s, Writer w) throws IOException
+    {
+        w.write(s.id);
+        w.write('\n');
+        w.write(s.title);
+        w.write('\n');
+        for (String d : s.descriptions) {
+            w.write(d);
+            w.write('\n');
+        }
+        w.write('\n');
+
+        for (Episode e : s.episodes) {
+            w.write(e.season + "x" + e.number + " " + e.id);
+            if (e.title != null) {
+                w.write(' ');
+                w.write(e.title);
+            }
+            w.write('\n');
+
+            if (e.alternateTitle != null) {
+                w.write(' ');
+                w.write(e.alternateTitle);
+                w.write('\n');
+            }
+        }
+    }
+
+    private static String xml(String s)
+    {
+        StringBuilder sb = new StringBuilder(s.length());
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            switch (c) {
+                case '&':
+                    sb.append("&amp;");
+                    break;
+                case '<':
+                    sb.append("&lt;");
+                    break;
+                case '>':
+                    sb.append("&gt;");
+                    break;
+                case '"':
+                    sb.append("&quot;");
+                    break;
+                default:
+                    sb.append(c);
+            }
+        }
+
+        return sb.toString();
+    }
+
+    private static void writeRdfXml(Series s, Writer w) throws IOException
+    {
+        w.write(" <mvi:Series rdf:about=\"" + xml(s.id) + "\" dc:title=\"" + xml(s.title) + "\">\n");
+        for (String d : s.descriptions) {
+            w.write("  <dc:description>" + xml(d) + "</dc:description>\n");
+        }
+        w.write("  <mvi:seasons>\n   <rdf:Bag>\n");
+
+        int season = 0;
+        int absolute = 0;
+
+        for (Episode e : s.episodes) {
+            if (e.season != season) {
+                if (season > 0) {
+                    w.write("      </rdf:Seq>\n     </mvi:episodes>\n    </mvi:Season>\n   </rdf:li>\n");
+                }
+                season = e.season;
+                w.write("   <rdf:li>\n    <mvi:Season mvi:seasonNumber=\"" + season + "\">\n");
+                w.write("     <mvi:episodes>\n      <rdf:Seq>\n");
+            }
+
+            absolute++;
+
+            w.write("       <rdf:li>\n        <mvi:Episode rdf:about=\"" + xml(e.id)
+                    + "\" mvi:episodeNumber=\"" + absolute + "\"");
+            if (e.title != null) {
+                w.write(" dc:title=\"" + xml(e.title) + "\"");
+            }
+            if (e.alternateTitle != null) {
+                w.write(" dc:description=\"" + xml(e.alternateTitle) + "\"");
+            }
+            w.write("/>\n       </rdf:li>\n");
+        }
+
+        if (season > 0) {
+            w.write("      </rdf:Seq>\n     </mvi:episodes>\n    </mvi:Season>\n   </rdf:li>\n");
+        }
+
+        w.write("   </rdf:Bag>\n  </mvi:seasons>\n </mvi:Series>\n");
+    }
+
+    /**
+     * Write every series as a single Mivvi RDF/XML document.
+     *
+     * @param w
+     * @throws IOException
+     */
+    public void writeRdfXml(Writer w) throws IOException
+    {
+        w.write("<?xml version=\"1.0\" encoding=\"utf-8\"?>\n\n");
+        w.write("<rdf:RDF xmlns:rdf=\"http://www.w3.org/1999/02/22-rdf-syntax-ns#\""
+                + " xmlns:mvi=\"http://mivvi.net/rdf#\""
+                + " xmlns:dc=\"http://purl.org/dc/elements/1.1/\">\n");
+
+        for (int i = 0; i < seriesCount; i++) {
+            writeRdfXml(series(i), w);
+        }
+
+        w.write("</rdf:RDF>\n");
+    }
+
+    private static String pad(int n)
+    {
+        return (n < 10 ? "0" : "") + n;
+    }
+
+    private static String stripPunctuation(String s)
+    {
+        return s.replace(" & ", " and ").replaceAll("[:!,']", "");
+    }
+
+    private static String misspell(Random r, String s)
+    {
+        if (s.length() < 4) {
+            return s;
+        }
+
+        int i = 1 + r.nextInt(s.length() - 2);
+        if (r.nextBoolean()) {
+            /* Drop a character */
+            return s.substring(0, i) + s.substring(i + 1);
+        } else {
+            /* Swap two */
+            return s.substring(0, i) + s.charAt(i + 1) + s.charAt(i) + s.substring(i + 2);
+        }
+    }
+
+    private Example example(Random r, Series s)
+    {
+        Episode e = s.episodes.get(r.nextInt(s.episodes.size()));
+
+        String series = s.title;
+        if (series.startsWith("The ") && r.nextDouble() < noiseRate) {
+            series = series.substring(4);
+        }
+        if (r.nextDouble() < noiseRate) {
+            series = stripPunctuation(series);
+        }
+
+        String title = e.title;
+        if (e.alternateTitle != null && r.nextBoolean()) {
+            title = e.alternateTitle;
+        }
+        if (r.nextDouble() < noiseRate) {
+            title = misspell(r, title);
+        }
+
+        String name;
+
+        switch (r.nextInt(5)) {
+            case 0:
+                name = series + " - " + e.season + "x" + pad(e.number) + " - " + title;
+                break;
+            case 1:
+                name = series.replace(' ', '.') + ".S" + pad(e.season) + "E" + pad(e.number);
+                break;
+            case 2:
+                name = series + " - " + title;
+                break;
+            case 3:
+                if (e.season < 10 && e.number < 100) {
+                    name = series + " " + e.season + pad(e.number) + " " + title;
+                } else {
+                    name = series + " " + e.season + "x" + pad(e.number);
+                }
+                break;
+            default:
+                name = series + " - Series " + e.season + " Episode " + e.number;
+        }
+
+        if (r.nextDouble() < noiseRate) {
+            name = name.toLowerCase();
+        }
+        if (r.nextDouble() < noiseRate) {
+            name = name + "." + TAGS[r.nextInt(TAGS.length)];
+        }
+
+        return new Example(name + ".avi", s.id, e.id);
+    }
+
+    /**
+     * Filenames for a single series.
+     *
+     * @param s a series from {@link #series(int)}
+     * @param i its index
+     * @return
+     */
+    public List<Example> examples(Series s, int i)
+    {
+        Random r = random(i, 1);
+
+        List<Example> l = new ArrayList<Example>(filenamesPerSeries);
+        for (int j = 0; j < filenamesPerSeries; j++) {
+            l.add(example(r, s));
+        }
+        return l;
+    }
+
+    /**
+     * Filenames for every series.
+     *
+     * @return
+     */
+    public List<Example> examples()
+    {
+        List<Example> l = new ArrayList<Example>();
+
+        for (int i = 0; i < seriesCount; i++) {
+            l.addAll(examples(series(i), i));
+        }
+
+        return l;
+    }
+
+    /**
+     * Write filenames as tab-separated lines of filename, series and
+     * episode.
+     *
+     * @param w
+     * @throws IOException
+     */
+    public void writeExamples(Writer w) throws IOException
+    {
+        for (int i = 0; i < seriesCount; i++) {
+            for (Example e : examples(series(i), i)) {
+                w.write(e.filename + "\t" + e.series + "\t" + e.episode + "\n");
+            }
+        }
+    }
+
+    /**
+     * Load every series into memory.
+     *
+     * @return
+     * @throws IOException
+     * @throws URISyntaxException
+     */
+    public SimpleSeriesData toSimpleSeriesData() throws IOException, URISyntaxException
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+
+        for (int i = 0; i < seriesCount; i++) {
+            StringWriter sw = new StringWriter();
+            writeSimpleSeriesData(series(i), sw);
+            ssd.load(new StringReader(sw.toString()));
+        }
+
+        return ssd;
+    }
+
+    private static Writer writer(File f) throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(new FileOutputStream(f), "utf-8"));
+    }
+
+    /**
+     * Write a catalogue to a directory: one text file per series under
+     * <code>series/</code>, <code>catalogue.rdf</code> and
+     * <code>filenames.tsv</code>.
+     *
+     * @param dir
+     * @throws IOException
+     */
+    public void writeTo(File dir) throws IOException
+    {
+        File seriesDir = new File(dir, "series");
+        if (!seriesDir.isDirectory() && !seriesDir.mkdirs()) {
+            throw new IOException("Unable to create " + seriesDir);
+        }
+
+        for (int i = 0; i < seriesCount; i++) {
+            Writer w = writer(new File(seriesDir, String.format("%06d.txt", i)));
+            try {
+                writeSimpleSeriesData(series(i), w);
+            } finally {
+                w.close();
+            }
+        }
+
+        Writer w = writer(new File(dir, "catalogue.rdf"));
+        try {
+            writeRdfXml(w);
+        } finally {
+            w.close();
+        }
+
+        w = writer(new File(dir, "filenames.tsv"));
+        try {
+            writeExamples(w);
+        } finally {
+            w.close();
+        }
+    }
+
+    public static void main(String[] args) throws IOException
+    {
+        if (args.length < 1) {
+            System.err.println("Usage: CatalogueGenerator <directory> [series=N] [seasons=N] [episodes=N]"
+                    + " [alternates=F] [descriptions=F] [articles=F] [punctuation=F] [noise=F]"
+                    + " [filenames=N] [seed=N]");
+            System.exit(5);
+        }
+
+        CatalogueGenerator g = new CatalogueGenerator();
+
+        for (int i = 1; i < args.length; i++) {
+            int e = args[i].indexOf('=');
+            if (e < 0) {
+                throw new IllegalArgumentException("Expected name=value: " + args[i]);
+            }
+
+            String n = args[i].substring(0, e), v = args[i].substring(e + 1);
+
+            if (n.equals("series")) {
+                g.setSeriesCount(Integer.parseInt(v));
+            } else if (n.equals("seasons")) {
+                g.setMaxSeasons(Integer.parseInt(v));
+            } else if (n.equals("episodes")) {
+                g.setEpisodesPerSeason(Integer.parseInt(v));
+            } else if (n.equals("alternates")) {
+                g.setAlternateTitleRate(Double.parseDouble(v));
+            } else if (n.equals("descriptions")) {
+                g.setDescriptionRate(Double.parseDouble(v));
+            } else if (n.equals("articles")) {
+                g.setArticleRate(Double.parseDouble(v));
+            } else if (n.equals("punctuation")) {
+                g.setPunctuationRate(Double.parseDouble(v));
+            } else if (n.equals("noise")) {
+                g.setNoiseRate(Double.parseDouble(v));
+            } else if (n.equals("filenames")) {
+                g.setFilenamesPerSeries(Integer.parseInt(v));
+            } else if (n.equals("seed")) {
+                g.setSeed(Long.parseLong(v));
+            } else {
+                throw new IllegalArgumentException("Unknown parameter: " + n);
+            }
+        }
+
+        g.writeTo(new File(args[0]));
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.kafsemo.mivvi.rdf.RdfMivviDataSource;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogue;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogueWriter;
+import org.kafsemo.mivvi.recognise.impl.IdentifierCodec;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Loading a generated catalogue, from {@link SimpleSeriesData} text,
+ * from RDF/XML through {@link RdfMivviDataSource} and from a
+ * {@link CompiledCatalogue}, up to having the details of every series.
+ *
+ * @author joe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CatalogueLoadBenchmark
+{
+    @Param({"100", "1000"})
+    public int seriesCount;
+
+    private String[] simple;
+    private byte[] rdf;
+    private Resource[] series;
+    private byte[] compiled;
+    private URI[] seriesUris;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        CatalogueGenerator g = new CatalogueGenerator();
+        g.setSeriesCount(seriesCount);
+
+        ValueFactory vf = SimpleValueFactory.getInstance();
+
+        simple = new String[seriesCount];
+        series = new Resource[seriesCount];
+        seriesUris = new URI[seriesCount];
+
+        for (int i = 0; i < seriesCount; i++) {
+            CatalogueGenerator.Series s = g.series(i);
+
+            StringWriter sw = new StringWriter();
+            CatalogueGenerator.writeSimpleSeriesData(s, sw);
+            simple[i] = sw.toString();
+
+            series[i] = vf.createIRI(s.id);
+            seriesUris[i] = new URI(s.id);
+        }
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledCatalogueWriter<URI>(IdentifierCodec.URIS).write(g.toSimpleSeriesData(), null, out);
+        compiled = out.toByteArray();
+
+        Writer w = new StringWriter();
+        g.writeRdfXml(w);
+        rdf = w.toString().getBytes("utf-8");
+    }
+
+    @Benchmark
+    public SimpleSeriesData loadSimpleSeriesData() throws Exception
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+
+        for (String s : simple) {
+            ssd.load(new StringReader(s));
+        }
+
+        return ssd;
+    }
+
+    @Benchmark
+    public int loadRdf() throws Exception
+    {
+        SailRepository sr = new SailRepository(new MemoryStore());
+        sr.initialize();
+
+        RepositoryConnection cn = sr.getConnection();
+        try {
+            RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+            ds.load(new ByteArrayInputStream(rdf), "http://www.example.com/generated/");
+
+            int episodes = 0;
+            for (Resource r : series) {
+                episodes += ds.getSeriesDetails(r).episodeNumbers.size();
+            }
+            return episodes;
+        } finally {
+            cn.close();
+            sr.shutDown();
+        }
+    }
+
+    @Benchmark
+    public int loadCompiled() throws Exception
+    {
+        CompiledCatalogue<URI> cc = new CompiledCatalogue<URI>(ByteBuffer.wrap(compiled), IdentifierCodec.URIS);
+
+        int episodes = 0;
+        for (URI u : seriesUris) {
+            episodes += cc.getSeriesDetails(u).episodeNumbers.size();
+        }
+        return episodes;
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.kafsemo.mivvi.recognise.FilenameMatch;
+import org.kafsemo.mivvi.recognise.FilenameProcessor;
+import org.kafsemo.mivvi.recognise.Matching;
+import org.kafsemo.mivvi.recognise.TitleMatching;
+import org.kafsemo.mivvi.recognise.impl.SimpleFileNamingData;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The stages of recognising a filename, and the whole thing, against a
+ * catalogue whose indexes have already been built. Each operation takes
+ * the next input in turn.
+ *
+ * @author joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class FilenameProcessorBenchmark
+{
+    @Param({"test-resources", "generated-1000"})
+    public String catalogue;
+
+    private FilenameProcessor<URI> fp;
+
+    private String[] filenames;
+
+    /* The series and remainder of each recognisable filename */
+    private URI[] series;
+    private String[] remainders;
+
+    /* What follows any episode code */
+    private String[] titles;
+
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Catalogue c = Catalogue.named(catalogue);
+
+        SimpleFileNamingData fnd = new SimpleFileNamingData();
+        fnd.addKeyword("HDTV");
+        fnd.addKeyword("XviD");
+
+        fp = new FilenameProcessor<URI>(c.data, fnd);
+
+        filenames = c.filenames.toArray(new String[c.filenames.size()]);
+
+        List<URI> sl = new ArrayList<URI>();
+        List<String> rl = new ArrayList<String>();
+        List<String> tl = new ArrayList<String>();
+
+        for (String f : filenames) {
+            /* Also builds every index used later */
+            fp.processName(f);
+
+            Matching<URI> m = fp.matchSeriesAllowingPrefix(f);
+            if (m == null) {
+                continue;
+            }
+
+            String remainder = f.substring(m.end);
+
+            Matching<URI> e = fp.findEpisode(m.getResource(), remainder);
+
+            sl.add(m.getResource());
+            rl.add(remainder);
+            tl.add(e != null ? remainder.substring(e.end) : remainder);
+        }
+
+        series = sl.toArray(new URI[sl.size()]);
+        remainders = rl.toArray(new String[rl.size()]);
+        titles = tl.toArray(new String[tl.size()]);
+    }
+
+    private int nextFilename()
+    {
+        if (next >= filenames.length) {
+            next = 0;
+        }
+        return next++;
+    }
+
+    private int nextRecognisable()
+    {
+        if (next >= series.length) {
+            next = 0;
+        }
+        return next++;
+    }
+
+    @Benchmark
+    public Matching<URI> matchSeriesAllowingPrefix() throws Exception
+    {
+        return fp.matchSeriesAllowingPrefix(filenames[nextFilename()]);
+    }
+
+    @Benchmark
+    public List<Matching<URI>> findEpisodes() throws Exception
+    {
+        int i = nextRecognisable();
+        return fp.findEpisodes(series[i], remainders[i]);
+    }
+
+    @Benchmark
+    public List<TitleMatching<URI>> getClosestEpisodes() throws Exception
+    {
+        int i = nextRecognisable();
+        return fp.getClosestEpisodes(series[i], titles[i]);
+    }
+
+    @Benchmark
+    public FilenameMatch<URI> processName() throws Exception
+    {
+        return fp.processName(filenames[nextFilename()]);
+    }
+}
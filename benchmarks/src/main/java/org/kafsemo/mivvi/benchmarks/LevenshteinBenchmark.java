@@ -0,0 +1,86 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kafsemo.mivvi.recognise.NormalisedString;
+import org.kafsemo.mivvi.recognise.StringUtil;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Edit distance between normalised episode titles and filename remainders.
+ *
+ * @author joe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class LevenshteinBenchmark
+{
+    /* Pairs of the same title, as it might appear after an episode code */
+    private static final String[][] PAIRS = {
+        {"Theater", "Theatre"},
+        {"Named Episode", "named.episode.hdtv.xvid-group"},
+        {"The Secret Garden of the North Station", "Secret Garden of the North Staton - Part One [720p]"}
+    };
+
+    @Param({"0", "1", "2"})
+    public int pair;
+
+    private String a, b;
+
+    @Setup
+    public void setUp()
+    {
+        a = new NormalisedString(PAIRS[pair][0]).toString();
+        b = new NormalisedString(PAIRS[pair][1]).toString();
+    }
+
+    @Benchmark
+    public StringUtil.LevenshteinResult levenshteinDistance()
+    {
+        return StringUtil.levenshteinDistance(a, b);
+    }
+
+    @Benchmark
+    public StringUtil.LevenshteinResult levenshteinDistanceBitParallel()
+    {
+        return StringUtil.levenshteinDistanceBitParallel(a, b);
+    }
+
+    @Benchmark
+    public StringUtil.LevenshteinResult levenshteinDistanceBounded()
+    {
+        return StringUtil.levenshteinDistanceBounded(a, b, a.length() / 3);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.kafsemo.mivvi.recognise.NormalisedString;
+import org.kafsemo.mivvi.recognise.Normaliser;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Normalising filenames, into a new string and into a reused buffer.
+ *
+ * @author joe
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class NormalisedStringBenchmark
+{
+    @Param({
+        "Example Show - 1x01 - Named Episode.avi",
+        "example.show.s02e01.hdtv.xvid-group.avi",
+        "Théâtre & Co. - Série 3 Épisode 12 - L'Été Dernier [720p].mkv"
+    })
+    public String filename;
+
+    private final Normaliser normaliser = new Normaliser();
+
+    @Benchmark
+    public NormalisedString newNormalisedString()
+    {
+        return new NormalisedString(filename);
+    }
+
+    @Benchmark
+    public int reusedNormaliser()
+    {
+        return normaliser.normalise(filename).length();
+    }
+}
@@ -0,0 +1,153 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.benchmarks;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.kafsemo.mivvi.app.SeriesData;
+import org.kafsemo.mivvi.rdf.Presentation;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Reads from one {@link SeriesData}, by a single thread and by as many
+ * threads as there are cores. Readers share a lock, so throughput across
+ * all threads should grow with the number of cores. Other thread counts
+ * can be tried with <code>-t</code>.
+ *
+ * @author joe
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SeriesDataContentionBenchmark
+{
+    @Param({"100"})
+    public int seriesCount;
+
+    private SeriesData sd;
+
+    private IRI[] series;
+    private IRI[] episodes;
+
+    /* Each thread works through the catalogue from its own place */
+    @State(Scope.Thread)
+    public static class Reader
+    {
+        int next;
+
+        @Setup
+        public void setUp()
+        {
+            next = (int) Thread.currentThread().getId();
+        }
+    }
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        CatalogueGenerator g = new CatalogueGenerator();
+        g.setSeriesCount(seriesCount);
+
+        ValueFactory vf = SimpleValueFactory.getInstance();
+
+        List<IRI> sl = new ArrayList<IRI>();
+        List<IRI> el = new ArrayList<IRI>();
+
+        for (int i = 0; i < seriesCount; i++) {
+            CatalogueGenerator.Series s = g.series(i);
+            sl.add(vf.createIRI(s.id));
+            for (CatalogueGenerator.Episode e : s.episodes) {
+                el.add(vf.createIRI(e.id));
+            }
+        }
+
+        series = sl.toArray(new IRI[0]);
+        episodes = el.toArray(new IRI[0]);
+
+        StringWriter w = new StringWriter();
+        g.writeRdfXml(w);
+
+        SailRepository sr = new SailRepository(new MemoryStore());
+        sr.initialize();
+
+        sd = new SeriesData();
+        sd.initMviRepository(sr);
+        sd.importMivvi(new ByteArrayInputStream(w.toString().getBytes("utf-8")),
+                "http://www.example.com/generated/");
+
+        /* Build the episode index before measuring */
+        sd.getDetailsFor(episodes[0]);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws Exception
+    {
+        sd.closeMviRepository();
+    }
+
+    private int read(Reader r) throws Exception
+    {
+        int i = r.next++ & Integer.MAX_VALUE;
+
+        IRI s = series[i % series.length];
+        Presentation.Details d = sd.getDetailsFor(episodes[i % episodes.length]);
+
+        return sd.getTitle(s).length() + sd.getSeasons(s).length + d.episodeNumber;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public int oneReader(Reader r) throws Exception
+    {
+        return read(r);
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public int allReaders(Reader r) throws Exception
+    {
+        return read(r);
+    }
+}
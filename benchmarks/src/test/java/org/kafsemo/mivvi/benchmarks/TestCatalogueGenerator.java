@@ -0,0 +1,179 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.benchmarks;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayInputStream;
+import java.io.StringWriter;
+import java.net.URI;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.Test;
+import org.kafsemo.mivvi.rdf.RdfMivviDataSource;
+import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.FilenameMatch;
+import org.kafsemo.mivvi.recognise.FilenameProcessor;
+import org.kafsemo.mivvi.recognise.Item;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+import org.kafsemo.mivvi.recognise.impl.SimpleFileNamingData;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+public class TestCatalogueGenerator
+{
+    private static CatalogueGenerator generator(int seriesCount)
+    {
+        CatalogueGenerator g = new CatalogueGenerator();
+        g.setSeriesCount(seriesCount);
+        g.setSeed(1);
+        return g;
+    }
+
+    private static String rdfXml(CatalogueGenerator g) throws Exception
+    {
+        StringWriter sw = new StringWriter();
+        g.writeRdfXml(sw);
+        return sw.toString();
+    }
+
+    @Test
+    public void sameSeedGivesSameCatalogue() throws Exception
+    {
+        assertEquals(rdfXml(generator(20)), rdfXml(generator(20)));
+
+        StringWriter a = new StringWriter(), b = new StringWriter();
+        generator(20).writeExamples(a);
+        generator(20).writeExamples(b);
+        assertEquals(a.toString(), b.toString());
+    }
+
+    @Test
+    public void seriesTitlesAreDistinct()
+    {
+        CatalogueGenerator g = generator(2000);
+
+        Set<String> titles = new HashSet<String>();
+        for (int i = 0; i < g.getSeriesCount(); i++) {
+            assertTrue(titles.add(g.series(i).title.toLowerCase()));
+        }
+    }
+
+    private static Map<String, String> asStrings(SeriesDetails<?> sd)
+    {
+        Map<String, String> m = new HashMap<String, String>();
+        for (Map.Entry<String, ?> e : sd.episodesByNumber.entrySet()) {
+            m.put(e.getKey(), e.getValue().toString());
+        }
+        return m;
+    }
+
+    private static Set<String> titles(SeriesDetails<?> sd)
+    {
+        Set<String> s = new HashSet<String>();
+        for (EpisodeTitleDetails<?> etd : sd.episodeTitlesAndDescriptions) {
+            s.add(etd.getResource() + " " + etd.getTitle() + " " + etd.isPrimary());
+        }
+        return s;
+    }
+
+    @Test
+    public void textAndRdfDescribeTheSameCatalogue() throws Exception
+    {
+        CatalogueGenerator g = generator(50);
+        g.setAlternateTitleRate(0.5);
+        g.setDescriptionRate(0.5);
+        g.setPunctuationRate(0.5);
+
+        SimpleSeriesData ssd = g.toSimpleSeriesData();
+
+        SailRepository sr = new SailRepository(new MemoryStore());
+        sr.initialize();
+        RepositoryConnection cn = sr.getConnection();
+
+        try {
+            RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+            ds.load(new ByteArrayInputStream(rdfXml(g).getBytes("utf-8")), "http://www.example.com/");
+
+            Set<String> simpleLabels = new HashSet<String>(), rdfLabels = new HashSet<String>();
+            for (Item<URI> i : ssd.getSeriesTitles()) {
+                simpleLabels.add(i.label + " " + i.resource);
+            }
+            for (Item<URI> i : ssd.getSeriesDescriptions()) {
+                simpleLabels.add(i.label + " " + i.resource);
+            }
+            for (Item<Resource> i : ds.getSeriesTitles()) {
+                rdfLabels.add(i.label + " " + i.resource);
+            }
+            for (Item<Resource> i : ds.getSeriesDescriptions()) {
+                rdfLabels.add(i.label + " " + i.resource);
+            }
+            assertEquals(simpleLabels, rdfLabels);
+
+            for (int i = 0; i < g.getSeriesCount(); i++) {
+                String id = g.series(i).id;
+
+                SeriesDetails<URI> a = ssd.getSeriesDetails(new URI(id));
+                SeriesDetails<Resource> b = ds.getSeriesDetails(SimpleValueFactory.getInstance().createIRI(id));
+
+                assertEquals(asStrings(a), asStrings(b));
+                assertEquals(titles(a), titles(b));
+            }
+        } finally {
+            cn.close();
+            sr.shutDown();
+        }
+    }
+
+    @Test
+    public void filenamesAreMostlyRecognised() throws Exception
+    {
+        CatalogueGenerator g = generator(200);
+
+        SimpleFileNamingData fnd = new SimpleFileNamingData();
+        fnd.addKeyword("HDTV");
+
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(g.toSimpleSeriesData(), fnd);
+
+        List<CatalogueGenerator.Example> examples = g.examples();
+
+        int correct = 0;
+        for (CatalogueGenerator.Example e : examples) {
+            assertNotNull(e.filename);
+
+            FilenameMatch<URI> m = fp.processName(e.filename);
+            if (m != null && m.episode.toString().equals(e.episode)) {
+                correct++;
+            }
+        }
+
+        /* Noise makes some genuinely ambiguous */
+        assertTrue(correct + " / " + examples.size(), correct >= examples.size() * 9 / 10);
+    }
+}
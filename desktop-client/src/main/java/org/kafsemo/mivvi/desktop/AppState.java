@@ -99,8 +99,12 @@ public class AppState
         this.decisions = new Decisions();
         this.userState = new UserState(cfg, this.decisions);
 
-        sesameRep = new SailRepository(new MemoryStore());
-        sesameRep.initialize();
+        if (cfg.isCataloguePersistent()) {
+            sesameRep = SeriesData.createNativeRepository(cfg.getCatalogueDirectory());
+        } else {
+            sesameRep = new SailRepository(new MemoryStore());
+            sesameRep.initialize();
+        }
 
         localFiles = new LocalFiles();
         localFiles.initLocalFiles();
@@ -167,6 +171,9 @@ public class AppState
             InvocationTargetException
     {
         seriesData = new SeriesData();
+        if (cfg.isCataloguePersistent()) {
+            seriesData.setSourceHashFile(cfg.getCatalogueSourcesFile());
+        }
         seriesData.initMviRepository(sesameRep);
         metaData = new MetaData(seriesData);
 
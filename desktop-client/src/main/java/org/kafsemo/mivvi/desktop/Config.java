@@ -40,6 +40,8 @@ public class Config
     
     private final String[] dataUrls;
 
+    private final boolean persistentCatalogue;
+
     Config(AppPaths dirs) throws IOException, URISyntaxException
     {
         this.appDirs = dirs;
@@ -65,6 +67,10 @@ public class Config
         }
         
         this.dataUrls = l.toArray(new String[l.size()]);
+
+        /* 'memory' to read series data in again each time, or 'native' to keep it on disk */
+        String store = System.getProperty("mivvi.catalogue.store", p.getProperty("catalogue.store", "memory"));
+        this.persistentCatalogue = store.equals("native");
     }
 
     public UriSetFile getUriSetFile(String collectionName) throws IOException
@@ -92,6 +98,21 @@ public class Config
         return dataUrls;
     }
 
+    public boolean isCataloguePersistent()
+    {
+        return persistentCatalogue;
+    }
+
+    public File getCatalogueDirectory() throws IOException
+    {
+        return new File(appDirs.getCacheDirectory(), "catalogue");
+    }
+
+    public File getCatalogueSourcesFile() throws IOException
+    {
+        return new File(getCatalogueDirectory(), "sources.properties");
+    }
+
     public File getFeedListFile() throws IOException
     {
         return new File(appDirs.getConfigDirectory(), "feeds.xml");
@@ -25,8 +25,9 @@ import java.awt.event.WindowAdapter;
 import java.awt.event.WindowEvent;
 import java.io.IOException;
 import java.lang.reflect.InvocationTargetException;
-import java.util.Iterator;
 import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 import javax.swing.JFrame;
 import javax.swing.JMenu;
@@ -85,25 +86,22 @@ public class Gui extends JFrame
             return false;
         }
 
-        pr.setMaximum(mivviUrls.size());
-
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
         try {
-            int p = 0;
-            Iterator<String> ui = mivviUrls.iterator();
-            while (ui.hasNext()) {
-                String s = ui.next();
-                pr.setNote("Reading " + s + "...");
-//                URL u = new URL(s);
-                seriesData.importMivvi(s);
-//                rep.addData(u, s, RDFFormat.RDFXML, true, RdfUtil.getErrorAdminListener(u.toString()));
-                p++;
-                pr.setProgress(p);
-                if (pr.isCanceled()) {
-                    return false;
-                }
+            if (!seriesData.importMivvi(mivviUrls, executor, pr)) {
+                return false;
             }
         } catch (IOException ioe) {
-            System.err.println(ioe);
+            /* Sources are imported together, so nothing has been loaded */
+            pr.setComplete();
+            synchronousAlert("Unable to read Mivvi data; nothing was loaded.\n" + ioe);
+            return false;
+        } catch (RDFParseException rpe) {
+            pr.setComplete();
+            synchronousAlert("Unable to parse Mivvi data; nothing was loaded.\n" + rpe);
+            return false;
+        } finally {
+            executor.shutdown();
         }
         
         pr.setComplete();
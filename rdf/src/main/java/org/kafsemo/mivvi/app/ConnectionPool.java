@@ -0,0 +1,112 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.app;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+
+/**
+ * Connections to a repository, for readers to borrow one each. A
+ * connection isn't safe to share between threads, but the repository
+ * behind it is, so each concurrent reader gets its own. Connections are
+ * opened as needed and kept for reuse until the pool is closed.
+ *
+ * @author joe
+ */
+class ConnectionPool
+{
+    private final Repository rep;
+
+    private final Queue<RepositoryConnection> idle = new ConcurrentLinkedQueue<RepositoryConnection>();
+
+    /* Every connection opened, to close them all at the end */
+    private final List<RepositoryConnection> all = new ArrayList<RepositoryConnection>();
+
+    private boolean closed;
+
+    ConnectionPool(Repository rep)
+    {
+        this.rep = rep;
+    }
+
+    RepositoryConnection borrow() throws RepositoryException
+    {
+        RepositoryConnection cn = idle.poll();
+        if (cn != null) {
+            return cn;
+        }
+
+        cn = rep.getConnection();
+
+        synchronized (all) {
+            if (closed) {
+                cn.close();
+                throw new RepositoryException("Connection pool is closed");
+            }
+            all.add(cn);
+        }
+
+        return cn;
+    }
+
+    void release(RepositoryConnection cn)
+    {
+        idle.add(cn);
+    }
+
+    /**
+     * @return the number of connections opened so far
+     */
+    int size()
+    {
+        synchronized (all) {
+            return all.size();
+        }
+    }
+
+    /**
+     * Close every connection. Connections still borrowed are closed too,
+     * so this should only happen once readers have finished.
+     *
+     * @throws RepositoryException
+     */
+    void close() throws RepositoryException
+    {
+        List<RepositoryConnection> l;
+
+        synchronized (all) {
+            closed = true;
+            l = new ArrayList<RepositoryConnection>(all);
+            all.clear();
+        }
+
+        idle.clear();
+
+        for (RepositoryConnection cn : l) {
+            cn.close();
+        }
+    }
+}
@@ -19,10 +19,14 @@
 package org.kafsemo.mivvi.app;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.io.OutputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.channels.Channels;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
@@ -31,50 +35,118 @@ import java.util.HashSet;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.Properties;
 import java.util.Set;
 import java.util.SortedMap;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Literal;
 import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Namespace;
 import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
-import org.eclipse.rdf4j.repository.util.RDFInserter;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
 import org.eclipse.rdf4j.rio.RDFParseException;
 import org.eclipse.rdf4j.rio.RDFParser;
+import org.eclipse.rdf4j.rio.Rio;
+import org.eclipse.rdf4j.rio.helpers.StatementCollector;
 import org.eclipse.rdf4j.rio.ntriples.NTriplesParser;
 import org.eclipse.rdf4j.sail.Sail;
 import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.eclipse.rdf4j.sail.nativerdf.NativeStore;
 import org.kafsemo.mivvi.rdf.HashUris;
 import org.kafsemo.mivvi.rdf.IdentifierMappings;
 import org.kafsemo.mivvi.rdf.Presentation;
 import org.kafsemo.mivvi.rdf.Presentation.Details;
 import org.kafsemo.mivvi.rdf.RdfMivviDataSource;
 import org.kafsemo.mivvi.rdf.RdfUtil;
+import org.kafsemo.mivvi.recognise.BatchRecogniser;
+import org.kafsemo.mivvi.recognise.BoundedSeriesDetailsCache;
 import org.kafsemo.mivvi.recognise.FilenameMatch;
 import org.kafsemo.mivvi.recognise.FilenameProcessor;
+import org.kafsemo.mivvi.recognise.RecognitionCache;
+import org.kafsemo.mivvi.recognise.RecognitionStats;
 import org.kafsemo.mivvi.recognise.SeriesDataException;
+import org.kafsemo.mivvi.recognise.SeriesDetailsCache;
 import org.kafsemo.mivvi.sesame.JarRDFXMLParser;
 import org.kafsemo.mivvi.sesame.JarTurtleParser;
 
+/**
+ * Series data, for many threads at once. Readers hold a shared lock, each
+ * with a repository connection of its own, so they run in parallel.
+ * Imports parse without any lock and then hold the exclusive lock only to
+ * commit. Configuration is guarded by this object's monitor.
+ *
+ * @author joe
+ */
 public class SeriesData
 {
+    private final ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
+
 //    private Repository mviRep;
+    /* Used for writes, under the write lock */
     RepositoryConnection mviRepCn;
     RdfMivviDataSource mviDataSource;
+    private RepositoryConnection dataSourceCn;
 
-    private FilenameProcessor<Resource> fp;
+    /* Connections for readers, under the read lock */
+    private ConnectionPool readers;
+
+    /* Recognition is safe for concurrent use, so it runs outside the lock */
+    private volatile FilenameProcessor<Resource> fp;
     private Presentation presentation = null;
+    private RepositoryConnection presentationCn;
+
+    /* Recognition results for processName, if enabled */
+    private int recognitionCacheSize = 0;
+    private volatile RecognitionCache<Resource> recognitionCache;
+
+    private RecognitionStats recognitionStats;
+
+    /* The most series details to hold, by weight, or zero for no limit */
+    private long seriesDetailsCacheWeight = 0;
+
+    /* Content hashes of the sources last imported, or null to always import */
+    private File sourceHashFile;
+
+    /**
+     * Indexes for a persistent store. Lookups here go by subject, by
+     * predicate and object (types, and series by title) and backwards
+     * from an object (containers, sameAs links and resources for an
+     * episode).
+     */
+    public static final String TRIPLE_INDEXES = "spoc,posc,ospc";
+
+    /**
+     * Open, or create, a repository kept on disk, for series data that
+     * survives restarts. Pair it with {@link #setSourceHashFile(File)} so
+     * that unchanged sources aren't imported again.
+     *
+     * @param dir the directory to keep it in
+     * @return an initialised repository
+     * @throws RepositoryException
+     */
+    public static Repository createNativeRepository(File dir) throws RepositoryException
+    {
+        SailRepository rep = new SailRepository(new NativeStore(dir, TRIPLE_INDEXES));
+        rep.initialize();
+        return rep;
+    }
 
 
     public synchronized void initMviRepository() throws IOException, RepositoryException
@@ -82,15 +154,6 @@ public class SeriesData
         Sail sail;
 
         sail = new MemoryStore();
-        /*
-        RepositoryConfig cfg = new RepositoryConfig("mviRepository", "MVI repository");
-        cfg.addSail(new NativeRdfRepositoryConfig(Const.MVI_REPOSITORY));
-
-        cfg.setWorldReadable(true);
-        cfg.setWorldWriteable(true);
-
-        mviRep = Sesame.getService().createRepository(cfg);
-        */
 
         SailRepository rep = new SailRepository(sail);
         rep.initialize();
@@ -99,97 +162,388 @@ public class SeriesData
 
     public synchronized void initMviRepository(Repository rep) throws IOException, RepositoryException
     {
-//        this.mviRep = rep;
-        mviRepCn = rep.getConnection();
-        mviDataSource = new RdfMivviDataSource(rep.getConnection());
-        fp = new FilenameProcessor<Resource>(mviDataSource, mviDataSource);
-        presentation = new Presentation(mviRepCn);
+        lock.writeLock().lock();
+        try {
+//            this.mviRep = rep;
+            mviRepCn = rep.getConnection();
+            readers = new ConnectionPool(rep);
+            dataSourceCn = rep.getConnection();
+            mviDataSource = new RdfMivviDataSource(dataSourceCn);
+            fp = new FilenameProcessor<Resource>(mviDataSource, mviDataSource);
+            fp.setStats(recognitionStats);
+            if (seriesDetailsCacheWeight > 0) {
+                fp.setSeriesDetailsCache(new BoundedSeriesDetailsCache<Resource>(seriesDetailsCacheWeight));
+            }
+            presentationCn = rep.getConnection();
+            presentation = new Presentation(presentationCn);
+            createRecognitionCache();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
     public synchronized void closeMviRepository() throws RepositoryException
     {
-        presentation = null;
-        fp = null;
-        mviRepCn.close();
-//        mviRep.shutDown();
+        lock.writeLock().lock();
+        try {
+            presentation = null;
+            recognitionCache = null;
+            fp = null;
+            readers.close();
+            readers = null;
+            presentationCn.close();
+            dataSourceCn.close();
+            mviRepCn.close();
+//            mviRep.shutDown();
+        } finally {
+            lock.writeLock().unlock();
+        }
     }
 
-    public synchronized String getTitle(Resource res) throws RepositoryException
+    /**
+     * Take the read lock and a connection to read with. Every call must be
+     * matched by {@link #endRead(RepositoryConnection)}.
+     */
+    private RepositoryConnection beginRead() throws RepositoryException
     {
-        return RdfUtil.getStringProperty(mviRepCn, res, RdfUtil.Dc.title);
+        lock.readLock().lock();
+
+        boolean ok = false;
+        try {
+            checkOpen();
+
+            RepositoryConnection cn = readers.borrow();
+            ok = true;
+            return cn;
+        } finally {
+            if (!ok) {
+                lock.readLock().unlock();
+            }
+        }
+    }
+
+    /**
+     * Fail if the repository has been closed. Call this with either lock
+     * held.
+     */
+    private void checkOpen() throws RepositoryException
+    {
+        if (readers == null) {
+            throw new RepositoryException("Series data is closed");
+        }
+    }
+
+    private void endRead(RepositoryConnection cn)
+    {
+        readers.release(cn);
+        lock.readLock().unlock();
+    }
+
+    public String getTitle(Resource res) throws RepositoryException
+    {
+        RepositoryConnection cn = beginRead();
+        try {
+            return RdfUtil.getStringProperty(cn, res, RdfUtil.Dc.title);
+        } finally {
+            endRead(cn);
+        }
     }
 
     private static final Resource[] RA = {};
 
-    public synchronized Resource[] getAllSeries() throws RepositoryException
+    public Resource[] getAllSeries() throws RepositoryException
     {
 //        ValueFactory vf = mviRepGraph.getValueFactory();
 
         ArrayList<Resource> al = new ArrayList<Resource>(32);
 
-        RepositoryResult<Statement> si = mviRepCn.getStatements(null, RdfUtil.Rdf.type, RdfUtil.Mvi.Series, true);
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si = cn.getStatements(null, RdfUtil.Rdf.type, RdfUtil.Mvi.Series, true);
 
-        while (si.hasNext()) {
-            Statement stmt = si.next();
+            while (si.hasNext()) {
+                Statement stmt = si.next();
 
-            if (stmt.getSubject() != null)
-                al.add(stmt.getSubject());
+                if (stmt.getSubject() != null)
+                    al.add(stmt.getSubject());
+            }
+        } finally {
+            endRead(cn);
         }
 
         return al.toArray(RA);
     }
 
-    public synchronized Resource[] getCollectionIds(Resource uri, IRI pred)
+    public Resource[] getCollectionIds(Resource uri, IRI pred)
         throws RepositoryException
     {
-        RepositoryResult<Statement> si;
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si;
 
-        Resource c = RdfUtil.getResProperty(mviRepCn, uri, pred);
+            Resource c = RdfUtil.getResProperty(cn, uri, pred);
 
-        if (c == null)
-            return RA;
+            if (c == null)
+                return RA;
 
-        SortedMap<Integer, Value> sm = new TreeMap<Integer, Value>();
+            SortedMap<Integer, Value> sm = new TreeMap<Integer, Value>();
 
-        si = mviRepCn.getStatements(c, null, null, true);
-        while (si.hasNext()) {
-            Statement s = si.next();
+            si = cn.getStatements(c, null, null, true);
+            while (si.hasNext()) {
+                Statement s = si.next();
 
-            int i = RdfUtil.index(s.getPredicate());
-            if (i >= 0) {
-                sm.put(Integer.valueOf(i), s.getObject());
+                int i = RdfUtil.index(s.getPredicate());
+                if (i >= 0) {
+                    sm.put(Integer.valueOf(i), s.getObject());
+                }
             }
-        }
 
-        return sm.values().toArray(RA);
+            return sm.values().toArray(RA);
+        } finally {
+            endRead(cn);
+        }
     }
 
-    public synchronized Resource[] getSeasons(Resource series) throws RepositoryException
+    public Resource[] getSeasons(Resource series) throws RepositoryException
     {
         return getCollectionIds(series, RdfUtil.Mvi.seasons);
     }
 
-    public synchronized Resource[] getEpisodes(Resource season) throws RepositoryException
+    public Resource[] getEpisodes(Resource season) throws RepositoryException
     {
         return getCollectionIds(season, RdfUtil.Mvi.episodes);
     }
 
-    public synchronized void importMivvi(File file) throws MalformedURLException, IOException, RDFParseException, RepositoryException
+    public void importMivvi(File file) throws MalformedURLException, IOException, RDFParseException, RepositoryException
     {
         URL u = file.toURI().toURL();
-        mviRepCn.add(file, u.toString(), RDFFormat.RDFXML);
+
+        InputStream in = new FileInputStream(file);
+        try {
+            importMivvi(in, u.toString());
+        } finally {
+            in.close();
+        }
     }
 
-    public synchronized void importMivvi(InputStream in, String uri) throws RDFParseException, RepositoryException, IOException
+    public void importMivvi(InputStream in, String uri) throws RDFParseException, RepositoryException, IOException
     {
-        mviRepCn.add(in, uri, RDFFormat.RDFXML);
+        commit(Collections.singletonList(Rio.parse(in, uri, RDFFormat.RDFXML)), false);
     }
 
-    public synchronized void importMivvi(String url) throws MalformedURLException, IOException, RDFParseException, RepositoryException
+    public void importMivvi(String url) throws MalformedURLException, IOException, RDFParseException, RepositoryException
+    {
+        commit(Collections.singletonList(parse(url)), false);
+    }
+
+    /**
+     * Import many sources at once. They're parsed in parallel and then
+     * added together, in the order given, in a single transaction.
+     * Progress counts sources as they're parsed; if it's cancelled, nothing
+     * is imported.
+     *
+     * <p>With a {@link #setSourceHashFile(File) source hash file}, the
+     * sources are hashed first. If they match what was last imported, and
+     * the repository isn't empty, nothing more is done; otherwise they
+     * replace the repository's contents.</p>
+     *
+     * @param urls the sources, in any format {@link Startup#typeFor(String)}
+     *  recognises
+     * @param executor where to parse them
+     * @param progress for reporting, or <code>null</code>
+     * @return <code>false</code> if cancelled
+     */
+    public boolean importMivvi(List<String> urls, ExecutorService executor, Progress progress)
+        throws MalformedURLException, IOException, RDFParseException, RepositoryException
+    {
+        File hashFile = getSourceHashFile();
+
+        Map<String, String> hashes = null;
+
+        if (hashFile != null) {
+            if (progress != null) {
+                progress.setNote("Checking for changes...");
+            }
+
+            hashes = hashSources(urls, executor);
+
+            if (hashes.equals(loadSourceHashes(hashFile)) && !isEmpty()) {
+                return true;
+            }
+        }
+
+        List<Future<Model>> parses = new ArrayList<Future<Model>>(urls.size());
+
+        for (final String url : urls) {
+            parses.add(executor.submit(new Callable<Model>() {
+                public Model call() throws IOException, RDFParseException, RepositoryException
+                {
+                    return parse(url);
+                }
+            }));
+        }
+
+        if (progress != null) {
+            progress.setMaximum(urls.size());
+        }
+
+        List<Model> models = new ArrayList<Model>(urls.size());
+
+        try {
+            for (int i = 0; i < parses.size(); i++) {
+                if (progress != null) {
+                    if (progress.isCanceled()) {
+                        return false;
+                    }
+                    progress.setNote("Reading " + urls.get(i) + "...");
+                }
+
+                models.add(get(parses.get(i)));
+
+                if (progress != null) {
+                    progress.setProgress(i + 1);
+                }
+            }
+        } finally {
+            for (Future<Model> f : parses) {
+                f.cancel(true);
+            }
+        }
+
+        if (progress != null) {
+            if (progress.isCanceled()) {
+                return false;
+            }
+            progress.setNote("Adding statements...");
+        }
+
+        commit(models, hashFile != null);
+
+        if (hashFile != null) {
+            saveSourceHashes(hashFile, hashes);
+        }
+
+        return true;
+    }
+
+    private boolean isEmpty() throws RepositoryException
+    {
+        RepositoryConnection cn = beginRead();
+        try {
+            return cn.isEmpty();
+        } finally {
+            endRead(cn);
+        }
+    }
+
+    /**
+     * Hash each source's content, in parallel.
+     *
+     * @return each source's SHA-1 URN
+     */
+    private static Map<String, String> hashSources(List<String> urls, ExecutorService executor)
+        throws IOException, RDFParseException, RepositoryException
+    {
+        List<Future<String>> digests = new ArrayList<Future<String>>(urls.size());
+
+        for (final String url : urls) {
+            digests.add(executor.submit(new Callable<String>() {
+                public String call() throws IOException
+                {
+                    InputStream in = new URL(url).openStream();
+                    try {
+                        return HashUris.digestStream(Channels.newChannel(in)).iterator().next().toString();
+                    } finally {
+                        in.close();
+                    }
+                }
+            }));
+        }
+
+        Map<String, String> hashes = new HashMap<String, String>();
+
+        try {
+            for (int i = 0; i < urls.size(); i++) {
+                hashes.put(urls.get(i), get(digests.get(i)));
+            }
+        } finally {
+            for (Future<String> f : digests) {
+                f.cancel(true);
+            }
+        }
+
+        return hashes;
+    }
+
+    private static Map<String, String> loadSourceHashes(File f) throws IOException
+    {
+        Map<String, String> hashes = new HashMap<String, String>();
+
+        if (f.exists()) {
+            Properties p = new Properties();
+
+            InputStream in = new FileInputStream(f);
+            try {
+                p.load(in);
+            } finally {
+                in.close();
+            }
+
+            for (String k : p.stringPropertyNames()) {
+                hashes.put(k, p.getProperty(k));
+            }
+        }
+
+        return hashes;
+    }
+
+    private static void saveSourceHashes(File f, Map<String, String> hashes) throws IOException
+    {
+        Properties p = new Properties();
+        p.putAll(hashes);
+
+        OutputStream out = new FileOutputStream(f);
+        try {
+            p.store(out, "Content hashes of imported Mivvi data");
+        } finally {
+            out.close();
+        }
+    }
+
+    private static <V> V get(Future<V> f)
+        throws IOException, RDFParseException, RepositoryException
+    {
+        try {
+            return f.get();
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new RepositoryException(ie);
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof IOException) {
+                throw (IOException) t;
+            } else if (t instanceof RDFParseException) {
+                throw (RDFParseException) t;
+            } else if (t instanceof RepositoryException) {
+                throw (RepositoryException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new RepositoryException(t);
+            }
+        }
+    }
+
+    /**
+     * Parse a source into memory, choosing a parser by its name.
+     */
+    private static Model parse(String url) throws MalformedURLException, IOException, RDFParseException, RepositoryException
     {
         URL u = new URL(url);
 
-        RDFInserter inserter = new RDFInserter(mviRepCn);
+        Model m = new LinkedHashModel();
 
         RDFParser parser;
 
@@ -205,13 +559,69 @@ public class SeriesData
             throw new RDFParseException("Unexpected RDF format: " + format);
         }
 
-        parser.setRDFHandler(inserter);
+        parser.setRDFHandler(new StatementCollector(m));
 
+        InputStream in = u.openStream();
         try {
-            parser.parse(u.openStream(), url);
+            parser.parse(in, url);
         } catch (RDFHandlerException e) {
-            // RDFInserter only throws wrapped RepositoryExceptions
-            throw (RepositoryException)e.getCause();
+            // StatementCollector doesn't throw these
+            throw new RepositoryException(e);
+        } finally {
+            in.close();
+        }
+
+        return m;
+    }
+
+    /**
+     * Add parsed statements, and their namespaces, in one transaction. This
+     * is the only time readers are shut out.
+     *
+     * @param models
+     * @param replace whether to remove everything already there
+     * @throws RepositoryException
+     */
+    private void commit(List<Model> models, boolean replace) throws RepositoryException
+    {
+        lock.writeLock().lock();
+        try {
+            checkOpen();
+        } catch (RepositoryException re) {
+            lock.writeLock().unlock();
+            throw re;
+        }
+
+        try {
+            boolean ok = false;
+
+            mviRepCn.begin();
+            try {
+                if (replace) {
+                    mviRepCn.clear();
+                }
+
+                for (Model m : models) {
+                    mviRepCn.add(m);
+
+                    for (Namespace ns : m.getNamespaces()) {
+                        if (mviRepCn.getNamespace(ns.getPrefix()) == null) {
+                            mviRepCn.setNamespace(ns.getPrefix(), ns.getName());
+                        }
+                    }
+                }
+
+                mviRepCn.commit();
+                ok = true;
+            } finally {
+                if (!ok) {
+                    mviRepCn.rollback();
+                }
+            }
+        } finally {
+            fp.seriesDataChanged();
+            presentation.dataChanged();
+            lock.writeLock().unlock();
         }
     }
 
@@ -222,51 +632,72 @@ public class SeriesData
         return ROOT_IDENTIFIER;
     }
 
-    public synchronized String getFullEpisodeTitle(Resource res) throws RepositoryException
+    public String getFullEpisodeTitle(Resource res) throws RepositoryException
     {
-        return presentation.getFilenameFor(res);
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return presentation.getFilenameFor(res);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 
-    public synchronized List<String> getStringList(Resource res, IRI pred) throws RepositoryException
+    public List<String> getStringList(Resource res, IRI pred) throws RepositoryException
     {
         List<String> l = new ArrayList<String>();
 
-        RepositoryResult<Statement> si = mviRepCn.getStatements(res, pred, null, true);
-        while (si.hasNext()) {
-            Value v = si.next().getObject();
-            if (v instanceof Literal)
-                l.add(((Literal)v).getLabel());
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si = cn.getStatements(res, pred, null, true);
+            while (si.hasNext()) {
+                Value v = si.next().getObject();
+                if (v instanceof Literal)
+                    l.add(((Literal)v).getLabel());
+            }
+        } finally {
+            endRead(cn);
         }
 
         Collections.sort(l);
         return l;
     }
 
-    public synchronized String getStringProperty(Resource res, IRI p) throws RepositoryException
+    public String getStringProperty(Resource res, IRI p) throws RepositoryException
     {
-        return RdfUtil.getStringProperty(mviRepCn, res, p);
+        RepositoryConnection cn = beginRead();
+        try {
+            return RdfUtil.getStringProperty(cn, res, p);
+        } finally {
+            endRead(cn);
+        }
     }
 
-    public synchronized List<NamedResource> getContributors(Resource res) throws RepositoryException
+    public List<NamedResource> getContributors(Resource res) throws RepositoryException
     {
         List<NamedResource> l = new ArrayList<NamedResource>();
 
-        RepositoryResult<Statement> si = mviRepCn.getStatements(res, RdfUtil.Dc.contributor, null, true);
-        while (si.hasNext()) {
-            Value v = si.next().getObject();
-            if (v instanceof Resource) {
-                Resource c = (Resource)v;
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si = cn.getStatements(res, RdfUtil.Dc.contributor, null, true);
+            while (si.hasNext()) {
+                Value v = si.next().getObject();
+                if (v instanceof Resource) {
+                    Resource c = (Resource)v;
 
-                String s = getNameOf(c);
+                    String s = getNameOf(cn, c);
 
-                if (s != null) {
-                    NamedResource nr = new NamedResource();
-                    nr.res = c;
-                    nr.name = s;
+                    if (s != null) {
+                        NamedResource nr = new NamedResource();
+                        nr.res = c;
+                        nr.name = s;
 
-                    l.add(nr);
+                        l.add(nr);
+                    }
                 }
             }
+        } finally {
+            endRead(cn);
         }
 
         return l;
@@ -288,43 +719,173 @@ public class SeriesData
         }
     }
 
-    private String getNameOf(Resource contributor) throws RepositoryException
+    private static String getNameOf(RepositoryConnection cn, Resource contributor) throws RepositoryException
     {
-        String s = getStringProperty(contributor, RdfUtil.Dc.title);
+        String s = RdfUtil.getStringProperty(cn, contributor, RdfUtil.Dc.title);
         if (s == null)
-            s = getStringProperty(contributor, RdfMiscVocabulary.foafName);
+            s = RdfUtil.getStringProperty(cn, contributor, RdfMiscVocabulary.foafName);
         return s;
     }
 
-    public synchronized String getSeasonNumber(Resource s) throws RepositoryException
+    public String getSeasonNumber(Resource s) throws RepositoryException
     {
         return getStringProperty(s, RdfUtil.Mvi.seasonNumber);
     }
 
-    public synchronized void getResourcesFor(Resource res, Collection<Resource> c)
+    public void getResourcesFor(Resource res, Collection<Resource> c)
         throws RepositoryException
     {
-        RepositoryResult<Statement> si;
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si;
 
-        si = mviRepCn.getStatements(null, RdfUtil.Mvi.episode, res, true);
-        while (si.hasNext()) {
-            c.add(si.next().getSubject());
+            si = cn.getStatements(null, RdfUtil.Mvi.episode, res, true);
+            while (si.hasNext()) {
+                c.add(si.next().getSubject());
+            }
+        } finally {
+            endRead(cn);
         }
     }
 
-    public synchronized FilenameMatch<Resource> process(File f) throws RepositoryException, SeriesDataException
+    public FilenameMatch<Resource> process(File f) throws RepositoryException, SeriesDataException
     {
         return fp.process(f);
     }
 
-    public synchronized FilenameMatch<Resource> processName(String name) throws RepositoryException, SeriesDataException
+    public FilenameMatch<Resource> processName(String name) throws RepositoryException, SeriesDataException
+    {
+        RecognitionCache<Resource> c = recognitionCache;
+        if (c != null) {
+            return c.processName(name);
+        } else {
+            return fp.processName(name);
+        }
+    }
+
+    private void createRecognitionCache()
+    {
+        if (fp != null && recognitionCacheSize > 0) {
+            recognitionCache = new RecognitionCache<Resource>(fp, recognitionCacheSize);
+        } else {
+            recognitionCache = null;
+        }
+    }
+
+    /**
+     * Remember up to this many results from {@link #processName(String)},
+     * for names seen repeatedly. Results are forgotten whenever series data
+     * is imported.
+     *
+     * @param size the maximum number of results, or zero to disable
+     */
+    public synchronized void setRecognitionCacheSize(int size)
+    {
+        this.recognitionCacheSize = size;
+        createRecognitionCache();
+    }
+
+    /**
+     * @return the cache used by {@link #processName(String)}, with its
+     *  counters, or <code>null</code> if there isn't one
+     */
+    public RecognitionCache<Resource> getRecognitionCache()
+    {
+        return recognitionCache;
+    }
+
+    /**
+     * Record timings for recognition, now and after the repository is
+     * replaced.
+     *
+     * @param stats the statistics to add to, or <code>null</code> for none
+     */
+    public synchronized void setRecognitionStats(RecognitionStats stats)
+    {
+        this.recognitionStats = stats;
+        if (fp != null) {
+            fp.setStats(stats);
+        }
+    }
+
+    /**
+     * Bound the memory used for series details, in place of keeping every
+     * series once loaded. This takes effect when the repository is next
+     * initialised.
+     *
+     * @param weight roughly the most episode titles to hold, or zero for
+     *  no limit
+     * @see BoundedSeriesDetailsCache
+     */
+    public synchronized void setSeriesDetailsCacheWeight(long weight)
+    {
+        this.seriesDetailsCacheWeight = weight;
+    }
+
+    /**
+     * Keep content hashes of the sources given to
+     * {@link #importMivvi(List, ExecutorService, Progress)} in this file.
+     * Meant for a persistent repository: an import of sources that haven't
+     * changed since they were last imported does nothing, and otherwise
+     * they replace everything in the repository.
+     *
+     * @param f where to keep the hashes, or <code>null</code> to always
+     *  add sources to what's there
+     */
+    public synchronized void setSourceHashFile(File f)
+    {
+        this.sourceHashFile = f;
+    }
+
+    private synchronized File getSourceHashFile()
+    {
+        return sourceHashFile;
+    }
+
+    /**
+     * @return the series details held for recognition, with any counters
+     */
+    public SeriesDetailsCache<Resource> getSeriesDetailsCache()
     {
-        return fp.processName(name);
+        return fp.getSeriesDetailsCache();
     }
 
-    public synchronized Details getDetailsFor(Resource episode) throws RepositoryException
+    /**
+     * Load the details of every series in parallel, so that the first
+     * recognitions after startup don't have to.
+     *
+     * @param executor where to load them
+     * @return the number of series loaded
+     * @throws SeriesDataException
+     */
+    public int preloadSeriesDetails(ExecutorService executor) throws SeriesDataException
     {
-        return presentation.getDetailsFor(episode);
+        return new BatchRecogniser<Resource>(fp, executor).preloadAllSeriesDetails();
+    }
+
+    /**
+     * Recognise many files in parallel.
+     *
+     * @param files
+     * @param executor where to run recognition
+     * @return one match for each file, in order
+     * @throws SeriesDataException
+     */
+    public BatchRecogniser.Result<Resource> processAll(Collection<File> files, ExecutorService executor)
+        throws SeriesDataException
+    {
+        return new BatchRecogniser<Resource>(fp, executor).processFiles(files);
+    }
+
+    public Details getDetailsFor(Resource episode) throws RepositoryException
+    {
+        lock.readLock().lock();
+        try {
+            checkOpen();
+            return presentation.getDetailsFor(episode);
+        } finally {
+            lock.readLock().unlock();
+        }
     }
 /*
     public LocalRepository getMivviRepository()
@@ -332,18 +893,18 @@ public class SeriesData
         return mviRep;
     }
 */
-    public synchronized Resource getSeries(String title) throws RepositoryException, SeriesDataException
+    public Resource getSeries(String title) throws RepositoryException, SeriesDataException
     {
         return fp.getSeries(title);
     }
 
-    public synchronized Resource getEpisodeByNumericSequence(Resource series, String epTitle)
+    public Resource getEpisodeByNumericSequence(Resource series, String epTitle)
         throws RepositoryException, SeriesDataException
     {
         return fp.getEpisodeByNumericSequence(series, epTitle);
     }
 
-    public synchronized Resource getEpisodeByTitleApprox(Resource series, String epTitle)
+    public Resource getEpisodeByTitleApprox(Resource series, String epTitle)
         throws RepositoryException, SeriesDataException
     {
         return fp.getEpisodeByTitleApprox(series, epTitle);
@@ -356,31 +917,47 @@ public class SeriesData
      * @param episode
      * @throws RepositoryException
      */
-    public synchronized void exportRelevantStatements(Model g, Resource episode) throws RepositoryException
+    public void exportRelevantStatements(Model g, Resource episode) throws RepositoryException
     {
-        RepositoryResult<Statement> si;
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si;
 
-        si = mviRepCn.getStatements(episode, null, null, true);
-        while (si.hasNext()) {
-            Statement s = si.next();
-            g.add(s);
+            si = cn.getStatements(episode, null, null, true);
+            while (si.hasNext()) {
+                Statement s = si.next();
+                g.add(s);
+            }
+
+            si = cn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
+            while (si.hasNext()) {
+                Statement s = si.next();
+                g.add(s);
+            }
+        } finally {
+            endRead(cn);
         }
+    }
 
-        si = mviRepCn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
-        while (si.hasNext()) {
-            Statement s = si.next();
-            g.add(s);
+    void extractEpisodeResources(Resource episode, Collection<? super SkuEpisodeResource> c)
+        throws RepositoryException
+    {
+        RepositoryConnection cn = beginRead();
+        try {
+            extractEpisodeResources(cn, episode, c);
+        } finally {
+            endRead(cn);
         }
     }
 
-    synchronized void extractEpisodeResources(Resource episode, Collection<? super SkuEpisodeResource> c)
+    private static void extractEpisodeResources(RepositoryConnection cn, Resource episode, Collection<? super SkuEpisodeResource> c)
         throws RepositoryException
     {
         RepositoryResult<Statement> si;
 
         Collection<Resource> resl = new ArrayList<Resource>();
 
-        si = mviRepCn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
+        si = cn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
         while (si.hasNext()) {
             Statement s = si.next();
 
@@ -405,7 +982,7 @@ public class SeriesData
 
             Collection<Resource> linked = new ArrayList<Resource>();
             linked.add(r);
-            findAllLinkedIdentifiers(r, linked);
+            findAllLinkedIdentifiers(cn, r, linked);
 
             Iterator<Resource> j = linked.iterator();
             while (j.hasNext()) {
@@ -448,7 +1025,7 @@ public class SeriesData
             }
 
             if (sr.isbn != null || sr.asin != null) {
-                entitle(sr);
+                entitle(cn, sr);
                 c.add(sr);
             }
         }
@@ -462,30 +1039,35 @@ public class SeriesData
      * @param c
      * @throws RepositoryException
      */
-    synchronized void extractWebEpisodeResources(Resource episode, Collection<? super WebEpisodeResource> c) throws RepositoryException
+    void extractWebEpisodeResources(Resource episode, Collection<? super WebEpisodeResource> c) throws RepositoryException
     {
-        RepositoryResult<Statement> si = mviRepCn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
-        while (si.hasNext()) {
-            Statement stmt = si.next();
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si = cn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
+            while (si.hasNext()) {
+                Statement stmt = si.next();
 
-            IRI uri = RdfUtil.asUri(stmt.getSubject());
+                IRI uri = RdfUtil.asUri(stmt.getSubject());
 
-            if (WebEpisodeResource.isWebResource(uri)) {
-                WebEpisodeResource w = new WebEpisodeResource(uri, mviRepCn);
+                if (WebEpisodeResource.isWebResource(uri)) {
+                    WebEpisodeResource w = new WebEpisodeResource(uri, cn);
 
-                c.add(w);
+                    c.add(w);
+                }
             }
+        } finally {
+            endRead(cn);
         }
     }
 
-    private void entitle(SkuEpisodeResource sr) throws RepositoryException
+    private static void entitle(RepositoryConnection cn, SkuEpisodeResource sr) throws RepositoryException
     {
         if (sr.isbn != null) {
-            sr.title = RdfUtil.getStringProperty(mviRepCn, sr.isbn, RdfUtil.Dc.title);
+            sr.title = RdfUtil.getStringProperty(cn, sr.isbn, RdfUtil.Dc.title);
         }
 
         if (sr.asin != null && sr.title == null) {
-            sr.title = RdfUtil.getStringProperty(mviRepCn, sr.asin, RdfUtil.Dc.title);
+            sr.title = RdfUtil.getStringProperty(cn, sr.asin, RdfUtil.Dc.title);
         }
     }
 
@@ -496,17 +1078,17 @@ public class SeriesData
      * @param c
      * @throws RepositoryException
      */
-    private void findAllLinkedIdentifiers(Resource r, Collection<Resource> c)
+    private static void findAllLinkedIdentifiers(RepositoryConnection cn, Resource r, Collection<Resource> c)
         throws RepositoryException
     {
         RepositoryResult<Statement> si;
 
-        si = mviRepCn.getStatements(null, RdfUtil.Owl.sameAs, r, true);
+        si = cn.getStatements(null, RdfUtil.Owl.sameAs, r, true);
         while (si.hasNext()) {
             c.add(si.next().getSubject());
         }
 
-        si = mviRepCn.getStatements(r, RdfUtil.Owl.sameAs, null, true);
+        si = cn.getStatements(r, RdfUtil.Owl.sameAs, null, true);
         while (si.hasNext()) {
             Resource nr = RdfUtil.asResource(si.next().getObject());
             if (nr != null)
@@ -521,16 +1103,21 @@ public class SeriesData
      * @param c
      * @throws RepositoryException
      */
-    synchronized void exportAllIdentifiedHashes(Resource episode, Collection<IRI> c) throws RepositoryException
+    void exportAllIdentifiedHashes(Resource episode, Collection<IRI> c) throws RepositoryException
     {
-        RepositoryResult<Statement> si =
-            mviRepCn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si =
+                cn.getStatements(null, RdfUtil.Mvi.episode, episode, true);
 
-        while (si.hasNext()) {
-            Resource r = si.next().getSubject();
-            if (HashUris.isHashUri(r)) {
-                c.add((IRI) r);
+            while (si.hasNext()) {
+                Resource r = si.next().getSubject();
+                if (HashUris.isHashUri(r)) {
+                    c.add((IRI) r);
+                }
             }
+        } finally {
+            endRead(cn);
         }
     }
 
@@ -543,7 +1130,17 @@ public class SeriesData
      * @param c
      * @throws RepositoryException
      */
-    synchronized void exportHashSynonyms(Collection<IRI> origHashes, Set<IRI> c) throws RepositoryException
+    void exportHashSynonyms(Collection<IRI> origHashes, Set<IRI> c) throws RepositoryException
+    {
+        RepositoryConnection cn = beginRead();
+        try {
+            exportHashSynonyms(cn, origHashes, c);
+        } finally {
+            endRead(cn);
+        }
+    }
+
+    private static void exportHashSynonyms(RepositoryConnection cn, Collection<IRI> origHashes, Set<IRI> c) throws RepositoryException
     {
         RepositoryResult<Statement> si;
         Iterator<IRI> i;
@@ -554,7 +1151,7 @@ public class SeriesData
         i = origHashes.iterator();
         while (i.hasNext()) {
             IRI uri = i.next();
-            si = mviRepCn.getStatements(uri, RdfUtil.Owl.sameAs, null, true);
+            si = cn.getStatements(uri, RdfUtil.Owl.sameAs, null, true);
 
             while (si.hasNext()) {
                 Value v = si.next().getObject();
@@ -570,7 +1167,7 @@ public class SeriesData
         i = origHashes.iterator();
         while (i.hasNext()) {
             IRI uri = i.next();
-            si = mviRepCn.getStatements(null, RdfUtil.Owl.sameAs, uri, true);
+            si = cn.getStatements(null, RdfUtil.Owl.sameAs, uri, true);
 
             while (si.hasNext()) {
                 Resource r = si.next().getSubject();
@@ -581,9 +1178,14 @@ public class SeriesData
         }
     }
 
-    synchronized IRI getSource(IRI hash) throws RepositoryException
+    IRI getSource(IRI hash) throws RepositoryException
     {
-        return RdfUtil.asUri(RdfUtil.getResProperty(mviRepCn, hash, RdfUtil.Dc.source));
+        RepositoryConnection cn = beginRead();
+        try {
+            return RdfUtil.asUri(RdfUtil.getResProperty(cn, hash, RdfUtil.Dc.source));
+        } finally {
+            endRead(cn);
+        }
     }
 
     /**
@@ -592,10 +1194,17 @@ public class SeriesData
      * @return
      * @throws RepositoryException
      */
-    public synchronized IdentifierMappings createIdentifierMappings() throws RepositoryException
+    public IdentifierMappings createIdentifierMappings() throws RepositoryException
     {
         IdentifierMappings im = new IdentifierMappings();
-        im.deriveFrom(this.mviRepCn);
+
+        RepositoryConnection cn = beginRead();
+        try {
+            im.deriveFrom(cn);
+        } finally {
+            endRead(cn);
+        }
+
         return im;
     }
 
@@ -605,9 +1214,14 @@ public class SeriesData
      * @return
      * @throws RepositoryException
      */
-    public synchronized Doap getDoap() throws RepositoryException
+    public Doap getDoap() throws RepositoryException
     {
-        return Doap.check(this.mviRepCn);
+        RepositoryConnection cn = beginRead();
+        try {
+            return Doap.check(cn);
+        } finally {
+            endRead(cn);
+        }
     }
 
     /**
@@ -620,49 +1234,74 @@ public class SeriesData
      */
     public void exportStatementsAbout(Model g, Resource res) throws RepositoryException
     {
-        RepositoryResult<Statement> si;
+        RepositoryConnection cn = beginRead();
+        try {
+            RepositoryResult<Statement> si;
 
-        si = mviRepCn.getStatements(res, null, null, true);
-        while (si.hasNext()) {
-            Statement s = si.next();
+            si = cn.getStatements(res, null, null, true);
+            while (si.hasNext()) {
+                Statement s = si.next();
 
-            if (s.getObject() instanceof Literal
-                    || s.getPredicate().equals(RdfUtil.Rdf.type))
-            {
-                g.add(s);
+                if (s.getObject() instanceof Literal
+                        || s.getPredicate().equals(RdfUtil.Rdf.type))
+                {
+                    g.add(s);
+                }
             }
+        } finally {
+            endRead(cn);
         }
     }
 
-    public synchronized boolean hasType(IRI res, IRI type) throws RepositoryException
+    public boolean hasType(IRI res, IRI type) throws RepositoryException
     {
-        return mviRepCn.hasStatement(res, RdfUtil.Rdf.type, type, false);
+        RepositoryConnection cn = beginRead();
+        try {
+            return cn.hasStatement(res, RdfUtil.Rdf.type, type, false);
+        } finally {
+            endRead(cn);
+        }
     }
 
-    public synchronized List<IRI> getResourceIcons(Resource res) throws RepositoryException
+    public List<IRI> getResourceIcons(Resource res) throws RepositoryException
     {
         List<IRI> icons = new ArrayList<IRI>();
 
-        /* A specific icon */
-        icons.addAll(getSpecificIcons(res));
+        RepositoryConnection cn = beginRead();
+        try {
+            /* A specific icon */
+            icons.addAll(getSpecificIcons(cn, res));
 
-        /* A generic class-based icon */
-        RepositoryResult<Statement> si = mviRepCn.getStatements(res, RdfUtil.Rdf.type, null, true);
-        while (si.hasNext()) {
-            Value v = si.next().getObject();
-            if (v instanceof Resource) {
-                icons.addAll(getSpecificIcons((Resource)v));
+            /* A generic class-based icon */
+            RepositoryResult<Statement> si = cn.getStatements(res, RdfUtil.Rdf.type, null, true);
+            while (si.hasNext()) {
+                Value v = si.next().getObject();
+                if (v instanceof Resource) {
+                    icons.addAll(getSpecificIcons(cn, (Resource)v));
+                }
             }
+        } finally {
+            endRead(cn);
         }
 
         return icons;
     }
 
-    public synchronized List<IRI> getSpecificIcons(Resource res) throws RepositoryException
+    public List<IRI> getSpecificIcons(Resource res) throws RepositoryException
+    {
+        RepositoryConnection cn = beginRead();
+        try {
+            return getSpecificIcons(cn, res);
+        } finally {
+            endRead(cn);
+        }
+    }
+
+    private static List<IRI> getSpecificIcons(RepositoryConnection cn, Resource res) throws RepositoryException
     {
         List<IRI> icons = new ArrayList<IRI>();
 
-        RepositoryResult<Statement> si = mviRepCn.getStatements(res, RdfMiscVocabulary.smIcon, null, true);
+        RepositoryResult<Statement> si = cn.getStatements(res, RdfMiscVocabulary.smIcon, null, true);
         while (si.hasNext()) {
             Value o = si.next().getObject();
             if (o instanceof IRI) {
@@ -21,12 +21,11 @@ package org.kafsemo.mivvi.rdf;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.util.Map;
 
 import org.eclipse.rdf4j.model.Resource;
-import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
 
@@ -37,6 +36,9 @@ public class Presentation
 {
     final RepositoryConnection repCn;
 
+    /* Details for each episode, built on first use */
+    private volatile Map<Resource, Details> index;
+
     public Presentation(RepositoryConnection repCn)
     {
         this.repCn = repCn;
@@ -47,6 +49,7 @@ public class Presentation
         File f = new File(filename);
         
         this.repCn.add(new FileInputStream(f), f.toURI().toString(), RDFFormat.RDFXML);
+        dataChanged();
     }
     
     public String getFilenameFor(Resource episode) throws RepositoryException
@@ -59,92 +62,50 @@ public class Presentation
             return null;
     }
     
+    /**
+     * Find where an episode sits in its series. The first call reads the
+     * whole repository to index every episode; later calls are lookups
+     * until {@link #dataChanged()}.
+     *
+     * @param ep
+     * @return a fresh copy of the details, or <code>null</code> if the
+     *  episode isn't part of a titled series with a numbered season
+     * @throws RepositoryException
+     */
     public Details getDetailsFor(Resource ep) throws RepositoryException
     {
-        String title = RdfUtil.getStringProperty(repCn, ep, RdfUtil.Dc.title);
-        
-        RepositoryResult<Statement> res;
-        
-        Resource bag = null;
-        int index = -1;
+        Details d = index().get(ep);
 
-        res = repCn.getStatements(null, null, ep, true);
-        while (res.hasNext()) {
-            Statement s = res.next();
-            index = RdfUtil.index(s.getPredicate());
-            if (index >= 0) {
-                bag = s.getSubject();
-                break;
-            }
-        }
-        
-        if (bag == null)
+        if (d != null)
+            return new Details(d);
+        else
             return null;
-        
-        int seasonEpNum = index;
-
-        Resource season = null;
+    }
 
-        res = repCn.getStatements(null, RdfUtil.Mvi.episodes, bag, true);
-        while (res.hasNext()) {
-            Statement s = res.next();
-            season = s.getSubject();
-        }
-        
-        if (season == null)
-            return null;
-        
-        String seasonNumber = RdfUtil.getStringProperty(repCn, season, RdfUtil.Mvi.seasonNumber);
-        if (seasonNumber == null)
-            return null;
-        
-        bag = null;
+    private Map<Resource, Details> index() throws RepositoryException
+    {
+        Map<Resource, Details> m = index;
 
-        res = repCn.getStatements(null, null, season, true);
-        while (res.hasNext()) {
-            Statement s = res.next();
-            index = RdfUtil.index(s.getPredicate());
-            if (index >= 0) {
-                bag = s.getSubject();
-                break;
+        if (m == null) {
+            synchronized (this) {
+                m = index;
+                if (m == null) {
+                    m = SeriesStatements.all(repCn).episodeDetails();
+                    index = m;
+                }
             }
         }
-        
-        if (bag == null)
-            return null;
-        
-        Resource series = null;
-
-        res = repCn.getStatements(null, RdfUtil.Mvi.seasons, bag, true);
-        while (res.hasNext()) {
-            Statement s = res.next();
-            series = s.getSubject();
-        }
-        
-        if (series == null)
-            return null;
-        
-        String seriesTitle = RdfUtil.getStringProperty(repCn, series, RdfUtil.Dc.title);
-        if (seriesTitle == null)
-            return null;
-        
-        String pos = Integer.toString(seasonEpNum);
-        if (pos.length() == 1)
-            pos = "0" + pos;
 
-        Details d = new Details();
-        
-        d.series = series;
-        d.season = season;
-        
-        d.seriesTitle = seriesTitle;
+        return m;
+    }
 
-        d.seasonNumber = seasonNumber;
-        d.episodeNumber = seasonEpNum;
-        
-        d.title = title;
-        
-        return d;
+    /**
+     * Call this after the repository changes, so that episodes are
+     * indexed again when next asked for.
+     */
+    public void dataChanged()
+    {
+        index = null;
     }
     
     public static String filenameFor(Details d)
@@ -172,5 +133,19 @@ public class Presentation
         public String seasonNumber;
         public int episodeNumber;
         public String title;
+
+        public Details()
+        {
+        }
+
+        Details(Details d)
+        {
+            this.series = d.series;
+            this.season = d.season;
+            this.seriesTitle = d.seriesTitle;
+            this.seasonNumber = d.seasonNumber;
+            this.episodeNumber = d.episodeNumber;
+            this.title = d.title;
+        }
     }
 }
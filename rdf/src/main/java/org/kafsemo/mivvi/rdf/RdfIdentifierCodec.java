@@ -0,0 +1,62 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.rdf;
+
+import org.eclipse.rdf4j.model.BNode;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.kafsemo.mivvi.recognise.SeriesDataException;
+import org.kafsemo.mivvi.recognise.impl.IdentifierCodec;
+
+/**
+ * Writes RDF resources as strings for a compiled catalogue: IRIs as
+ * themselves, and blank nodes in N-Triples form.
+ *
+ * @author joe
+ */
+public class RdfIdentifierCodec implements IdentifierCodec<Resource>
+{
+    private static final String BNODE_PREFIX = "_:";
+
+    private final ValueFactory vf = SimpleValueFactory.getInstance();
+
+    public String encode(Resource id)
+    {
+        if (id instanceof BNode) {
+            return BNODE_PREFIX + ((BNode) id).getID();
+        } else {
+            return id.stringValue();
+        }
+    }
+
+    public Resource decode(String s) throws SeriesDataException
+    {
+        if (s.startsWith(BNODE_PREFIX)) {
+            return vf.createBNode(s.substring(BNODE_PREFIX.length()));
+        }
+
+        try {
+            return vf.createIRI(s);
+        } catch (IllegalArgumentException iae) {
+            throw new SeriesDataException("Bad identifier in catalogue: " + s, iae);
+        }
+    }
+}
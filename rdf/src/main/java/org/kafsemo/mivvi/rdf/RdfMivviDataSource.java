@@ -23,7 +23,9 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
@@ -34,18 +36,22 @@ import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.RepositoryResult;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.rio.RDFParseException;
-import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.BulkSeriesDataSource;
 import org.kafsemo.mivvi.recognise.FileNamingData;
 import org.kafsemo.mivvi.recognise.FilenameProcessor;
 import org.kafsemo.mivvi.recognise.Item;
 import org.kafsemo.mivvi.recognise.SeriesDataException;
-import org.kafsemo.mivvi.recognise.SeriesDataSource;
 import org.kafsemo.mivvi.recognise.SeriesDetails;
 
 /**
+ * Series data read from a repository connection. Connections aren't safe
+ * for concurrent use, so all access to it is serialised here; a
+ * {@link FilenameProcessor} caches what it reads, so this lock is only
+ * taken when that cache is filled.
+ *
  * @author joe
  */
-public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamingData
+public class RdfMivviDataSource implements BulkSeriesDataSource<Resource>, FileNamingData
 {
     private final RepositoryConnection rep;
 
@@ -54,7 +60,7 @@ public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamin
         this.rep = mviRep;
     }
 
-    public Collection<Item<Resource>> getSeriesTitles()
+    public synchronized Collection<Item<Resource>> getSeriesTitles()
         throws SeriesDataException
     {
         try {
@@ -89,7 +95,7 @@ public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamin
         return titles;
     }
 
-    public Collection<Item<Resource>> getSeriesDescriptions() throws SeriesDataException
+    public synchronized Collection<Item<Resource>> getSeriesDescriptions() throws SeriesDataException
     {
         try {
             return getSeriesLabels(RdfUtil.Dc.description);
@@ -98,67 +104,12 @@ public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamin
         }
     }
 
-    public SeriesDetails<Resource> getSeriesDetails(Resource series)
+    public synchronized SeriesDetails<Resource> getSeriesDetails(Resource series)
         throws SeriesDataException
     {
         try {
-            SeriesDetails<Resource> sd = new SeriesDetails<Resource>();
-
-            RepositoryResult<Statement> si;
-
-            Resource seasonBag;
-
-            seasonBag = RdfUtil.getResProperty(rep, series, RdfUtil.Mvi.seasons);
-
-            if (seasonBag != null) {
-                si = rep.getStatements(seasonBag, null, null, true);
-
-                while (si.hasNext()) {
-                    Statement s = si.next();
-
-                    if (RdfUtil.index(s.getPredicate()) < 0)
-                        continue;
-
-                    Resource re = RdfUtil.asResource(s.getObject());
-                    if (re == null)
-                        continue;
-
-                    String seasonNum = RdfUtil.getStringProperty(rep, re, RdfUtil.Mvi.seasonNumber);
-
-                    Resource episodeSeq = RdfUtil.getResProperty(rep, re, RdfUtil.Mvi.episodes);
-                    if (episodeSeq != null) {
-                        RepositoryResult<Statement> esi = rep.getStatements(episodeSeq, null, null, true);
-                        while (esi.hasNext()) {
-                            Statement e = esi.next();
-
-                            int p = RdfUtil.index(e.getPredicate());
-                            if (p < 0)
-                                continue;
-
-                            Resource episode = RdfUtil.asResource(e.getObject());
-                            if (episode != null)
-                                addEpisodeTitlesAndDescriptions(sd.episodeTitlesAndDescriptions, episode);
-
-
-                            /* Record the series-unique episode number */
-                            String episodeNumber = RdfUtil.getStringProperty(rep, episode, RdfUtil.Mvi.episodeNumber);
-                            if (episodeNumber != null) {
-                                try {
-                                    episodeNumber = Integer.toString(Integer.parseInt(episodeNumber));
-                                    sd.episodesByNumber.put(episodeNumber, episode);
-                                } catch (NumberFormatException nfe) {
-                                    // Do nothing
-                                }
-                            }
-
-                            /* Record the season/episode number */
-                            if (seasonNum != null) {
-                                sd.episodesByNumber.put(seasonNum + "x" + p, episode);
-                            }
-                        }
-                    }
-                }
-            } else {
+            SeriesDetails<Resource> sd = SeriesStatements.forSeries(rep, series).build(series);
+            if (sd == null) {
                 throw new SeriesDataException("No data available for series " + series);
             }
 
@@ -168,36 +119,38 @@ public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamin
         }
     }
 
-    private void addEpisodeTitlesAndDescriptions(List<EpisodeTitleDetails<Resource>> l, Resource ep)
-        throws RepositoryException
+    /**
+     * The details of every series, read in a single pass over the
+     * repository rather than a query for each season and episode.
+     *
+     * @return details for every series with seasons
+     * @throws SeriesDataException
+     */
+    public synchronized Map<Resource, SeriesDetails<Resource>> getAllSeriesDetails()
+        throws SeriesDataException
     {
-        RepositoryResult<Statement> si;
-
-        si = rep.getStatements(ep, RdfUtil.Dc.title, null, true);
-        while (si.hasNext()) {
-            Statement stmt = si.next();
-            String t = RdfUtil.literalString(stmt.getObject());
-            if (t != null)
-                l.add(new EpisodeTitleDetails<Resource>(ep, t, true));
-        }
+        try {
+            SeriesStatements ss = SeriesStatements.all(rep);
+
+            Map<Resource, SeriesDetails<Resource>> m = new LinkedHashMap<Resource, SeriesDetails<Resource>>();
+            for (Resource series : ss.series()) {
+                m.put(series, ss.build(series));
+            }
 
-        si = rep.getStatements(ep, RdfUtil.Dc.description, null, true);
-        while (si.hasNext()) {
-            Statement stmt = si.next();
-            String t = RdfUtil.literalString(stmt.getObject());
-            if (t != null)
-                l.add(new EpisodeTitleDetails<Resource>(ep, t, false));
+            return m;
+        } catch (RepositoryException re) {
+            throw new SeriesDataException("Unable to fetch series data", re);
         }
     }
 
-    public void load(String filename) throws IOException, RDFParseException, RepositoryException
+    public synchronized void load(String filename) throws IOException, RDFParseException, RepositoryException
     {
         File f = new File(filename);
 
         rep.add(f, f.toURI().toString(), RDFFormat.RDFXML);
     }
 
-    public void load(InputStream in, String uri) throws RDFParseException, RepositoryException, IOException
+    public synchronized void load(InputStream in, String uri) throws RDFParseException, RepositoryException, IOException
     {
         rep.add(in, uri, RDFFormat.RDFXML);
     }
@@ -205,7 +158,7 @@ public class RdfMivviDataSource implements SeriesDataSource<Resource>, FileNamin
 
     private static IRI KW_URI = SimpleValueFactory.getInstance().createIRI("tag:kafsemo.org,2004:mivvi#keyword");
 
-    public Iterable<String> getKeywords() throws SeriesDataException
+    public synchronized Iterable<String> getKeywords() throws SeriesDataException
     {
         try {
             List<String> l = new ArrayList<String>();
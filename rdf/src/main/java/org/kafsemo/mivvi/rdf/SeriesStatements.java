@@ -0,0 +1,364 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.rdf;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.eclipse.rdf4j.model.IRI;
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+
+/**
+ * The statements that make up series details, grouped in memory by
+ * subject, so that details can be assembled without going back to the
+ * repository for each season and episode. They're gathered either for
+ * every series in a single pass over the repository, or by following
+ * the links from one series.
+ *
+ * <p>Where a property should have a single value, the first is used.
+ * Container members are taken in order of their index.</p>
+ *
+ * @author joe
+ */
+class SeriesStatements
+{
+    /* A member of an RDF container */
+    private static final class Member
+    {
+        final int index;
+        final Resource value;
+
+        Member(int index, Resource value)
+        {
+            this.index = index;
+            this.value = value;
+        }
+    }
+
+    private static final Comparator<Member> BY_INDEX = new Comparator<Member>() {
+        public int compare(Member a, Member b)
+        {
+            return Integer.compare(a.index, b.index);
+        }
+    };
+
+    /* Each series' bag of seasons */
+    private final Map<Resource, Resource> seasons = new LinkedHashMap<Resource, Resource>();
+
+    private final Map<Resource, List<Member>> members = new HashMap<Resource, List<Member>>();
+
+    private final Map<Resource, String> seasonNumbers = new HashMap<Resource, String>();
+
+    /* Each season's sequence of episodes */
+    private final Map<Resource, Resource> episodes = new HashMap<Resource, Resource>();
+
+    private final Map<Resource, List<String>> titles = new HashMap<Resource, List<String>>(),
+        descriptions = new HashMap<Resource, List<String>>();
+
+    private final Map<Resource, String> episodeNumbers = new HashMap<Resource, String>();
+
+    /**
+     * Gather the statements for every series, in one pass.
+     *
+     * @param cn
+     * @return
+     * @throws RepositoryException
+     */
+    static SeriesStatements all(RepositoryConnection cn) throws RepositoryException
+    {
+        SeriesStatements ss = new SeriesStatements();
+
+        RepositoryResult<Statement> si = cn.getStatements(null, null, null, true);
+        try {
+            while (si.hasNext()) {
+                ss.add(si.next());
+            }
+        } finally {
+            si.close();
+        }
+
+        return ss;
+    }
+
+    /**
+     * Gather the statements for one series, by following its links. Only
+     * statements about the series, its seasons and its episodes are read,
+     * with a single lookup for each.
+     *
+     * @param cn
+     * @param series
+     * @return
+     * @throws RepositoryException
+     */
+    static SeriesStatements forSeries(RepositoryConnection cn, Resource series) throws RepositoryException
+    {
+        SeriesStatements ss = new SeriesStatements();
+
+        ss.addAll(cn, series, RdfUtil.Mvi.seasons);
+
+        Resource bag = ss.seasons.get(series);
+        if (bag == null) {
+            return ss;
+        }
+
+        ss.addAll(cn, bag, null);
+
+        for (Resource season : ss.membersOf(bag)) {
+            ss.addAll(cn, season, null);
+
+            Resource seq = ss.episodes.get(season);
+            if (seq == null)
+                continue;
+
+            ss.addAll(cn, seq, null);
+
+            for (Resource episode : ss.membersOf(seq)) {
+                ss.addAll(cn, episode, null);
+            }
+        }
+
+        return ss;
+    }
+
+    private void addAll(RepositoryConnection cn, Resource subject, IRI predicate) throws RepositoryException
+    {
+        RepositoryResult<Statement> si = cn.getStatements(subject, predicate, null, true);
+        try {
+            while (si.hasNext()) {
+                add(si.next());
+            }
+        } finally {
+            si.close();
+        }
+    }
+
+    private static <V> void addFirst(Map<Resource, V> m, Resource k, V v)
+    {
+        if (v != null && !m.containsKey(k)) {
+            m.put(k, v);
+        }
+    }
+
+    private static void addTo(Map<Resource, List<String>> m, Resource k, String v)
+    {
+        if (v == null)
+            return;
+
+        List<String> l = m.get(k);
+        if (l == null) {
+            l = new ArrayList<String>(1);
+            m.put(k, l);
+        }
+        l.add(v);
+    }
+
+    void add(Statement s)
+    {
+        Resource subj = s.getSubject();
+        IRI p = s.getPredicate();
+        Value o = s.getObject();
+
+        if (p.equals(RdfUtil.Dc.title)) {
+            addTo(titles, subj, RdfUtil.literalString(o));
+        } else if (p.equals(RdfUtil.Dc.description)) {
+            addTo(descriptions, subj, RdfUtil.literalString(o));
+        } else if (p.equals(RdfUtil.Mvi.episodeNumber)) {
+            addFirst(episodeNumbers, subj, RdfUtil.literalString(o));
+        } else if (p.equals(RdfUtil.Mvi.seasonNumber)) {
+            addFirst(seasonNumbers, subj, RdfUtil.literalString(o));
+        } else if (p.equals(RdfUtil.Mvi.episodes)) {
+            addFirst(episodes, subj, RdfUtil.asResource(o));
+        } else if (p.equals(RdfUtil.Mvi.seasons)) {
+            addFirst(seasons, subj, RdfUtil.asResource(o));
+        } else {
+            int i = RdfUtil.index(p);
+            Resource r = RdfUtil.asResource(o);
+
+            if (i >= 0 && r != null) {
+                List<Member> l = members.get(subj);
+                if (l == null) {
+                    l = new ArrayList<Member>();
+                    members.put(subj, l);
+                }
+                l.add(new Member(i, r));
+            }
+        }
+    }
+
+    private List<Member> sortedMembers(Resource container)
+    {
+        List<Member> l = members.get(container);
+        if (l == null) {
+            return Collections.emptyList();
+        }
+
+        Collections.sort(l, BY_INDEX);
+        return l;
+    }
+
+    private List<Resource> membersOf(Resource container)
+    {
+        List<Resource> l = new ArrayList<Resource>();
+        for (Member m : sortedMembers(container)) {
+            l.add(m.value);
+        }
+        return l;
+    }
+
+    /**
+     * @return every series with seasons, in the order they were found
+     */
+    Set<Resource> series()
+    {
+        return seasons.keySet();
+    }
+
+    /**
+     * Assemble the details for a series.
+     *
+     * @param series
+     * @return the details, or <code>null</code> if the series has no seasons
+     */
+    SeriesDetails<Resource> build(Resource series)
+    {
+        Resource bag = seasons.get(series);
+        if (bag == null) {
+            return null;
+        }
+
+        SeriesDetails<Resource> sd = new SeriesDetails<Resource>();
+
+        for (Member season : sortedMembers(bag)) {
+            String seasonNum = seasonNumbers.get(season.value);
+
+            Resource seq = episodes.get(season.value);
+            if (seq == null)
+                continue;
+
+            for (Member e : sortedMembers(seq)) {
+                Resource episode = e.value;
+
+                addLabels(sd.episodeTitlesAndDescriptions, episode, titles.get(episode), true);
+                addLabels(sd.episodeTitlesAndDescriptions, episode, descriptions.get(episode), false);
+
+                /* Record the series-unique episode number */
+                String episodeNumber = episodeNumbers.get(episode);
+                if (episodeNumber != null) {
+                    try {
+                        sd.episodeNumbers.putAbsolute(Integer.parseInt(episodeNumber), episode);
+                    } catch (NumberFormatException nfe) {
+                        // Do nothing
+                    }
+                }
+
+                /* Record the season/episode number */
+                if (seasonNum != null) {
+                    sd.episodeNumbers.put(seasonNum, e.index, episode);
+                }
+            }
+        }
+
+        return sd;
+    }
+
+    /**
+     * Work out where every episode sits: its series, season and position
+     * in that season. Episodes whose season has no number, or whose series
+     * has no title, are left out. Where an episode appears more than once,
+     * the first place found is used.
+     *
+     * @return presentation details for each episode
+     */
+    Map<Resource, Presentation.Details> episodeDetails()
+    {
+        Map<Resource, Presentation.Details> m = new HashMap<Resource, Presentation.Details>();
+
+        for (Map.Entry<Resource, Resource> e : seasons.entrySet()) {
+            Resource series = e.getKey();
+
+            String seriesTitle = first(titles.get(series));
+            if (seriesTitle == null)
+                continue;
+
+            for (Member season : sortedMembers(e.getValue())) {
+                String seasonNum = seasonNumbers.get(season.value);
+                if (seasonNum == null)
+                    continue;
+
+                Resource seq = episodes.get(season.value);
+                if (seq == null)
+                    continue;
+
+                for (Member ep : sortedMembers(seq)) {
+                    if (m.containsKey(ep.value))
+                        continue;
+
+                    Presentation.Details d = new Presentation.Details();
+
+                    d.series = series;
+                    d.season = season.value;
+
+                    d.seriesTitle = seriesTitle;
+
+                    d.seasonNumber = seasonNum;
+                    d.episodeNumber = ep.index;
+
+                    d.title = first(titles.get(ep.value));
+
+                    m.put(ep.value, d);
+                }
+            }
+        }
+
+        return m;
+    }
+
+    private static String first(List<String> l)
+    {
+        if (l == null || l.isEmpty())
+            return null;
+        else
+            return l.get(0);
+    }
+
+    private static void addLabels(List<EpisodeTitleDetails<Resource>> l, Resource episode, List<String> labels,
+            boolean isPrimary)
+    {
+        if (labels == null)
+            return;
+
+        for (String t : labels) {
+            l.add(new EpisodeTitleDetails<Resource>(episode, t, isPrimary));
+        }
+    }
+}
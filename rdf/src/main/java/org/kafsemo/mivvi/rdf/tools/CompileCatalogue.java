@@ -0,0 +1,68 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.rdf.tools;
+
+import java.io.File;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.repository.sail.SailRepositoryConnection;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.kafsemo.mivvi.rdf.RdfIdentifierCodec;
+import org.kafsemo.mivvi.rdf.RdfMivviDataSource;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogue;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogueWriter;
+
+/**
+ * Compile Mivvi RDF data into a catalogue that can be mapped into memory
+ * with {@link CompiledCatalogue}, for recognition without loading RDF.
+ */
+public class CompileCatalogue
+{
+    public static void main(String[] args) throws Exception
+    {
+        if (args.length < 2) {
+            System.err.println("Usage: CompileCatalogue <output> <rdf file>...");
+            System.exit(5);
+        }
+
+        MemoryStore ms = new MemoryStore();
+        SailRepository sr = new SailRepository(ms);
+        sr.initialize();
+
+        SailRepositoryConnection cn = sr.getConnection();
+
+        RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+
+        for (int i = 1; i < args.length; i++) {
+            ds.load(args[i]);
+        }
+
+        File out = new File(args[0]);
+
+        new CompiledCatalogueWriter<Resource>(new RdfIdentifierCodec()).write(ds, ds, out);
+
+        CompiledCatalogue<?> cc = CompiledCatalogue.open(out, new RdfIdentifierCodec());
+        System.out.println("Compiled " + cc.getSeriesCount() + " series into " + out + " (" + out.length() + " bytes)");
+
+        cn.close();
+        sr.shutDown();
+    }
+}
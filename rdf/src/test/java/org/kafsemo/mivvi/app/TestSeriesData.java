@@ -19,28 +19,47 @@
 package org.kafsemo.mivvi.app;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStream;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Model;
+import org.eclipse.rdf4j.model.Resource;
 import org.eclipse.rdf4j.model.Statement;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.LinkedHashModel;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.Repository;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
 import org.eclipse.rdf4j.rio.RDFParseException;
 import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.kafsemo.mivvi.rdf.RdfUtil;
+import org.kafsemo.mivvi.recognise.BoundedSeriesDetailsCache;
+import org.kafsemo.mivvi.recognise.FilenameMatch;
 
 public class TestSeriesData
 {
@@ -171,4 +190,393 @@ public class TestSeriesData
         assertEquals(Collections.singletonList(VF.createIRI("http://www.example.com/#")),
                 Arrays.asList(sd.getAllSeries()));
     }
+
+    @Test
+    public void seriesImportedAfterRecognitionAreFound() throws Exception
+    {
+        Model g = new LinkedHashModel();
+        SeriesData sd = fromGraph(g);
+
+        assertNull(sd.getSeries("Example Show"));
+
+        URL data = getClass().getResource("../rdf/example-show.rdf");
+        assertNotNull(data);
+
+        sd.importMivvi(data.toString());
+
+        assertEquals(VF.createIRI("http://www.example.com/#"),
+                sd.getSeries("Example Show"));
+    }
+
+    @Test
+    public void episodeDetailsImportedAfterLookupAreFound() throws Exception
+    {
+        Model g = new LinkedHashModel();
+        SeriesData sd = fromGraph(g);
+
+        IRI ep = VF.createIRI("http://www.example.com/1/1#");
+        assertNull(sd.getDetailsFor(ep));
+
+        URL data = getClass().getResource("../rdf/example-show.rdf");
+        assertNotNull(data);
+
+        sd.importMivvi(data.toString());
+
+        assertEquals("Example Show - 1x01 - Named Episode", sd.getFullEpisodeTitle(ep));
+    }
+
+    @Test
+    public void cachedRecognitionIsForgottenOnImport() throws Exception
+    {
+        Model g = new LinkedHashModel();
+        SeriesData sd = fromGraph(g);
+        sd.setRecognitionCacheSize(10);
+
+        assertNull(sd.processName("Example Show - 1x01"));
+        assertNull(sd.processName("Example Show - 1x01"));
+        assertEquals(1, sd.getRecognitionCache().getHitCount());
+
+        URL data = getClass().getResource("../rdf/example-show.rdf");
+        assertNotNull(data);
+
+        sd.importMivvi(data.toString());
+
+        FilenameMatch<Resource> m = sd.processName("Example Show - 1x01");
+        assertNotNull(m);
+        assertEquals(VF.createIRI("http://www.example.com/1/1#"), m.episode);
+        assertEquals(1, sd.getRecognitionCache().getHitCount());
+    }
+
+    @Test
+    public void recognitionCacheIsOffByDefault() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+        assertNull(sd.getRecognitionCache());
+
+        sd.setRecognitionCacheSize(10);
+        assertNotNull(sd.getRecognitionCache());
+
+        sd.setRecognitionCacheSize(0);
+        assertNull(sd.getRecognitionCache());
+    }
+
+    @Test
+    public void seriesDetailsCanBePreloadedIntoABoundedCache() throws Exception
+    {
+        MemoryStore ms = new MemoryStore();
+        SailRepository sr = new SailRepository(ms);
+        sr.initialize();
+
+        SeriesData sd = new SeriesData();
+        sd.setSeriesDetailsCacheWeight(100);
+        sd.initMviRepository(sr);
+
+        URL data = getClass().getResource("../rdf/example-show.rdf");
+        assertNotNull(data);
+        sd.importMivvi(data.toString());
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertEquals(1, sd.preloadSeriesDetails(executor));
+        } finally {
+            executor.shutdown();
+        }
+
+        BoundedSeriesDetailsCache<Resource> c = (BoundedSeriesDetailsCache<Resource>) sd.getSeriesDetailsCache();
+        assertEquals(1, c.size());
+        assertEquals(1, c.getMissCount());
+
+        assertNotNull(sd.processName("Example Show - 1x01"));
+        assertEquals(1, c.getMissCount());
+        assertTrue(c.getHitCount() > 0);
+    }
+
+    @Test
+    public void readersRunAlongsideImports() throws Exception
+    {
+        final SeriesData sd = fromGraph(new LinkedHashModel());
+
+        final URL data = getClass().getResource("../rdf/example-show.rdf");
+        assertNotNull(data);
+        sd.importMivvi(data.toString());
+
+        final IRI series = VF.createIRI("http://www.example.com/#");
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+
+        for (int t = 0; t < 4; t++) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws Exception
+                {
+                    for (int i = 0; i < 200; i++) {
+                        assertEquals("Example Show", sd.getTitle(series));
+                        assertEquals(2, sd.getSeasons(series).length);
+                        assertEquals("Example Show - 1x01 - Named Episode",
+                                sd.getFullEpisodeTitle(VF.createIRI("http://www.example.com/1/1#")));
+                    }
+                    return null;
+                }
+            });
+        }
+
+        tasks.add(new Callable<Void>() {
+            public Void call() throws Exception
+            {
+                for (int i = 0; i < 10; i++) {
+                    sd.importMivvi(data.openStream(), data.toString());
+                }
+                return null;
+            }
+        });
+
+        ExecutorService executor = Executors.newFixedThreadPool(tasks.size());
+        try {
+            for (Future<Void> f : executor.invokeAll(tasks)) {
+                f.get();
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void readsFailOnceClosed() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+        sd.closeMviRepository();
+
+        sd.getAllSeries();
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void episodeDetailsFailOnceClosed() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+        sd.closeMviRepository();
+
+        sd.getDetailsFor(VF.createIRI("http://www.example.com/1/1#"));
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void episodeTitlesFailOnceClosed() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+        sd.closeMviRepository();
+
+        sd.getFullEpisodeTitle(VF.createIRI("http://www.example.com/1/1#"));
+    }
+
+    @Test(expected = RepositoryException.class)
+    public void importsFailOnceClosed() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+        sd.closeMviRepository();
+
+        sd.importMivvi(getClass().getResource("../rdf/example-show.rdf").toString());
+    }
+
+    /**
+     * Records what was reported, and cancels once asked to.
+     */
+    static class RecordingProgress implements Progress
+    {
+        int maximum, progress;
+        boolean complete, cancelled;
+
+        public boolean isCanceled()
+        {
+            return cancelled;
+        }
+
+        public void setMaximum(int m)
+        {
+            this.maximum = m;
+        }
+
+        public void setProgress(int p)
+        {
+            this.progress = p;
+        }
+
+        public void setNote(String s)
+        {
+        }
+
+        public void setComplete()
+        {
+            this.complete = true;
+        }
+    }
+
+    @Test
+    public void manySourcesCanBeImportedTogether() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+
+        List<String> urls = new ArrayList<String>();
+        urls.add(getClass().getResource("../rdf/example-show.rdf").toString());
+        urls.add(getClass().getResource("../rdf/example-show.ttl").toString());
+        urls.add(getClass().getResource("../rdf/example-show.nt").toString());
+        urls.add(getClass().getResource("../rdf/test-identifiers.rdf").toString());
+
+        RecordingProgress p = new RecordingProgress();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertTrue(sd.importMivvi(urls, executor, p));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(4, p.maximum);
+        assertEquals(4, p.progress);
+
+        List<Resource> series = Arrays.asList(sd.getAllSeries());
+        assertEquals(6, series.size());
+        assertTrue(series.contains(VF.createIRI("http://www.example.com/#")));
+        assertTrue(series.contains(VF.createIRI("http://www.example.com/new-series-uri")));
+        assertEquals(VF.createIRI("http://www.example.com/#"), sd.getSeries("Example Show"));
+    }
+
+    @Test
+    public void nothingIsImportedWhenCancelled() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+
+        List<String> urls = Collections.singletonList(
+                getClass().getResource("../rdf/example-show.rdf").toString());
+
+        RecordingProgress p = new RecordingProgress();
+        p.cancelled = true;
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertFalse(sd.importMivvi(urls, executor, p));
+        } finally {
+            executor.shutdown();
+        }
+
+        assertEquals(0, sd.getAllSeries().length);
+    }
+
+    @Test(expected = RDFParseException.class)
+    public void parseFailuresAreReportedFromBulkImports() throws Exception
+    {
+        SeriesData sd = fromGraph(new LinkedHashModel());
+
+        File f = File.createTempFile("bad", ".rdf");
+        f.deleteOnExit();
+
+        FileWriter w = new FileWriter(f);
+        w.write("<rdf:RDF>");
+        w.close();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            sd.importMivvi(Collections.singletonList(f.toURI().toString()), executor, null);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    private static long size(Repository rep) throws RepositoryException
+    {
+        RepositoryConnection cn = rep.getConnection();
+        try {
+            return cn.size();
+        } finally {
+            cn.close();
+        }
+    }
+
+    private static void copy(URL from, File to) throws IOException
+    {
+        InputStream in = from.openStream();
+        try {
+            Files.copy(in, to.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            in.close();
+        }
+    }
+
+    private static RecordingProgress importInto(Repository rep, File hashes, List<String> urls)
+        throws Exception
+    {
+        SeriesData sd = new SeriesData();
+        sd.setSourceHashFile(hashes);
+        sd.initMviRepository(rep);
+
+        RecordingProgress p = new RecordingProgress();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            assertTrue(sd.importMivvi(urls, executor, p));
+        } finally {
+            executor.shutdown();
+        }
+
+        sd.closeMviRepository();
+
+        return p;
+    }
+
+    @Test
+    public void unchangedSourcesAreNotImportedAgainIntoAPersistentStore() throws Exception
+    {
+        File dir = tmp.newFolder("store");
+        File hashes = new File(dir, "sources.properties");
+
+        List<String> urls = Collections.singletonList(
+                getClass().getResource("../rdf/example-show.rdf").toString());
+
+        Repository rep = SeriesData.createNativeRepository(dir);
+        RecordingProgress p = importInto(rep, hashes, urls);
+        assertEquals(1, p.progress);
+        long size = size(rep);
+        assertTrue(size > 0);
+        rep.shutDown();
+
+        rep = SeriesData.createNativeRepository(dir);
+        p = importInto(rep, hashes, urls);
+        assertEquals("Nothing should be parsed", 0, p.progress);
+        assertEquals(size, size(rep));
+
+        SeriesData sd = new SeriesData();
+        sd.initMviRepository(rep);
+        assertEquals(VF.createIRI("http://www.example.com/#"), sd.getSeries("Example Show"));
+        sd.closeMviRepository();
+
+        rep.shutDown();
+    }
+
+    @Test
+    public void changedSourcesReplaceAPersistentStore() throws Exception
+    {
+        File dir = tmp.newFolder("store");
+        File hashes = new File(dir, "sources.properties");
+
+        File source = tmp.newFile("source.rdf");
+        copy(getClass().getResource("../rdf/example-show.rdf"), source);
+
+        List<String> urls = Collections.singletonList(source.toURI().toString());
+
+        Repository rep = SeriesData.createNativeRepository(dir);
+        importInto(rep, hashes, urls);
+
+        copy(getClass().getResource("../rdf/test-identifiers.rdf"), source);
+
+        RecordingProgress p = importInto(rep, hashes, urls);
+        assertEquals(1, p.progress);
+
+        SeriesData sd = new SeriesData();
+        sd.initMviRepository(rep);
+        assertNull(sd.getSeries("Example Show"));
+        assertTrue(Arrays.asList(sd.getAllSeries()).contains(VF.createIRI("http://www.example.com/new-series-uri")));
+        sd.closeMviRepository();
+
+        rep.shutDown();
+    }
 }
@@ -20,6 +20,7 @@ package org.kafsemo.mivvi.rdf;
 
 import java.io.IOException;
 
+import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
 import org.eclipse.rdf4j.repository.Repository;
@@ -95,4 +96,44 @@ public class TestPresentation extends TestCase
         Details details = emptyPres.getDetailsFor(VF.createIRI("http://www.example.com/1/1#"));
         assertNull("Any query against an empty repository should give null", details);
     }
+
+    public void testDetailsIncludeSeriesAndSeason() throws Exception
+    {
+        Presentation p = getPresentation("example-show.rdf");
+        Details d = p.getDetailsFor(VF.createIRI("http://www.example.com/2/1#"));
+
+        assertEquals(VF.createIRI("http://www.example.com/#"), d.series);
+        assertNotNull(d.season);
+        assertEquals("Example Show", d.seriesTitle);
+        assertEquals("2", d.seasonNumber);
+        assertEquals(1, d.episodeNumber);
+        assertEquals("Named Episode", d.title);
+    }
+
+    public void testReturnedDetailsAreIndependent() throws Exception
+    {
+        Presentation p = getPresentation("example-show.rdf");
+        IRI ep = VF.createIRI("http://www.example.com/1/1#");
+
+        p.getDetailsFor(ep).title = "Changed";
+
+        assertEquals("Named Episode", p.getDetailsFor(ep).title);
+    }
+
+    public void testDetailsFollowChangesToTheRepository() throws Exception
+    {
+        Repository rep = new SailRepository(new MemoryStore());
+        rep.initialize();
+        RepositoryConnection cn = rep.getConnection();
+
+        Presentation p = new Presentation(cn);
+        IRI ep = VF.createIRI("http://www.example.com/1/1#");
+
+        assertNull(p.getDetailsFor(ep));
+
+        cn.add(getClass().getResourceAsStream("example-show.rdf"), "file:///", RDFFormat.RDFXML);
+        p.dataChanged();
+
+        assertEquals("Example Show - 1x01 - Named Episode", p.getFilenameFor(ep));
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.rdf;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+
+import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.ValueFactory;
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.FilenameMatch;
+import org.kafsemo.mivvi.recognise.FilenameProcessor;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogue;
+import org.kafsemo.mivvi.recognise.impl.CompiledCatalogueWriter;
+
+public class TestRdfIdentifierCodec
+{
+    private static final ValueFactory VF = SimpleValueFactory.getInstance();
+
+    @Test
+    public void resourcesRoundTrip() throws Exception
+    {
+        RdfIdentifierCodec c = new RdfIdentifierCodec();
+
+        Resource iri = VF.createIRI("http://www.example.com/1/1#"),
+            bnode = VF.createBNode("node1");
+
+        assertEquals("http://www.example.com/1/1#", c.encode(iri));
+        assertEquals(iri, c.decode(c.encode(iri)));
+
+        assertEquals("_:node1", c.encode(bnode));
+        assertEquals(bnode, c.decode(c.encode(bnode)));
+    }
+
+    @Test
+    public void rdfDataCanBeCompiled() throws Exception
+    {
+        MemoryStore ms = new MemoryStore();
+        SailRepository sr = new SailRepository(ms);
+        sr.initialize();
+
+        RepositoryConnection cn = sr.getConnection();
+        try {
+            RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+
+            InputStream in = getClass().getResourceAsStream("example-show.rdf");
+            assertNotNull(in);
+            try {
+                ds.load(in, "http://www.example.com/");
+            } finally {
+                in.close();
+            }
+
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            new CompiledCatalogueWriter<Resource>(new RdfIdentifierCodec()).write(ds, ds, out);
+
+            CompiledCatalogue<Resource> cc = new CompiledCatalogue<Resource>(
+                    ByteBuffer.wrap(out.toByteArray()), new RdfIdentifierCodec());
+
+            FilenameMatch<Resource> m = new FilenameProcessor<Resource>(cc, cc).processName("Example Show - 1x01");
+            assertNotNull(m);
+            assertEquals(VF.createIRI("http://www.example.com/1/1#"), m.episode);
+        } finally {
+            cn.close();
+        }
+    }
+}
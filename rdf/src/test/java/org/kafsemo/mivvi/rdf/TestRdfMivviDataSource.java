@@ -19,6 +19,7 @@
 package org.kafsemo.mivvi.rdf;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 
 import java.io.InputStream;
@@ -32,12 +33,19 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import org.eclipse.rdf4j.common.iteration.CloseableIteratorIteration;
+import org.eclipse.rdf4j.common.iteration.Iterations;
 import org.eclipse.rdf4j.model.IRI;
 import org.eclipse.rdf4j.model.Resource;
+import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.model.Value;
 import org.eclipse.rdf4j.model.ValueFactory;
 import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.eclipse.rdf4j.model.vocabulary.RDF;
 import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.RepositoryResult;
+import org.eclipse.rdf4j.repository.base.RepositoryConnectionWrapper;
 import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFFormat;
 import org.eclipse.rdf4j.sail.SailException;
@@ -179,4 +187,113 @@ public class TestRdfMivviDataSource
 
         assertEquals(expectedEpisodeTitleDetails, d.episodeTitlesAndDescriptions);
     }
+
+    @Test
+    public void allSeriesDetailsMatchThoseReadOneAtATime() throws Exception
+    {
+        InputStream in = getClass().getResourceAsStream("example-show.rdf");
+        assertNotNull(in);
+
+        cn.add(in, "http://www.example.com/", RDFFormat.RDFXML);
+
+        RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+
+        Map<Resource, SeriesDetails<Resource>> all = ds.getAllSeriesDetails();
+        assertFalse(all.isEmpty());
+
+        for (Map.Entry<Resource, SeriesDetails<Resource>> e : all.entrySet()) {
+            SeriesDetails<Resource> d = ds.getSeriesDetails(e.getKey());
+
+            assertEquals(d.episodesByNumber, e.getValue().episodesByNumber);
+            assertEquals(d.episodeTitlesAndDescriptions, e.getValue().episodeTitlesAndDescriptions);
+        }
+    }
+
+    @Test
+    public void allSeriesDetailsIncludesTheSeries() throws Exception
+    {
+        InputStream in = getClass().getResourceAsStream("TestRdfMivviDataSource-episodesArePresentInSeriesDetailsFromRdf.rdf");
+        assertNotNull(in);
+
+        cn.add(in, "http://www.example.com/", RDFFormat.RDFXML);
+
+        IRI uri = VF.createIRI("http://www.example.com/#");
+        RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+
+        SeriesDetails<Resource> d = ds.getAllSeriesDetails().get(uri);
+        assertNotNull(d);
+        assertEquals(6, d.episodesByNumber.size());
+        assertEquals(3, d.episodeTitlesAndDescriptions.size());
+    }
+
+    /**
+     * Add a series with a single season of numbered, titled episodes.
+     */
+    private void addSeries(IRI series, int episodeCount) throws RepositoryException
+    {
+        Resource bag = VF.createBNode(), season = VF.createBNode(), seq = VF.createBNode();
+
+        cn.add(series, RdfUtil.Mvi.seasons, bag);
+        cn.add(bag, VF.createIRI(RDF.NAMESPACE, "_1"), season);
+        cn.add(season, RdfUtil.Mvi.seasonNumber, VF.createLiteral("1"));
+        cn.add(season, RdfUtil.Mvi.episodes, seq);
+
+        for (int i = 1; i <= episodeCount; i++) {
+            IRI episode = VF.createIRI(series.stringValue() + "1x" + i);
+
+            cn.add(seq, VF.createIRI(RDF.NAMESPACE, "_" + i), episode);
+            cn.add(episode, RdfUtil.Dc.title, VF.createLiteral("Episode " + i));
+            cn.add(episode, RdfUtil.Mvi.episodeNumber, VF.createLiteral(Integer.toString(i)));
+        }
+    }
+
+    /**
+     * Every statement read from the repository while reading the details
+     * of a series.
+     */
+    private List<Statement> statementsReadFor(IRI series) throws Exception
+    {
+        final List<Statement> read = new ArrayList<Statement>();
+
+        RepositoryConnection recording = new RepositoryConnectionWrapper(cn.getRepository(), cn) {
+            @Override
+            public RepositoryResult<Statement> getStatements(Resource subj, IRI pred, Value obj,
+                    boolean includeInferred, Resource... contexts)
+                throws RepositoryException
+            {
+                List<Statement> l = Iterations.asList(super.getStatements(subj, pred, obj, includeInferred, contexts));
+                read.addAll(l);
+                return new RepositoryResult<Statement>(
+                        new CloseableIteratorIteration<Statement, RepositoryException>(l.iterator()));
+            }
+        };
+
+        new RdfMivviDataSource(recording).getSeriesDetails(series);
+
+        return read;
+    }
+
+    @Test
+    public void seriesDetailsOnlyReadStatementsAboutThatSeries() throws Exception
+    {
+        IRI small = VF.createIRI("http://www.example.com/small/"),
+            large = VF.createIRI("http://www.example.com/large/");
+
+        addSeries(small, 2);
+        addSeries(large, 50);
+
+        RdfMivviDataSource ds = new RdfMivviDataSource(cn);
+        assertEquals(100, ds.getSeriesDetails(large).episodesByNumber.size());
+        assertEquals(50, ds.getSeriesDetails(large).episodeTitlesAndDescriptions.size());
+
+        List<Statement> read = statementsReadFor(small);
+
+        /* Its seasons, its one season's number and episodes, and two episodes with a title and number */
+        assertEquals(10, read.size());
+
+        for (Statement st : read) {
+            assertFalse(st.toString(), st.getSubject().stringValue().startsWith(large.stringValue()));
+            assertFalse(st.toString(), st.getObject().stringValue().startsWith(large.stringValue()));
+        }
+    }
 }
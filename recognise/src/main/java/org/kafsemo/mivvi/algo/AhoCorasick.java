@@ -0,0 +1,217 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An Aho-Corasick automaton over a fixed list of keys. A single pass
+ * over a string reports every occurrence of every key, identified by
+ * its index in the original list.
+ *
+ * @author joe
+ */
+public class AhoCorasick
+{
+    private static final int[] NO_KEYS = {};
+
+    /* Per-state goto transitions, as parallel sorted arrays */
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+
+    private final int[] failure;
+
+    /* The nearest state on the failure chain that completes a key, or -1 */
+    private final int[] dictionary;
+
+    /* The keys completed at each state, in ascending order */
+    private final int[][] keys;
+
+    private final int[] depth;
+
+    public AhoCorasick(List<? extends CharSequence> contents)
+    {
+        List<Map<Character, Integer>> gotos = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> completed = new ArrayList<List<Integer>>();
+        List<Integer> depths = new ArrayList<Integer>();
+
+        gotos.add(new TreeMap<Character, Integer>());
+        completed.add(new ArrayList<Integer>());
+        depths.add(0);
+
+        for (int k = 0; k < contents.size(); k++) {
+            CharSequence key = contents.get(k);
+
+            if (key.length() == 0)
+                continue;
+
+            int state = 0;
+
+            for (int i = 0; i < key.length(); i++) {
+                Character c = Character.valueOf(key.charAt(i));
+
+                Integer next = gotos.get(state).get(c);
+                if (next == null) {
+                    next = gotos.size();
+                    gotos.add(new TreeMap<Character, Integer>());
+                    completed.add(new ArrayList<Integer>());
+                    depths.add(i + 1);
+                    gotos.get(state).put(c, next);
+                }
+                state = next;
+            }
+
+            completed.get(state).add(k);
+        }
+
+        int n = gotos.size();
+
+        this.edgeChars = new char[n][];
+        this.edgeTargets = new int[n][];
+        this.failure = new int[n];
+        this.dictionary = new int[n];
+        this.keys = new int[n][];
+        this.depth = new int[n];
+
+        for (int s = 0; s < n; s++) {
+            Map<Character, Integer> g = gotos.get(s);
+
+            char[] ec = new char[g.size()];
+            int[] et = new int[g.size()];
+
+            int j = 0;
+            for (Map.Entry<Character, Integer> e : g.entrySet()) {
+                ec[j] = e.getKey().charValue();
+                et[j] = e.getValue().intValue();
+                j++;
+            }
+
+            edgeChars[s] = ec;
+            edgeTargets[s] = et;
+
+            List<Integer> cl = completed.get(s);
+            if (cl.isEmpty()) {
+                keys[s] = NO_KEYS;
+            } else {
+                int[] ka = new int[cl.size()];
+                for (int i = 0; i < ka.length; i++) {
+                    ka[i] = cl.get(i).intValue();
+                }
+                keys[s] = ka;
+            }
+
+            depth[s] = depths.get(s).intValue();
+        }
+
+        /* Breadth-first, so every failure target is complete before it's used */
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+
+        failure[0] = 0;
+        dictionary[0] = -1;
+
+        for (int t : edgeTargets[0]) {
+            failure[t] = 0;
+            dictionary[t] = -1;
+            queue[tail++] = t;
+        }
+
+        while (head < tail) {
+            int s = queue[head++];
+
+            for (int j = 0; j < edgeChars[s].length; j++) {
+                char c = edgeChars[s][j];
+                int t = edgeTargets[s][j];
+
+                int f = failure[s];
+                int ft;
+                while ((ft = transition(f, c)) < 0 && f != 0) {
+                    f = failure[f];
+                }
+                if (ft < 0)
+                    ft = 0;
+
+                failure[t] = ft;
+                dictionary[t] = (keys[ft].length > 0) ? ft : dictionary[ft];
+
+                queue[tail++] = t;
+            }
+        }
+    }
+
+    private int transition(int state, char c)
+    {
+        int i = Arrays.binarySearch(edgeChars[state], c);
+        if (i >= 0) {
+            return edgeTargets[state][i];
+        } else {
+            return -1;
+        }
+    }
+
+    /**
+     * Receives each occurrence found by {@link AhoCorasick#findAll}.
+     */
+    public interface MatchHandler
+    {
+        /**
+         * @param start the offset of the first matched character
+         * @param end the offset after the last matched character
+         * @param key the index of the matched key in the original list
+         */
+        void match(int start, int end, int key);
+    }
+
+    /**
+     * Report every occurrence of every key in a string. Occurrences are
+     * reported in order of their end position; those ending at the same
+     * point are reported longest first.
+     *
+     * @param s
+     * @param h
+     */
+    public void findAll(CharSequence s, MatchHandler h)
+    {
+        int state = 0;
+
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+
+            int t;
+            while ((t = transition(state, c)) < 0 && state != 0) {
+                state = failure[state];
+            }
+            state = (t < 0) ? 0 : t;
+
+            int end = i + 1;
+
+            int o = (keys[state].length > 0) ? state : dictionary[state];
+            while (o >= 0) {
+                for (int k : keys[o]) {
+                    h.match(end - depth[o], end, k);
+                }
+                o = dictionary[o];
+            }
+        }
+    }
+}
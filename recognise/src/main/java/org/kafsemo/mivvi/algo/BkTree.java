@@ -16,94 +16,458 @@
  * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
  */
 
+
 package org.kafsemo.mivvi.algo;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
-import java.util.SortedMap;
-import java.util.TreeMap;
+import java.util.PriorityQueue;
+import java.util.Random;
 
 /**
  * A BK-tree implementation over a {@link Metric}.
- * 
+ *
+ * <p>The tree is built once, from all of its contents, and then held in
+ * flat arrays. Nodes are numbered breadth-first, with each node's children
+ * in order of their distance from it, so the children of every node are
+ * consecutive; the edge at index <i>j</i> leads to node <i>j + 1</i>. A
+ * search walks the tree with an explicit stack.</p>
+ *
  * @author joe
  */
 public class BkTree<K>
 {
+    private static final int MAGIC = 0x424b5452;
+
     private final Metric<K> metric;
-    private final BkTreeNode root;
-    
+
+    /* The value at each node */
+    private final Object[] values;
+
+    /* The edges out of node i are childStart[i] to childStart[i + 1] */
+    private final int[] childStart;
+
+    /* The distance along each edge, ascending within each node */
+    private final int[] childDistance;
+
     public BkTree(Metric<K> m, Collection<K> contents)
+    {
+        this(m, contents, new Random());
+    }
+
+    /**
+     * Build a tree from its contents all at once. They're added in a
+     * random order, to keep the tree reasonably balanced.
+     *
+     * @param m
+     * @param contents
+     * @param random the source of the order, for a repeatable tree
+     */
+    public BkTree(Metric<K> m, Collection<K> contents, Random random)
     {
         this.metric = m;
 
         List<K> list = new ArrayList<K>(contents);
-        Collections.shuffle(list);
-        
-        BkTreeNode root = null;
-        
-        for(K i : list) {
-            if(root == null) {
-                root = new BkTreeNode(i);
+        Collections.shuffle(list, random);
+
+        int n = list.size();
+
+        /* Build as linked lists of children, then lay out breadth-first */
+        int[] firstChild = new int[n], nextSibling = new int[n], parentDistance = new int[n];
+
+        for (int i = 0; i < n; i++) {
+            firstChild[i] = -1;
+            nextSibling[i] = -1;
+        }
+
+        for (int i = 1; i < n; i++) {
+            K k = list.get(i);
+            int node = 0;
+
+            while (true) {
+                int d = m.dist(list.get(node), k);
+
+                int c = firstChild[node], last = -1;
+                while (c >= 0 && parentDistance[c] != d) {
+                    last = c;
+                    c = nextSibling[c];
+                }
+
+                if (c < 0) {
+                    parentDistance[i] = d;
+                    if (last < 0) {
+                        firstChild[node] = i;
+                    } else {
+                        nextSibling[last] = i;
+                    }
+                    break;
+                }
+
+                node = c;
+            }
+        }
+
+        this.values = new Object[n];
+        this.childStart = new int[n + 1];
+        this.childDistance = new int[Math.max(n - 1, 0)];
+
+        if (n == 0) {
+            return;
+        }
+
+        int[] queue = new int[n];
+        int head = 0, tail = 0;
+        queue[tail++] = 0;
+
+        List<Integer> children = new ArrayList<Integer>();
+        final int[] pd = parentDistance;
+
+        Comparator<Integer> byDistance = new Comparator<Integer>() {
+            public int compare(Integer a, Integer b)
+            {
+                return Integer.compare(pd[a.intValue()], pd[b.intValue()]);
+            }
+        };
+
+        int edge = 0;
+
+        while (head < tail) {
+            int node = queue[head];
+
+            values[head] = list.get(node);
+            childStart[head] = edge;
+
+            children.clear();
+            for (int c = firstChild[node]; c >= 0; c = nextSibling[c]) {
+                children.add(c);
+            }
+            Collections.sort(children, byDistance);
+
+            for (Integer c : children) {
+                childDistance[edge++] = pd[c.intValue()];
+                queue[tail++] = c.intValue();
+            }
+
+            head++;
+        }
+
+        childStart[n] = edge;
+    }
+
+    private BkTree(Metric<K> m, Object[] values, int[] childStart, int[] childDistance)
+    {
+        this.metric = m;
+        this.values = values;
+        this.childStart = childStart;
+        this.childDistance = childDistance;
+    }
+
+    @SuppressWarnings("unchecked")
+    private K value(int node)
+    {
+        return (K) values[node];
+    }
+
+    public int size()
+    {
+        return values.length;
+    }
+
+    /**
+     * The first edge out of a node whose distance is at least <code>d</code>.
+     */
+    private int lowerBound(int node, int d)
+    {
+        int lo = childStart[node], hi = childStart[node + 1];
+
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (childDistance[mid] < d) {
+                lo = mid + 1;
             } else {
-                root.add(i);
+                hi = mid;
             }
         }
-        
-        this.root = root;
+
+        return lo;
     }
 
+    private static int clamp(long d)
+    {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(d, Integer.MAX_VALUE));
+    }
+
+    /**
+     * Find everything within a distance of the target, depth first and
+     * nearest edges first.
+     *
+     * @param target
+     * @param maxDistance
+     * @param results
+     */
     public void find(K target, int maxDistance, Collection<K> results)
     {
-        if (root != null) {
-            root.find(target, maxDistance, results);
+        if (values.length == 0) {
+            return;
+        }
+
+        int[] stack = new int[16];
+        int sp = 0;
+        stack[sp++] = 0;
+
+        while (sp > 0) {
+            int node = stack[--sp];
+
+            int d = metric.dist(value(node), target);
+
+            if (d <= maxDistance) {
+                results.add(value(node));
+            }
+
+            int lo = lowerBound(node, clamp((long) d - maxDistance));
+            int hi = lowerBound(node, clamp((long) d + maxDistance + 1));
+
+            /* Push in reverse, so the nearest edges come off first */
+            for (int j = hi - 1; j >= lo; j--) {
+                if (sp == stack.length) {
+                    int[] ns = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, ns, 0, sp);
+                    stack = ns;
+                }
+                stack[sp++] = j + 1;
+            }
         }
     }
-    
-    class BkTreeNode
+
+    /**
+     * A value found by {@link BkTree#nearest}, with its distance from the
+     * target.
+     */
+    public static final class Neighbour<K>
     {
-        private final K value;
-        private final SortedMap<Integer, BkTreeNode> children;
+        public final K value;
+        public final int distance;
+
+        final int node;
 
-        public BkTreeNode(K v)
+        Neighbour(K value, int distance, int node)
         {
-            this.value = v;
-            this.children = new TreeMap<Integer, BkTreeNode>();
+            this.value = value;
+            this.distance = distance;
+            this.node = node;
         }
-        
-        void add(K n)
+
+        public String toString()
         {
-            int d = metric.dist(value, n);
+            return value + " (" + distance + ")";
+        }
+    }
 
-            BkTreeNode c = children.get(Integer.valueOf(d));
-            if(c == null) {
-                children.put(Integer.valueOf(d), new BkTreeNode(n));
-            } else {
-                c.add(n);
+    private static final Comparator<Neighbour<?>> NEAREST_FIRST = new Comparator<Neighbour<?>>() {
+        public int compare(Neighbour<?> a, Neighbour<?> b)
+        {
+            int c = Integer.compare(a.distance, b.distance);
+            if (c != 0) {
+                return c;
             }
+            return Integer.compare(a.node, b.node);
         }
-        
-        public String toString()
+    };
+
+    public List<Neighbour<K>> nearest(K target, int k)
+    {
+        return nearest(target, k, Integer.MAX_VALUE);
+    }
+
+    /**
+     * Find the closest few values to a target, nearest first. The search
+     * radius shrinks to the furthest of the best found so far, so the
+     * more that are found early on, the less of the tree is searched.
+     * Values at equal distances are chosen in a fixed order.
+     *
+     * @param target
+     * @param k the most values to find
+     * @param maxDistance the furthest a value may be
+     * @return
+     */
+    public List<Neighbour<K>> nearest(K target, int k, int maxDistance)
+    {
+        if (k <= 0 || values.length == 0) {
+            return Collections.emptyList();
+        }
+
+        /* The furthest of the best so far at the head */
+        PriorityQueue<Neighbour<K>> best = new PriorityQueue<Neighbour<K>>(Math.min(k, 16),
+                Collections.reverseOrder(NEAREST_FIRST));
+
+        int radius = maxDistance;
+
+        /* Nodes to visit, each with a lower bound on its distance */
+        int[] stack = new int[32];
+        int sp = 0;
+        stack[sp++] = 0;
+        stack[sp++] = 0;
+
+        while (sp > 0) {
+            int bound = stack[--sp];
+            int node = stack[--sp];
+
+            if (bound > radius) {
+                continue;
+            }
+
+            int d = metric.dist(value(node), target);
+
+            if (d <= radius) {
+                Neighbour<K> nb = new Neighbour<K>(value(node), d, node);
+
+                if (best.size() < k) {
+                    best.add(nb);
+                } else if (NEAREST_FIRST.compare(nb, best.peek()) < 0) {
+                    best.poll();
+                    best.add(nb);
+                }
+
+                if (best.size() == k) {
+                    radius = Math.min(radius, best.peek().distance);
+                }
+            }
+
+            int lo = lowerBound(node, clamp((long) d - radius));
+            int hi = lowerBound(node, clamp((long) d + radius + 1));
+
+            /* Push the edges furthest from d first, so the closest are searched first */
+            int a = lo, b = hi - 1;
+            while (a <= b) {
+                int j;
+                if (Math.abs(childDistance[a] - d) >= Math.abs(childDistance[b] - d)) {
+                    j = a++;
+                } else {
+                    j = b--;
+                }
+
+                if (sp + 2 > stack.length) {
+                    int[] ns = new int[stack.length * 2];
+                    System.arraycopy(stack, 0, ns, 0, sp);
+                    stack = ns;
+                }
+                stack[sp++] = j + 1;
+                stack[sp++] = Math.abs(childDistance[j] - d);
+            }
+        }
+
+        List<Neighbour<K>> l = new ArrayList<Neighbour<K>>(best);
+        Collections.sort(l, NEAREST_FIRST);
+        return l;
+    }
+
+    /**
+     * Reads and writes the values in a tree.
+     */
+    public interface Codec<K>
+    {
+        void write(DataOutput out, K value) throws IOException;
+
+        K read(DataInput in) throws IOException;
+    }
+
+    public static final Codec<String> STRINGS = new Codec<String>() {
+        public void write(DataOutput out, String value) throws IOException
         {
-            return value + ":\n" + children;
+            out.writeUTF(value);
         }
-        
-        void find(K target, int maxDistance, Collection<K> result)
+
+        public String read(DataInput in) throws IOException
         {
-            int d = metric.dist(value, target);
+            return in.readUTF();
+        }
+    };
+
+    /**
+     * Write out a built tree, to be read back without evaluating the
+     * metric again.
+     *
+     * @param out
+     * @param codec
+     * @throws IOException
+     */
+    public void write(DataOutput out, Codec<K> codec) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(values.length);
+
+        for (int i = 0; i < values.length; i++) {
+            codec.write(out, value(i));
+        }
+
+        for (int s : childStart) {
+            out.writeInt(s);
+        }
 
-            if(d <= maxDistance) {
-                result.add(value);
+        for (int d : childDistance) {
+            out.writeInt(d);
+        }
+    }
+
+    /**
+     * Read a tree written by {@link #write(DataOutput, Codec)}.
+     *
+     * @param in
+     * @param m the metric the tree was built with
+     * @param codec
+     * @return
+     * @throws IOException
+     */
+    public static <K> BkTree<K> read(DataInput in, Metric<K> m, Codec<K> codec) throws IOException
+    {
+        if (in.readInt() != MAGIC) {
+            throw new IOException("Not a serialised BK-tree");
+        }
+
+        int n = in.readInt();
+        if (n < 0) {
+            throw new IOException("Bad BK-tree size: " + n);
+        }
+
+        Object[] values = new Object[n];
+        for (int i = 0; i < n; i++) {
+            values[i] = codec.read(in);
+        }
+
+        int[] childStart = new int[n + 1];
+        for (int i = 0; i <= n; i++) {
+            childStart[i] = in.readInt();
+        }
+
+        int edges = Math.max(n - 1, 0);
+        if (childStart[0] != 0 || childStart[n] != edges) {
+            throw new IOException("Bad BK-tree structure");
+        }
+
+        int[] childDistance = new int[edges];
+        for (int j = 0; j < edges; j++) {
+            childDistance[j] = in.readInt();
+        }
+
+        for (int i = 0; i < n; i++) {
+            /* Edges only lead forward, and each node's are in order */
+            if (childStart[i] > childStart[i + 1]
+                    || (childStart[i] < childStart[i + 1] && childStart[i] < i)) {
+                throw new IOException("Bad BK-tree structure");
             }
-            
-            for(int i = d - maxDistance; i <= d + maxDistance; i++) {
-                BkTreeNode c = children.get(Integer.valueOf(i));
-                if(c != null) {
-                    c.find(target, maxDistance, result);
+            for (int j = childStart[i] + 1; j < childStart[i + 1]; j++) {
+                if (childDistance[j - 1] >= childDistance[j]) {
+                    throw new IOException("Bad BK-tree structure");
                 }
             }
         }
+
+        return new BkTree<K>(m, values, childStart, childDistance);
     }
 }
@@ -0,0 +1,121 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.algo;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers recent distances from another {@link Metric}, for when it's
+ * expensive and the same pairs are compared again and again, such as a
+ * {@link BkTree} queried repeatedly with the same targets. The metric is
+ * assumed to be symmetric. Safe for use from several threads.
+ *
+ * @author joe
+ */
+public class MemoisingMetric<K> implements Metric<K>
+{
+    private final Metric<K> metric;
+    private final int maximumSize;
+
+    /* Guarded by itself */
+    private final Map<Pair<K>, Integer> distances;
+
+    private final AtomicLong hits = new AtomicLong(),
+        misses = new AtomicLong();
+
+    public MemoisingMetric(Metric<K> metric, int maximumSize)
+    {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Memo size must be positive: " + maximumSize);
+        }
+
+        this.metric = metric;
+        this.maximumSize = maximumSize;
+        this.distances = new LinkedHashMap<Pair<K>, Integer>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Pair<K>, Integer> eldest)
+            {
+                return size() > MemoisingMetric.this.maximumSize;
+            }
+        };
+    }
+
+    /**
+     * An unordered pair.
+     */
+    private static final class Pair<K>
+    {
+        final K a, b;
+
+        Pair(K a, K b)
+        {
+            this.a = a;
+            this.b = b;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Pair<?>))
+                return false;
+
+            Pair<?> p = (Pair<?>) o;
+            return (a.equals(p.a) && b.equals(p.b)) || (a.equals(p.b) && b.equals(p.a));
+        }
+
+        public int hashCode()
+        {
+            return a.hashCode() ^ b.hashCode();
+        }
+    }
+
+    public int dist(K a, K b)
+    {
+        Pair<K> p = new Pair<K>(a, b);
+
+        synchronized (distances) {
+            Integer d = distances.get(p);
+            if (d != null) {
+                hits.incrementAndGet();
+                return d.intValue();
+            }
+        }
+
+        misses.incrementAndGet();
+
+        int d = metric.dist(a, b);
+
+        synchronized (distances) {
+            distances.put(p, Integer.valueOf(d));
+        }
+
+        return d;
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+}
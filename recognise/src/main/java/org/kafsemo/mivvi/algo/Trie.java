@@ -0,0 +1,148 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.algo;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * A trie over a fixed list of keys, to find every key that starts a
+ * string at a given offset in a single walk. Keys are identified by their
+ * index in the original list.
+ *
+ * @author joe
+ */
+public class Trie
+{
+    /* Per-node child transitions, as parallel sorted arrays */
+    private final char[][] edgeChars;
+    private final int[][] edgeTargets;
+
+    private static final int[] NO_KEYS = {};
+
+    /* The keys ending at each node, in ascending order */
+    private final int[][] keys;
+
+    public Trie(List<? extends CharSequence> contents)
+    {
+        List<Map<Character, Integer>> children = new ArrayList<Map<Character, Integer>>();
+        List<List<Integer>> completed = new ArrayList<List<Integer>>();
+
+        children.add(new TreeMap<Character, Integer>());
+        completed.add(new ArrayList<Integer>());
+
+        for (int k = 0; k < contents.size(); k++) {
+            CharSequence s = contents.get(k);
+
+            if (s.length() == 0)
+                continue;
+
+            int node = 0;
+
+            for (int i = 0; i < s.length(); i++) {
+                Character c = Character.valueOf(s.charAt(i));
+
+                Integer next = children.get(node).get(c);
+                if (next == null) {
+                    next = children.size();
+                    children.add(new TreeMap<Character, Integer>());
+                    completed.add(new ArrayList<Integer>());
+                    children.get(node).put(c, next);
+                }
+                node = next;
+            }
+
+            completed.get(node).add(k);
+        }
+
+        int n = children.size();
+
+        this.edgeChars = new char[n][];
+        this.edgeTargets = new int[n][];
+        this.keys = new int[n][];
+
+        for (int i = 0; i < n; i++) {
+            Map<Character, Integer> m = children.get(i);
+
+            char[] ec = new char[m.size()];
+            int[] et = new int[m.size()];
+
+            int j = 0;
+            for (Map.Entry<Character, Integer> e : m.entrySet()) {
+                ec[j] = e.getKey().charValue();
+                et[j] = e.getValue().intValue();
+                j++;
+            }
+
+            edgeChars[i] = ec;
+            edgeTargets[i] = et;
+
+            List<Integer> cl = completed.get(i);
+            if (cl.isEmpty()) {
+                keys[i] = NO_KEYS;
+            } else {
+                int[] ka = new int[cl.size()];
+                for (int k = 0; k < ka.length; k++) {
+                    ka[k] = cl.get(k).intValue();
+                }
+                keys[i] = ka;
+            }
+        }
+    }
+
+    /**
+     * Receives each key found by {@link Trie#findPrefixes}.
+     */
+    public interface PrefixHandler
+    {
+        /**
+         * @param end the offset after the last matched character
+         * @param key the index of the matched key in the original list
+         */
+        void prefix(int end, int key);
+    }
+
+    /**
+     * Report every key that occurs in a string at an offset, shortest first.
+     * Equal keys are reported in the order they were given.
+     *
+     * @param s
+     * @param start
+     * @param h
+     */
+    public void findPrefixes(CharSequence s, int start, PrefixHandler h)
+    {
+        int node = 0;
+
+        for (int i = start; i < s.length(); i++) {
+            int j = Arrays.binarySearch(edgeChars[node], s.charAt(i));
+            if (j < 0)
+                return;
+
+            node = edgeTargets[node][j];
+
+            for (int k : keys[node]) {
+                h.prefix(i + 1, k);
+            }
+        }
+    }
+}
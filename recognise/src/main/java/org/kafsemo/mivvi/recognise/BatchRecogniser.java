@@ -0,0 +1,350 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Recognise many names or files at once, in parallel. Inputs are grouped
+ * by the series they appear to belong to, and each series' details are
+ * loaded once, before any of its episodes are recognised. Results come
+ * back in input order, whatever order they were worked out in.
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class BatchRecogniser<T>
+{
+    /* Inputs handled by each task */
+    private static final int CHUNK_SIZE = 64;
+
+    private final FilenameProcessor<T> fp;
+    private final ExecutorService executor;
+
+    /**
+     * Run on the common fork-join pool.
+     *
+     * @param fp
+     */
+    public BatchRecogniser(FilenameProcessor<T> fp)
+    {
+        this(fp, ForkJoinPool.commonPool());
+    }
+
+    public BatchRecogniser(FilenameProcessor<T> fp, ExecutorService executor)
+    {
+        this.fp = fp;
+        this.executor = executor;
+    }
+
+    public Result<T> processNames(Collection<String> names) throws SeriesDataException
+    {
+        return run(new ArrayList<String>(names), new Input<String, T>() {
+            public String nameOf(String s)
+            {
+                return s;
+            }
+
+            public FilenameMatch<T> recognise(String s) throws SeriesDataException
+            {
+                return fp.processName(s);
+            }
+        });
+    }
+
+    public Result<T> processNames(Stream<String> names) throws SeriesDataException
+    {
+        return processNames(names.collect(Collectors.<String>toList()));
+    }
+
+    public Result<T> processFiles(Collection<File> files) throws SeriesDataException
+    {
+        return run(new ArrayList<File>(files), new Input<File, T>() {
+            public String nameOf(File f)
+            {
+                return f.getName();
+            }
+
+            public FilenameMatch<T> recognise(File f) throws SeriesDataException
+            {
+                return fp.process(f);
+            }
+        });
+    }
+
+    public Result<T> processFiles(Stream<File> files) throws SeriesDataException
+    {
+        return processFiles(files.collect(Collectors.<File>toList()));
+    }
+
+    /**
+     * Load the details of every series ahead of time, so that early
+     * recognitions don't wait on them. A {@link BulkSeriesDataSource} reads
+     * them all in one sweep; otherwise they're loaded in parallel. With a
+     * bounded {@link SeriesDetailsCache} only the series loaded last will
+     * be kept.
+     *
+     * @return the number of series loaded
+     * @throws SeriesDataException
+     */
+    public int preloadAllSeriesDetails() throws SeriesDataException
+    {
+        int n = fp.preloadAllSeriesDetailsInBulk();
+        if (n >= 0) {
+            return n;
+        }
+
+        Collection<T> series = fp.getAllSeries();
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>(series.size());
+        for (final T s : series) {
+            tasks.add(new Callable<Void>() {
+                public Void call() throws SeriesDataException
+                {
+                    fp.preloadSeriesDetails(s);
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        return series.size();
+    }
+
+    private interface Input<I, T>
+    {
+        String nameOf(I input);
+
+        FilenameMatch<T> recognise(I input) throws SeriesDataException;
+    }
+
+    private <I> Result<T> run(final List<I> inputs, final Input<I, T> input)
+        throws SeriesDataException
+    {
+        long startTime = System.nanoTime();
+
+        final int n = inputs.size();
+
+        /* Guess each input's series */
+        final AtomicReferenceArray<T> guesses = new AtomicReferenceArray<T>(n);
+
+        List<Callable<Void>> tasks = new ArrayList<Callable<Void>>();
+        for (int c = 0; c < n; c += CHUNK_SIZE) {
+            final int from = c, to = Math.min(n, c + CHUNK_SIZE);
+
+            tasks.add(new Callable<Void>() {
+                public Void call() throws SeriesDataException
+                {
+                    for (int i = from; i < to; i++) {
+                        guesses.set(i, fp.guessSeries(input.nameOf(inputs.get(i))));
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        Map<T, List<Integer>> groups = new LinkedHashMap<T, List<Integer>>();
+        for (int i = 0; i < n; i++) {
+            T series = guesses.get(i);
+
+            List<Integer> l = groups.get(series);
+            if (l == null) {
+                l = new ArrayList<Integer>();
+                groups.put(series, l);
+            }
+            l.add(i);
+        }
+
+        /* Load the details for each series once */
+        tasks.clear();
+        for (final T series : groups.keySet()) {
+            if (series == null)
+                continue;
+
+            tasks.add(new Callable<Void>() {
+                public Void call()
+                {
+                    try {
+                        fp.preloadSeriesDetails(series);
+                    } catch (SeriesDataException sde) {
+                        /* Recognition will report this if it matters */
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        /* Recognise, keeping each series' inputs together */
+        final int[] order = new int[n];
+        int o = 0;
+        for (List<Integer> l : groups.values()) {
+            for (Integer i : l) {
+                order[o++] = i.intValue();
+            }
+        }
+
+        final AtomicReferenceArray<FilenameMatch<T>> matches = new AtomicReferenceArray<FilenameMatch<T>>(n);
+
+        tasks.clear();
+        for (int c = 0; c < n; c += CHUNK_SIZE) {
+            final int from = c, to = Math.min(n, c + CHUNK_SIZE);
+
+            tasks.add(new Callable<Void>() {
+                public Void call() throws SeriesDataException
+                {
+                    for (int j = from; j < to; j++) {
+                        int i = order[j];
+                        matches.set(i, input.recognise(inputs.get(i)));
+                    }
+                    return null;
+                }
+            });
+        }
+        runAll(tasks);
+
+        List<FilenameMatch<T>> l = new ArrayList<FilenameMatch<T>>(n);
+        int recognised = 0, exact = 0;
+
+        for (int i = 0; i < n; i++) {
+            FilenameMatch<T> fnm = matches.get(i);
+            l.add(fnm);
+
+            if (fnm != null) {
+                recognised++;
+                if (fnm.isExact)
+                    exact++;
+            }
+        }
+
+        int seriesCount = groups.size() - (groups.containsKey(null) ? 1 : 0);
+
+        Stats stats = new Stats(n, recognised, exact, seriesCount,
+                System.nanoTime() - startTime);
+
+        return new Result<T>(Collections.unmodifiableList(l), stats);
+    }
+
+    private void runAll(List<Callable<Void>> tasks) throws SeriesDataException
+    {
+        if (tasks.isEmpty())
+            return;
+
+        List<Future<Void>> futures;
+
+        try {
+            futures = executor.invokeAll(tasks);
+
+            for (Future<Void> f : futures) {
+                f.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new SeriesDataException("Interrupted during batch recognition", ie);
+        } catch (ExecutionException ee) {
+            Throwable t = ee.getCause();
+            if (t instanceof SeriesDataException) {
+                throw (SeriesDataException) t;
+            } else if (t instanceof RuntimeException) {
+                throw (RuntimeException) t;
+            } else if (t instanceof Error) {
+                throw (Error) t;
+            } else {
+                throw new SeriesDataException("Batch recognition failed", t);
+            }
+        }
+    }
+
+    /**
+     * The outcome of a batch: one match per input, in input order, with
+     * <code>null</code> for inputs that weren't recognised.
+     */
+    public static class Result<T>
+    {
+        private final List<FilenameMatch<T>> matches;
+        private final Stats stats;
+
+        Result(List<FilenameMatch<T>> matches, Stats stats)
+        {
+            this.matches = matches;
+            this.stats = stats;
+        }
+
+        public List<FilenameMatch<T>> getMatches()
+        {
+            return matches;
+        }
+
+        public Stats getStats()
+        {
+            return stats;
+        }
+    }
+
+    /**
+     * Counts and throughput for a whole batch.
+     */
+    public static class Stats
+    {
+        public final int inputs;
+        public final int recognised;
+        public final int exact;
+        public final int series;
+        public final long elapsedNanos;
+
+        Stats(int inputs, int recognised, int exact, int series, long elapsedNanos)
+        {
+            this.inputs = inputs;
+            this.recognised = recognised;
+            this.exact = exact;
+            this.series = series;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public double getInputsPerSecond()
+        {
+            if (elapsedNanos <= 0) {
+                return 0;
+            }
+            return inputs * 1e9 / elapsedNanos;
+        }
+
+        public String toString()
+        {
+            return "Recognised " + recognised + "/" + inputs + " (" + exact + " exact) across "
+                + series + " series in " + (elapsedNanos / 1000000) + " ms ("
+                + Math.round(getInputsPerSecond()) + " per second)";
+        }
+    }
+}
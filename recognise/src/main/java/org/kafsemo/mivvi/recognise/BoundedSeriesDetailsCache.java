@@ -0,0 +1,159 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keeps the details of the most recently used series, up to a total
+ * weight, for catalogues too large to hold in full. A series weighs one
+ * more than its number of episode titles and descriptions, which is
+ * roughly in proportion to the memory its details and indexes take up.
+ *
+ * <p>Details dropped here are read again from the data source the next
+ * time they're needed, so the maximum weight trades memory for latency.
+ * Counters are shared by every {@link #emptyCopy()}, so they cover the
+ * processor's lifetime rather than a single version of the data.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class BoundedSeriesDetailsCache<T> implements SeriesDetailsCache<T>
+{
+    private final long maximumWeight;
+    private final Counters counters;
+
+    /* Guarded by itself */
+    private final LinkedHashMap<T, SeriesDetails<T>> entries =
+            new LinkedHashMap<T, SeriesDetails<T>>(16, 0.75f, true);
+    private long weight;
+
+    private static class Counters
+    {
+        final AtomicLong hits = new AtomicLong(),
+            misses = new AtomicLong(),
+            evictions = new AtomicLong();
+    }
+
+    public BoundedSeriesDetailsCache(long maximumWeight)
+    {
+        this(maximumWeight, new Counters());
+    }
+
+    private BoundedSeriesDetailsCache(long maximumWeight, Counters counters)
+    {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("Maximum weight must be positive: " + maximumWeight);
+        }
+
+        this.maximumWeight = maximumWeight;
+        this.counters = counters;
+    }
+
+    static long weigh(SeriesDetails<?> sd)
+    {
+        return 1 + sd.episodeTitlesAndDescriptions.size();
+    }
+
+    public SeriesDetails<T> get(T series, Loader<T> loader) throws SeriesDataException
+    {
+        synchronized (entries) {
+            SeriesDetails<T> sd = entries.get(series);
+            if (sd != null) {
+                counters.hits.incrementAndGet();
+                return sd;
+            }
+        }
+
+        counters.misses.incrementAndGet();
+
+        /* Load outside the lock; racing threads may each load, and the first to finish is kept */
+        SeriesDetails<T> sd = loader.load(series);
+        if (sd == null) {
+            return null;
+        }
+
+        synchronized (entries) {
+            SeriesDetails<T> existing = entries.get(series);
+            if (existing != null) {
+                return existing;
+            }
+
+            entries.put(series, sd);
+            weight += weigh(sd);
+
+            /* Drop the least recently used, but always keep the newest */
+            Iterator<Map.Entry<T, SeriesDetails<T>>> i = entries.entrySet().iterator();
+            while (weight > maximumWeight && entries.size() > 1) {
+                Map.Entry<T, SeriesDetails<T>> e = i.next();
+                weight -= weigh(e.getValue());
+                i.remove();
+                counters.evictions.incrementAndGet();
+            }
+        }
+
+        return sd;
+    }
+
+    public int size()
+    {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    /**
+     * @return the total weight of the series held
+     */
+    public long getWeight()
+    {
+        synchronized (entries) {
+            return weight;
+        }
+    }
+
+    public long getMaximumWeight()
+    {
+        return maximumWeight;
+    }
+
+    public long getHitCount()
+    {
+        return counters.hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return counters.misses.get();
+    }
+
+    public long getEvictionCount()
+    {
+        return counters.evictions.get();
+    }
+
+    public SeriesDetailsCache<T> emptyCopy()
+    {
+        return new BoundedSeriesDetailsCache<T>(maximumWeight, counters);
+    }
+}
@@ -0,0 +1,224 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+/**
+ * <p>Recognises an episode code at the start of a normalised string, in a
+ * single pass. The forms, in order of preference, are:</p>
+ * <ul>
+ * <li><code>3x05</code></li>
+ * <li><code>s03e05</code> or <code>s03ep05</code></li>
+ * <li><code>series 3 episode 5</code></li>
+ * <li>a plain number, <code>305</code></li>
+ * <li><code>pt 5</code> or <code>part 5</code>, for single-season series</li>
+ * </ul>
+ * <p>Every form must end at a word boundary. Numbers too large for an
+ * <code>int</code> aren't episode numbers.</p>
+ *
+ * @author joe
+ */
+class EpisodeCodeLexer
+{
+    static final int NONE = 0,
+        SEASON_AND_EPISODE = 1,
+        NUMBER = 2,
+        PART = 3;
+
+    /* The result of the last scan */
+    int kind;
+    int season;
+    int number;
+    int end;
+
+    /* Set by digits() */
+    private int value;
+
+    private static boolean isDigit(char c)
+    {
+        return (c >= '0' && c <= '9');
+    }
+
+    private static boolean isWordBoundary(CharSequence s, int i)
+    {
+        if (i >= s.length())
+            return true;
+
+        char c = s.charAt(i);
+        return !(Character.isLetterOrDigit(c) || c == '_');
+    }
+
+    /**
+     * Read a run of digits into {@link #value}.
+     *
+     * @return the end of the run, or <code>-1</code> if there are no digits
+     *  or the number is too large
+     */
+    private int digits(CharSequence s, int i)
+    {
+        int l = s.length();
+        int start = i;
+        long v = 0;
+
+        while (i < l && isDigit(s.charAt(i))) {
+            v = v * 10 + (s.charAt(i) - '0');
+            if (v > Integer.MAX_VALUE) {
+                return -1;
+            }
+            i++;
+        }
+
+        if (i == start)
+            return -1;
+
+        value = (int) v;
+        return i;
+    }
+
+    private static boolean hasAt(CharSequence s, int i, String word)
+    {
+        if (i + word.length() > s.length())
+            return false;
+
+        for (int j = 0; j < word.length(); j++) {
+            if (s.charAt(i + j) != word.charAt(j))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * Recognise an episode code at the start of a normalised string.
+     *
+     * @param s
+     * @return whether a code was found; if so, the fields describe it
+     */
+    boolean scan(CharSequence s)
+    {
+        kind = NONE;
+
+        if (s.length() == 0)
+            return false;
+
+        char c = s.charAt(0);
+
+        if (isDigit(c)) {
+            return seasonXEpisode(s) || plainNumber(s);
+        } else if (c == 's') {
+            return seasonEpisode(s) || seriesEpisode(s);
+        } else if (c == 'p') {
+            return part(s);
+        } else {
+            return false;
+        }
+    }
+
+    private boolean found(int kind, int season, int number, int end)
+    {
+        this.kind = kind;
+        this.season = season;
+        this.number = number;
+        this.end = end;
+        return true;
+    }
+
+    /* 3x05 */
+    private boolean seasonXEpisode(CharSequence s)
+    {
+        int i = digits(s, 0);
+        if (i < 0 || i >= s.length() || s.charAt(i) != 'x')
+            return false;
+        int season = value;
+
+        i = digits(s, i + 1);
+        if (i < 0 || !isWordBoundary(s, i))
+            return false;
+
+        return found(SEASON_AND_EPISODE, season, value, i);
+    }
+
+    /* s03e05, s03ep05 */
+    private boolean seasonEpisode(CharSequence s)
+    {
+        int i = digits(s, 1);
+        if (i < 0 || i >= s.length() || s.charAt(i) != 'e')
+            return false;
+        int season = value;
+
+        i++;
+        if (i < s.length() && s.charAt(i) == 'p')
+            i++;
+
+        i = digits(s, i);
+        if (i < 0 || !isWordBoundary(s, i))
+            return false;
+
+        return found(SEASON_AND_EPISODE, season, value, i);
+    }
+
+    /* series 3 episode 5 */
+    private boolean seriesEpisode(CharSequence s)
+    {
+        if (!hasAt(s, 0, "series "))
+            return false;
+
+        int i = digits(s, 7);
+        if (i < 0 || !hasAt(s, i, " episode "))
+            return false;
+        int season = value;
+
+        i = digits(s, i + 9);
+        if (i < 0 || !isWordBoundary(s, i))
+            return false;
+
+        return found(SEASON_AND_EPISODE, season, value, i);
+    }
+
+    /* 305 */
+    private boolean plainNumber(CharSequence s)
+    {
+        int i = digits(s, 0);
+        if (i < 0 || !isWordBoundary(s, i))
+            return false;
+
+        return found(NUMBER, 0, value, i);
+    }
+
+    /* pt 5, part5 */
+    private boolean part(CharSequence s)
+    {
+        int i;
+
+        if (hasAt(s, 0, "part")) {
+            i = 4;
+        } else if (hasAt(s, 0, "pt")) {
+            i = 2;
+        } else {
+            return false;
+        }
+
+        if (i < s.length() && s.charAt(i) == ' ')
+            i++;
+
+        i = digits(s, i);
+        if (i < 0 || !isWordBoundary(s, i))
+            return false;
+
+        return found(PART, 1, value, i);
+    }
+}
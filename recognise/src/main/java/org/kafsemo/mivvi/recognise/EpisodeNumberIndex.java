@@ -0,0 +1,486 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * <p>The episodes of a series by number: by season and position within
+ * that season, and by absolute number across the whole series.</p>
+ * <p>Seasons are usually numbered, and a season number is used directly
+ * as its identifier. Any other season name (a letter, or a number written
+ * with a leading zero) is given a negative identifier of its own, so it can
+ * only be found by that name. Season and position are packed together into
+ * a single <code>long</code> key.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class EpisodeNumberIndex<T>
+{
+    private final LongTable<T> bySeason = new LongTable<T>();
+    private final LongTable<T> byAbsolute = new LongTable<T>();
+
+    /* The seasons with an episode at each position */
+    private final LongTable<int[]> seasonsByPosition = new LongTable<int[]>();
+
+    /* Season names that aren't plain non-negative numbers */
+    private final List<String> otherSeasons = new ArrayList<String>();
+    private final Map<String, Integer> otherSeasonIds = new HashMap<String, Integer>();
+
+    private final Map<String, T> stringView = new StringView();
+
+    static long pack(int seasonId, int position)
+    {
+        return ((long) seasonId << 32) | (position & 0xFFFFFFFFL);
+    }
+
+    /**
+     * The identifier for a season number written in its usual form, or -1.
+     */
+    private static int numericSeasonId(String season)
+    {
+        int l = season.length();
+
+        if (l == 0 || l > 10 || (l > 1 && season.charAt(0) == '0'))
+            return -1;
+
+        long v = 0;
+        for (int i = 0; i < l; i++) {
+            char c = season.charAt(i);
+            if (c < '0' || c > '9')
+                return -1;
+            v = v * 10 + (c - '0');
+        }
+
+        return (v <= Integer.MAX_VALUE) ? (int) v : -1;
+    }
+
+    /* No season has this identifier */
+    private static final int NO_SEASON = Integer.MIN_VALUE;
+
+    private int seasonId(String season, boolean create)
+    {
+        int id = numericSeasonId(season);
+        if (id >= 0)
+            return id;
+
+        Integer i = otherSeasonIds.get(season);
+        if (i == null) {
+            if (!create)
+                return NO_SEASON;
+            otherSeasons.add(season);
+            i = Integer.valueOf(-otherSeasons.size());
+            otherSeasonIds.put(season, i);
+        }
+        return i.intValue();
+    }
+
+    private String seasonName(int id)
+    {
+        if (id >= 0) {
+            return Integer.toString(id);
+        } else {
+            return otherSeasons.get(-id - 1);
+        }
+    }
+
+    /**
+     * Record an episode's position within a named season.
+     *
+     * @param season
+     * @param position
+     * @param episode
+     * @return the episode previously at this position, if any
+     */
+    public T put(String season, int position, T episode)
+    {
+        return putBySeasonId(seasonId(season, true), position, episode);
+    }
+
+    public T put(int season, int position, T episode)
+    {
+        if (season >= 0) {
+            return putBySeasonId(season, position, episode);
+        } else {
+            return put(Integer.toString(season), position, episode);
+        }
+    }
+
+    private T putBySeasonId(int id, int position, T episode)
+    {
+        long key = pack(id, position);
+
+        if (!bySeason.containsKey(key)) {
+            int[] seasons = seasonsByPosition.get(position);
+            if (seasons == null) {
+                seasons = new int[] {id};
+            } else {
+                int[] a = new int[seasons.length + 1];
+                System.arraycopy(seasons, 0, a, 0, seasons.length);
+                a[seasons.length] = id;
+                seasons = a;
+            }
+            seasonsByPosition.put(position, seasons);
+        }
+
+        return bySeason.put(key, episode);
+    }
+
+    /**
+     * Record an episode's series-unique number.
+     *
+     * @param number
+     * @param episode
+     * @return the episode previously with this number, if any
+     */
+    public T putAbsolute(int number, T episode)
+    {
+        return byAbsolute.put(number, episode);
+    }
+
+    public T get(int season, int position)
+    {
+        if (season >= 0) {
+            return bySeason.get(pack(season, position));
+        } else {
+            return get(Integer.toString(season), position);
+        }
+    }
+
+    public T get(String season, int position)
+    {
+        int id = seasonId(season, false);
+        if (id == NO_SEASON)
+            return null;
+
+        return bySeason.get(pack(id, position));
+    }
+
+    public T getAbsolute(int number)
+    {
+        return byAbsolute.get(number);
+    }
+
+    /**
+     * Every episode at this position within its season, across all seasons.
+     *
+     * @param position
+     * @return
+     */
+    public List<T> getAllAtPosition(int position)
+    {
+        int[] seasons = seasonsByPosition.get(position);
+        if (seasons == null) {
+            return new ArrayList<T>(0);
+        }
+
+        List<T> l = new ArrayList<T>(seasons.length);
+        for (int id : seasons) {
+            l.add(bySeason.get(pack(id, position)));
+        }
+        return l;
+    }
+
+    public int size()
+    {
+        return bySeason.size() + byAbsolute.size();
+    }
+
+    /**
+     * A live view keyed by strings, such as <code>"3x5"</code> for a position
+     * within a season and <code>"42"</code> for an absolute number.
+     *
+     * @return
+     */
+    public Map<String, T> asStringMap()
+    {
+        return stringView;
+    }
+
+    private static final int NOT_A_NUMBER = Integer.MIN_VALUE;
+
+    /**
+     * Parse an integer, only if it's written exactly as
+     * {@link Integer#toString(int)} would write it.
+     */
+    private static int canonicalInt(String s)
+    {
+        /* Checked by hand, since keys such as "3x5" are common and exceptions are slow */
+        int l = s.length();
+        int start = (l > 0 && s.charAt(0) == '-') ? 1 : 0;
+
+        int digits = l - start;
+        if (digits == 0 || digits > 10)
+            return NOT_A_NUMBER;
+
+        /* No leading zeroes, and no negative zero */
+        if (s.charAt(start) == '0' && (digits > 1 || start > 0))
+            return NOT_A_NUMBER;
+
+        long v = 0;
+        for (int i = start; i < l; i++) {
+            char c = s.charAt(i);
+            if (c < '0' || c > '9')
+                return NOT_A_NUMBER;
+            v = v * 10 + (c - '0');
+        }
+
+        if (start > 0)
+            v = -v;
+
+        if (v <= NOT_A_NUMBER || v > Integer.MAX_VALUE)
+            return NOT_A_NUMBER;
+
+        return (int) v;
+    }
+
+    private class StringView extends AbstractMap<String, T>
+    {
+        public int size()
+        {
+            return EpisodeNumberIndex.this.size();
+        }
+
+        /**
+         * Find the table a key belongs in, and its key there.
+         *
+         * @return the table, or <code>null</code> if no episode could have this key
+         */
+        private LongTable<T> tableFor(String k, long[] key)
+        {
+            int n = canonicalInt(k);
+            if (n != NOT_A_NUMBER) {
+                key[0] = n;
+                return byAbsolute;
+            }
+
+            int x = k.lastIndexOf('x');
+            if (x < 0)
+                return null;
+
+            int position = canonicalInt(k.substring(x + 1));
+            if (position == NOT_A_NUMBER)
+                return null;
+
+            int id = seasonId(k.substring(0, x), false);
+            if (id == NO_SEASON)
+                return null;
+
+            key[0] = pack(id, position);
+            return bySeason;
+        }
+
+        public boolean containsKey(Object o)
+        {
+            if (!(o instanceof String))
+                return false;
+
+            long[] key = new long[1];
+            LongTable<T> t = tableFor((String) o, key);
+
+            return (t != null) && t.containsKey(key[0]);
+        }
+
+        public T get(Object o)
+        {
+            if (!(o instanceof String))
+                return null;
+
+            long[] key = new long[1];
+            LongTable<T> t = tableFor((String) o, key);
+
+            return (t != null) ? t.get(key[0]) : null;
+        }
+
+        public T put(String k, T episode)
+        {
+            int n = canonicalInt(k);
+            if (n != NOT_A_NUMBER) {
+                return putAbsolute(n, episode);
+            }
+
+            int x = k.lastIndexOf('x');
+            if (x >= 0) {
+                int position = canonicalInt(k.substring(x + 1));
+                if (position != NOT_A_NUMBER) {
+                    return EpisodeNumberIndex.this.put(k.substring(0, x), position, episode);
+                }
+            }
+
+            throw new IllegalArgumentException("Not an episode number: " + k);
+        }
+
+        public Set<Map.Entry<String, T>> entrySet()
+        {
+            return new AbstractSet<Map.Entry<String, T>>() {
+                public int size()
+                {
+                    return EpisodeNumberIndex.this.size();
+                }
+
+                public Iterator<Map.Entry<String, T>> iterator()
+                {
+                    return new Iterator<Map.Entry<String, T>>() {
+                        int i = 0;
+
+                        public boolean hasNext()
+                        {
+                            return i < bySeason.size() + byAbsolute.size();
+                        }
+
+                        public Map.Entry<String, T> next()
+                        {
+                            if (!hasNext())
+                                throw new NoSuchElementException();
+
+                            String k;
+                            T v;
+
+                            if (i < bySeason.size()) {
+                                long key = bySeason.keyAt(i);
+                                k = seasonName((int) (key >> 32)) + "x" + (int) key;
+                                v = bySeason.valueAt(i);
+                            } else {
+                                int j = i - bySeason.size();
+                                k = Long.toString(byAbsolute.keyAt(j));
+                                v = byAbsolute.valueAt(j);
+                            }
+
+                            i++;
+
+                            return new AbstractMap.SimpleImmutableEntry<String, T>(k, v);
+                        }
+
+                        public void remove()
+                        {
+                            throw new UnsupportedOperationException();
+                        }
+                    };
+                }
+            };
+        }
+    }
+
+    /**
+     * An insertion-ordered map from <code>long</code> keys, with open
+     * addressing into parallel arrays.
+     */
+    static class LongTable<V>
+    {
+        private long[] keys = new long[8];
+        private Object[] values = new Object[8];
+        private int size;
+
+        /* Entry index plus one, or zero for an empty slot */
+        private int[] slots = new int[16];
+
+        private static int hash(long k)
+        {
+            long h = k * 0x9E3779B97F4A7C15L;
+            return (int) (h ^ (h >>> 32));
+        }
+
+        private int slotOf(long key)
+        {
+            int mask = slots.length - 1;
+            int h = hash(key) & mask;
+
+            while (true) {
+                int e = slots[h];
+                if (e == 0 || keys[e - 1] == key)
+                    return h;
+                h = (h + 1) & mask;
+            }
+        }
+
+        int size()
+        {
+            return size;
+        }
+
+        boolean containsKey(long key)
+        {
+            return slots[slotOf(key)] != 0;
+        }
+
+        @SuppressWarnings("unchecked")
+        V get(long key)
+        {
+            int e = slots[slotOf(key)];
+            return (e == 0) ? null : (V) values[e - 1];
+        }
+
+        long keyAt(int i)
+        {
+            return keys[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        V valueAt(int i)
+        {
+            return (V) values[i];
+        }
+
+        @SuppressWarnings("unchecked")
+        V put(long key, V value)
+        {
+            int h = slotOf(key);
+            int e = slots[h];
+
+            if (e != 0) {
+                V old = (V) values[e - 1];
+                values[e - 1] = value;
+                return old;
+            }
+
+            if (size == keys.length) {
+                long[] nk = new long[size * 2];
+                System.arraycopy(keys, 0, nk, 0, size);
+                keys = nk;
+
+                Object[] nv = new Object[size * 2];
+                System.arraycopy(values, 0, nv, 0, size);
+                values = nv;
+            }
+
+            keys[size] = key;
+            values[size] = value;
+            size++;
+            slots[h] = size;
+
+            if (size * 2 > slots.length) {
+                slots = new int[slots.length * 2];
+                for (int i = 0; i < size; i++) {
+                    slots[slotOf(keys[i])] = i + 1;
+                }
+            }
+
+            return null;
+        }
+    }
+}
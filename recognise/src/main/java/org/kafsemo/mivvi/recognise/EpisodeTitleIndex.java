@@ -0,0 +1,238 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * <p>An immutable index over the episode titles and descriptions of one series,
+ * with each title normalised once.</p>
+ * <p>It finds exact titles directly, and narrows down the titles worth
+ * scoring against an input with a bigram inverted index. Each edit
+ * to a title destroys at most two of its bigrams, so a title within
+ * edit distance <i>k</i> of any prefix of the input must share at least
+ * <i>m - 1 - 2k</i> bigrams with the input. It must also be no more than
+ * <i>k</i> characters longer.</p>
+ * <p>The postings are held in flat arrays rather than boxed maps, to
+ * keep the index small.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class EpisodeTitleIndex<T>
+{
+    private final List<EpisodeTitleDetails<T>> titles;
+    private final String[] normalised;
+    private final Map<String, T> byTitle;
+
+    private final int maxLength;
+
+    /* Every bigram, sorted, with title indexes and bigram counts, in pairs, for each */
+    private final int[] bigrams;
+    private final int[][] postings;
+
+    public EpisodeTitleIndex(List<EpisodeTitleDetails<T>> l)
+    {
+        this(l, null);
+    }
+
+    /**
+     * Index titles that have already been normalised, such as those read
+     * from a compiled catalogue.
+     *
+     * @param l
+     * @param normalisedTitles the normalised form of each title, in the
+     *  same order, or <code>null</code> to normalise them here
+     */
+    public EpisodeTitleIndex(List<EpisodeTitleDetails<T>> l, List<String> normalisedTitles)
+    {
+        if (normalisedTitles != null && normalisedTitles.size() != l.size()) {
+            throw new IllegalArgumentException("Expected " + l.size() + " normalised titles, not "
+                    + normalisedTitles.size());
+        }
+
+        this.titles = new ArrayList<EpisodeTitleDetails<T>>(l);
+        this.normalised = new String[titles.size()];
+        this.byTitle = new HashMap<String, T>();
+
+        Map<Integer, List<Integer>> building = new HashMap<Integer, List<Integer>>();
+
+        int ml = 0;
+
+        Normaliser n = new Normaliser();
+
+        for (int i = 0; i < normalised.length; i++) {
+            EpisodeTitleDetails<T> etd = titles.get(i);
+
+            String ns;
+            if (normalisedTitles != null) {
+                ns = normalisedTitles.get(i);
+            } else {
+                ns = n.normalise(etd.title).toString();
+            }
+            normalised[i] = ns;
+
+            /* Earlier titles take priority */
+            if (!byTitle.containsKey(ns)) {
+                byTitle.put(ns, etd.res);
+            }
+
+            ml = Math.max(ml, ns.length());
+
+            for (Map.Entry<Integer, Integer> e : bigramCounts(ns).entrySet()) {
+                List<Integer> p = building.get(e.getKey());
+                if (p == null) {
+                    p = new ArrayList<Integer>();
+                    building.put(e.getKey(), p);
+                }
+                p.add(i);
+                p.add(e.getValue());
+            }
+        }
+
+        this.maxLength = ml;
+
+        this.bigrams = new int[building.size()];
+        int b = 0;
+        for (Integer bg : building.keySet()) {
+            bigrams[b++] = bg.intValue();
+        }
+        Arrays.sort(bigrams);
+
+        this.postings = new int[bigrams.length][];
+        for (int j = 0; j < bigrams.length; j++) {
+            List<Integer> p = building.get(bigrams[j]);
+            int[] pa = new int[p.size()];
+            for (int i = 0; i < pa.length; i++) {
+                pa[i] = p.get(i).intValue();
+            }
+            postings[j] = pa;
+        }
+    }
+
+    private static Map<Integer, Integer> bigramCounts(String s)
+    {
+        Map<Integer, Integer> m = new HashMap<Integer, Integer>();
+
+        for (int i = 0; i + 1 < s.length(); i++) {
+            Integer bg = Integer.valueOf((s.charAt(i) << 16) | s.charAt(i + 1));
+
+            Integer c = m.get(bg);
+            m.put(bg, (c == null) ? 1 : c.intValue() + 1);
+        }
+
+        return m;
+    }
+
+    /**
+     * The fewest bigrams a title of length <code>m</code> must share with
+     * a string within edit distance <code>k</code>.
+     */
+    private static long minShared(int m, int k)
+    {
+        return (long) m - 1 - 2L * k;
+    }
+
+    public int size()
+    {
+        return titles.size();
+    }
+
+    public EpisodeTitleDetails<T> get(int i)
+    {
+        return titles.get(i);
+    }
+
+    public String getNormalisedTitle(int i)
+    {
+        return normalised[i];
+    }
+
+    /**
+     * Find an episode with exactly this normalised title.
+     *
+     * @param normalisedTitle
+     * @return the episode, or <code>null</code> if there is none
+     */
+    public T getByNormalisedTitle(String normalisedTitle)
+    {
+        return byTitle.get(normalisedTitle);
+    }
+
+    /**
+     * Find every title that could be within an edit distance of some
+     * prefix of a normalised input.
+     *
+     * @param input
+     * @param maxDistance
+     * @return indexes of the candidate titles, in ascending order
+     */
+    public int[] candidates(String input, int maxDistance)
+    {
+        int n = input.length();
+
+        int[] shared = null;
+
+        /* Only count bigrams if some title is long enough to need them */
+        if (minShared(maxLength, maxDistance) > 0) {
+            shared = new int[titles.size()];
+
+            for (Map.Entry<Integer, Integer> e : bigramCounts(input).entrySet()) {
+                int b = Arrays.binarySearch(bigrams, e.getKey().intValue());
+                if (b < 0)
+                    continue;
+
+                int[] pa = postings[b];
+
+                int ic = e.getValue().intValue();
+
+                for (int j = 0; j < pa.length; j += 2) {
+                    shared[pa[j]] += Math.min(ic, pa[j + 1]);
+                }
+            }
+        }
+
+        int[] result = new int[titles.size()];
+        int count = 0;
+
+        for (int i = 0; i < normalised.length; i++) {
+            int m = normalised[i].length();
+
+            if ((long) m - n > maxDistance)
+                continue;
+
+            if (shared != null && shared[i] < minShared(m, maxDistance))
+                continue;
+
+            result[count++] = i;
+        }
+
+        if (count == result.length) {
+            return result;
+        }
+
+        int[] r = new int[count];
+        System.arraycopy(result, 0, r, 0, count);
+        return r;
+    }
+}
@@ -20,18 +20,23 @@ package org.kafsemo.mivvi.recognise;
 
 import java.io.File;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.HashMap;
+import java.util.Comparator;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
-import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.kafsemo.mivvi.algo.AhoCorasick;
+import org.kafsemo.mivvi.algo.Trie;
+
 /**
  * Use filenames to recognise and identity episodes from titles
  *  and numbers.
@@ -43,8 +48,42 @@ public class FilenameProcessor<T>
     private final SeriesDataSource<T> data;
     private final FileNamingData namingData;
 
-    private Iterable<Item<T>> seriesTitles;
-    private Iterable<Item<T>> seriesDescriptions;
+    /**
+     * Everything derived from the data source. Each part is filled in at
+     * most once, and then never changes; a change to the data replaces the
+     * whole snapshot. Each public entry point reads the snapshot once and
+     * passes it down, so a recognition already under way sees consistent,
+     * if stale, data.
+     */
+    private final class Snapshot
+    {
+        final long version = dataVersion.incrementAndGet();
+
+        volatile SeriesIndex<T> seriesIndex;
+        volatile Keywords keywords;
+        final SeriesDetailsCache<T> seriesDetails;
+
+        Snapshot(SeriesDetailsCache<T> seriesDetails)
+        {
+            this.seriesDetails = seriesDetails;
+        }
+    }
+
+    private final AtomicLong dataVersion = new AtomicLong();
+
+    private volatile Snapshot snapshot = new Snapshot(new UnboundedSeriesDetailsCache<T>());
+
+    /* Reads series details on a cache miss */
+    private final SeriesDetailsCache.Loader<T> seriesDetailsLoader = new SeriesDetailsCache.Loader<T>() {
+        public SeriesDetails<T> load(T series) throws SeriesDataException
+        {
+            return getSeriesDetailsImpl(series);
+        }
+    };
+
+    private volatile StringUtil.Levenshtein levenshtein = StringUtil.Levenshtein.BIT_PARALLEL;
+
+    private volatile RecognitionStats stats;
 
     public FilenameProcessor(SeriesDataSource<T> d, FileNamingData n)
     {
@@ -52,17 +91,73 @@ public class FilenameProcessor<T>
         this.namingData = n;
     }
 
+    /**
+     * Choose the edit distance implementation used to compare titles.
+     *
+     * @param l
+     */
+    public void setLevenshtein(StringUtil.Levenshtein l)
+    {
+        this.levenshtein = l;
+    }
+
+    /**
+     * Choose how loaded series details are kept. This discards everything
+     * already derived from the data source.
+     *
+     * @param c an empty cache
+     */
+    public void setSeriesDetailsCache(SeriesDetailsCache<T> c)
+    {
+        snapshot = new Snapshot(c);
+    }
+
+    /**
+     * @return the cache holding series details for the current data
+     */
+    public SeriesDetailsCache<T> getSeriesDetailsCache()
+    {
+        return snapshot.seriesDetails;
+    }
+
+    /**
+     * Record timings for each stage of recognition.
+     *
+     * @param s the statistics to add to, or <code>null</code> for none
+     */
+    public void setStats(RecognitionStats s)
+    {
+        this.stats = s;
+    }
+
+    public RecognitionStats getStats()
+    {
+        return stats;
+    }
+
+    /**
+     * @return the statistics to record into, or <code>null</code> if there
+     *  are none or they're switched off
+     */
+    private RecognitionStats activeStats()
+    {
+        RecognitionStats s = stats;
+        return (s != null && s.isEnabled()) ? s : null;
+    }
+
     public FilenameMatch<T> process(File file) throws SeriesDataException
     {
 //        boolean isInconsistent = false;
 
+        Snapshot sn = snapshot;
+
         String s = file.getPath();
 
         T directorySeries = null;
 
         String[] parts = s.split("\\" + File.separatorChar);
         for (int i = 0; i < parts.length - 1; i++) {
-            Matching<T> m = matchSeries(parts[i]);
+            Matching<T> m = matchSeries(sn, parts[i]);
             if ((m != null) && (parts[i].length() == m.matchLength())) {
                 directorySeries = m.matchedResource;
             }
@@ -80,20 +175,33 @@ public class FilenameProcessor<T>
             }
         }
 
-        return processName(s, directorySeries);
+        return processName(sn, s, directorySeries);
     }
 
     public FilenameMatch<T> processName(String s) throws SeriesDataException
     {
-        return processName(s, null);
+        return processName(snapshot, s, null);
     }
 
     public FilenameMatch<T> processName(String s, T directorySeries)
         throws SeriesDataException
+    {
+        return processName(snapshot, s, directorySeries);
+    }
+
+    private FilenameMatch<T> processName(Snapshot sn, String s, T directorySeries)
+        throws SeriesDataException
     {
         boolean isInconsistent = false;
 
-        Matching<T> m = matchSeriesAllowingPrefix(s);
+        /* Find every candidate series in a single pass */
+        NormalisedString ns = new NormalisedString(s);
+        List<SeriesOccurrence> candidates = findDelimitedSeries(sn, ns);
+
+        Iterator<SeriesOccurrence> ci = candidates.iterator();
+
+        SeriesOccurrence so = ci.hasNext() ? ci.next() : null;
+        Matching<T> m = (so != null) ? so.toMatching(s, ns) : null;
 
         /* Only allow ten characters of chaff */
         if (m != null && m.start > 10) {
@@ -112,7 +220,7 @@ public class FilenameProcessor<T>
 
             String remainder = s.substring(m.end);
 
-            FilenameMatch<T> fnm = processFromSeries(series, remainder, isInconsistent, m.end);
+            FilenameMatch<T> fnm = processFromSeries(sn, series, remainder, isInconsistent, m.end);
             if (fnm != null) {
                 if (o > 0) {
                     fnm.ignored.add(new Matching<T>(s, 0, o, null, null));
@@ -122,18 +230,28 @@ public class FilenameProcessor<T>
 
             o = m.end + 1;
 
-            m = matchSeriesAllowingPrefix(s, o);
+            /* The next candidate must start after this one's word */
+            int next = so.end + 1;
+
+            m = null;
+            while (ci.hasNext()) {
+                so = ci.next();
+                if (so.start >= next) {
+                    m = so.toMatching(s, ns);
+                    break;
+                }
+            }
         }
 
         if (directorySeries != null) {
-            return processFromSeries(directorySeries, s, isInconsistent, 0);
+            return processFromSeries(sn, directorySeries, s, isInconsistent, 0);
         } else {
             return null;
         }
     }
 
 
-    private FilenameMatch<T> processFromSeries(T series, String remainder, boolean isInconsistent, int o) throws SeriesDataException
+    private FilenameMatch<T> processFromSeries(final Snapshot sn, T series, String remainder, boolean isInconsistent, int o) throws SeriesDataException
     {
         List<Matching<T>> ecl = new ArrayList<Matching<T>>();
 
@@ -141,7 +259,7 @@ public class FilenameProcessor<T>
 
         do {
             /* Match a numeric episode code */
-            e = findEpisodes(series, remainder);
+            e = findEpisodes(sn, series, remainder);
             if (e.size() > 0) {
                 Matching<T> m2 = e.get(0);
 
@@ -156,20 +274,27 @@ public class FilenameProcessor<T>
         } while (!e.isEmpty());
 
         /* A date could really be anywhere, but just check here for now */
-        NormalisedString ns = new NormalisedString(remainder);
+        RecognitionStats st = activeStats();
+        long t0 = (st != null) ? System.nanoTime() : 0;
+
+        Normaliser ns = Normaliser.forThread().normalise(remainder);
         Matching<T> m = matchDate(ns.toString());
+
+        if (st != null) {
+            st.dateMatching.record(System.nanoTime() - t0);
+        }
+
         if (m != null) {
             remainder = remainder.substring(ns.getOriginalPosition(m.end));
             o += ns.getOriginalPosition(m.end);
         }
 
-        List<TitleMatching<T>> l = getClosestEpisodes(series, remainder);
-
         /* If numericGuesses is empty, that means no numbers referred to
          *  real episodes. If it's null, there were no valid numeric
          *  tokens.
          */
-        Set<T> numericGuesses;
+        final Set<T> numericGuesses;
+        Comparator<TitleMatching<?>> order;
 
         if (ecl.size() >= 1) {
             numericGuesses = new HashSet<T>();
@@ -179,33 +304,61 @@ public class FilenameProcessor<T>
                 if (uri != null)
                     numericGuesses.add(uri);
             }
-            Collections.sort(l, TitleMatching.episodePriorityComparator(numericGuesses));
+            order = TitleMatching.episodePriorityComparator(numericGuesses);
         } else {
             numericGuesses = null;
+            order = TitleMatching.MATCHING_COMPARATOR;
         }
 
-        Iterator<TitleMatching<T>> i = l.iterator();
+        /*
+         * Only two matches are needed: the best with nothing but keywords
+         * after it, which is exact, and the best of all, as a suggestion.
+         */
+        final TitleSelection<T> exact = new TitleSelection<T>(order, 1),
+            closest = new TitleSelection<T>(order, 1);
+
+        final String rem = remainder;
+
+        /* Whether the trailer after each end position is blank, once known */
+        final byte[] blankTrailer = new byte[remainder.length() + 1];
 
-        while (i.hasNext()) {
-            TitleMatching<T> tm = i.next();
+        scoreTitles(sn, series, new NormalisedString(remainder), new TitleSink<T>() {
+            public void add(TitleMatching<T> tm) throws SeriesDataException
+            {
+                closest.offer(tm);
 
-            String trailer = remainder.substring(tm.end);
+                if (blankTrailer[tm.end] == 0) {
+                    String trailer = rem.substring(tm.end);
 
-            /* Discard keywords */
-            trailer = trailer.substring(matchKeywords(trailer).end);
+                    /* Discard keywords */
+                    trailer = trailer.substring(matchKeywords(sn, trailer).end);
 
-            if (new NormalisedString(trailer).toString().length() == 0) {
-                if (numericGuesses == null)
-                    return new FilenameMatch<T>(tm.matchedResource, true);
-                else
-                    return new FilenameMatch<T>(tm.matchedResource, numericGuesses.contains(tm.matchedResource));
+                    blankTrailer[tm.end] = (byte) (Normaliser.isBlank(trailer) ? 1 : 2);
+                }
+
+                if (blankTrailer[tm.end] == 1) {
+                    exact.offer(tm);
+                }
             }
 
+            public boolean needsSuggestions()
+            {
+                /* Both choices would already be exact */
+                return !exact.isFullOfExact();
+            }
+        });
+
+        TitleMatching<T> best = exact.best();
+        if (best != null) {
+            if (numericGuesses == null)
+                return new FilenameMatch<T>(best.matchedResource, true);
+            else
+                return new FilenameMatch<T>(best.matchedResource, numericGuesses.contains(best.matchedResource));
         }
 
         /* No exact match, so suggest the best one */
-        if (l.size() >= 1) {
-            TitleMatching<T> tm = l.get(0);
+        if (!closest.isEmpty()) {
+            TitleMatching<T> tm = closest.best();
 
             /**
              * Enforce numeric matching if a match isn't exact.
@@ -224,9 +377,9 @@ public class FilenameProcessor<T>
 
             T numericGuess = numericGuesses.iterator().next();
 
-            int ke = matchKeywords(remainder).end;
+            int ke = matchKeywords(sn, remainder).end;
             String trailer = remainder.substring(ke);
-            if (new NormalisedString(trailer).toString().length() == 0) {
+            if (Normaliser.isBlank(trailer)) {
                 return new FilenameMatch<T>(numericGuess, false);
             }
 
@@ -243,54 +396,113 @@ public class FilenameProcessor<T>
         return null;
     }
 
-    private Iterable<Item<T>> getTitlesAndDescriptions() throws SeriesDataException
+    private SeriesIndex<T> getSeriesIndex(Snapshot s) throws SeriesDataException
     {
-        Collection<Item<T>> c = new ArrayList<Item<T>>();
-
-        for (Item<T> i : getSeriesTitles()) {
-            c.add(i);
-        }
-
-        for (Item<T> i : getSeriesDescriptions()) {
-            c.add(i);
+        /* Racing threads may each build an index; any one will do */
+        SeriesIndex<T> si = s.seriesIndex;
+        if (si == null) {
+            si = new SeriesIndex<T>(data);
+            s.seriesIndex = si;
         }
+        return si;
+    }
 
-        /* Add titles without definite article */
-        for (Item<T> i : getSeriesTitles()) {
-            if (i.label.toLowerCase().startsWith("the ")) {
-                c.add(new Item<T>(i.label.substring(4), i.resource));
-            }
-        }
+    /**
+     * Discard everything derived from the data source, so that it will be
+     * rebuilt on next use. Call this whenever the underlying series data
+     * changes.
+     */
+    public void seriesDataChanged()
+    {
+        snapshot = new Snapshot(snapshot.seriesDetails.emptyCopy());
+    }
 
-        return c;
+    /**
+     * A number that changes whenever {@link #seriesDataChanged()} is called,
+     * so anything derived from recognition results can tell when they may
+     * be out of date.
+     *
+     * @return
+     */
+    public long getDataVersion()
+    {
+        return snapshot.version;
     }
 
-    private Iterable<Item<T>> getSeriesTitles() throws SeriesDataException
+    public T getSeries(String s) throws SeriesDataException
     {
-        if (seriesTitles == null) {
-            seriesTitles = data.getSeriesTitles();
-        }
-        return seriesTitles;
+        return getSeriesIndex(snapshot).getSeries(s);
     }
 
-    private Iterable<Item<T>> getSeriesDescriptions() throws SeriesDataException
+    /**
+     * The series a name most probably belongs to: the one with the earliest
+     * delimited label. This is only a hint for grouping work; recognition
+     * itself may settle on another series.
+     *
+     * @param s
+     * @return the series, or <code>null</code> if no label occurs
+     * @throws SeriesDataException
+     */
+    T guessSeries(String s) throws SeriesDataException
     {
-        if (seriesDescriptions == null) {
-            seriesDescriptions = data.getSeriesDescriptions();
-        }
-        return seriesDescriptions;
+        List<SeriesOccurrence> l = findDelimitedSeries(snapshot, new NormalisedString(s));
+        return l.isEmpty() ? null : l.get(0).item.resource;
     }
 
+    /**
+     * Load the details for a series ahead of recognising its episodes.
+     *
+     * @param series
+     * @throws SeriesDataException
+     */
+    void preloadSeriesDetails(T series) throws SeriesDataException
+    {
+        getSeriesDetails(snapshot, series);
+    }
 
-    public T getSeries(String s) throws SeriesDataException
+    /**
+     * Load the details of every series in one sweep, if the data source
+     * can.
+     *
+     * @return the number of series loaded, or -1 if the data source can
+     *  only load them one at a time
+     * @throws SeriesDataException
+     */
+    int preloadAllSeriesDetailsInBulk() throws SeriesDataException
     {
-        for (Item<T> i : getTitlesAndDescriptions()) {
-            if (s.equalsIgnoreCase(i.label)) {
-                    return i.resource;
-            }
+        if (!(data instanceof BulkSeriesDataSource<?>)) {
+            return -1;
         }
 
-        return null;
+        SeriesDetailsCache<T> c = snapshot.seriesDetails;
+
+        Map<T, SeriesDetails<T>> all = ((BulkSeriesDataSource<T>) data).getAllSeriesDetails();
+
+        for (Map.Entry<T, SeriesDetails<T>> e : all.entrySet()) {
+            final SeriesDetails<T> sd = e.getValue();
+
+            c.get(e.getKey(), new SeriesDetailsCache.Loader<T>() {
+                public SeriesDetails<T> load(T series)
+                {
+                    return sd;
+                }
+            });
+        }
+
+        return all.size();
+    }
+
+    /**
+     * @return every series with a title, each once
+     * @throws SeriesDataException
+     */
+    Collection<T> getAllSeries() throws SeriesDataException
+    {
+        Set<T> s = new LinkedHashSet<T>();
+        for (Item<T> i : data.getSeriesTitles()) {
+            s.add(i.resource);
+        }
+        return s;
     }
 
     /**
@@ -303,30 +515,54 @@ public class FilenameProcessor<T>
      */
     public Matching<T> matchSeries(String s) throws SeriesDataException
     {
-        NormalisedString ns = new NormalisedString(s);
+        return matchSeries(snapshot, s);
+    }
 
-        String lns = ns.toString().toLowerCase();
+    private Matching<T> matchSeries(Snapshot sn, String s) throws SeriesDataException
+    {
+        RecognitionStats st = activeStats();
+        if (st == null) {
+            return matchSeriesImpl(sn, s);
+        }
 
-        Matching<T> m = null;
+        long t0 = System.nanoTime();
+        try {
+            return matchSeriesImpl(sn, s);
+        } finally {
+            st.seriesMatching.record(System.nanoTime() - t0);
+        }
+    }
 
-        for (Item<T> i : getTitlesAndDescriptions()) {
-            T series = i.resource;
-            String label = i.label;
+    private Matching<T> matchSeriesImpl(Snapshot sn, String s) throws SeriesDataException
+    {
+        final NormalisedString ns = new NormalisedString(s);
 
-            NormalisedString nls = new NormalisedString(label);
+        final int[] best = {-1, 0};
 
-            if (nls.toString().length() == 0)
-                continue;
+        SeriesIndex<T> si = getSeriesIndex(sn);
 
-            if (lns.startsWith(nls.toString().toLowerCase())) {
-                /* The amount of the original string covered by this match */
-                int origMatchAmount = ns.getOriginalPosition(nls.toString().length());
-                if ((m == null) || (origMatchAmount > m.matchLength()))
-                    m = new Matching<T>(s, 0, origMatchAmount, i.label, series);
+        si.findAll(ns.toString(), new AhoCorasick.MatchHandler() {
+            public void match(int start, int end, int key)
+            {
+                if (start == 0) {
+                    if ((best[0] < 0) || (end > best[1])
+                            || (end == best[1] && key < best[0])) {
+                        best[0] = key;
+                        best[1] = end;
+                    }
+                }
             }
-        }
+        });
 
-        return m;
+        if (best[0] < 0)
+            return null;
+
+        Item<T> i = si.getLabel(best[0]);
+
+        /* The amount of the original string covered by this match */
+        int origMatchAmount = ns.getOriginalPosition(best[1]);
+
+        return new Matching<T>(s, 0, origMatchAmount, i.label, i.resource);
     }
 
     public Matching<T> matchSeriesAllowingPrefix(String s) throws SeriesDataException
@@ -334,63 +570,124 @@ public class FilenameProcessor<T>
         return matchSeriesAllowingPrefix(s, 0);
     }
 
+    /**
+     * Find the earliest word-delimited series name in the string,
+     * starting no earlier than an offset into its normalised form.
+     * Of those starting at the same point, take the longest.
+     *
+     * @param s
+     * @param o
+     * @return
+     * @throws SeriesDataException
+     */
     public Matching<T> matchSeriesAllowingPrefix(String s, int o) throws SeriesDataException
     {
         NormalisedString ns = new NormalisedString(s);
 
-        String lns = ns.toString().toLowerCase();
-
-        Matching<T> m = null;
+        for (SeriesOccurrence so : findDelimitedSeries(snapshot, ns)) {
+            if (so.start >= o) {
+                return so.toMatching(s, ns);
+            }
+        }
 
-        for (Item<T> i : getTitlesAndDescriptions()) {
-            T series = i.resource;
-            String label = i.label;
+        return null;
+    }
 
-            NormalisedString nls = new NormalisedString(label);
+    /**
+     * An occurrence of a series label, in normalised string coordinates.
+     */
+    private class SeriesOccurrence
+    {
+        final int start, end;
+        final int label;
+        final Item<T> item;
+
+        SeriesOccurrence(int start, int end, int label, Item<T> item)
+        {
+            this.start = start;
+            this.end = end;
+            this.label = label;
+            this.item = item;
+        }
 
-            if (nls.toString().length() == 0)
-                continue;
+        Matching<T> toMatching(String s, NormalisedString ns)
+        {
+            return new Matching<T>(s, ns.getOriginalPosition(start), ns.getOriginalPosition(end),
+                    item.label, item.resource);
+        }
+    }
 
-            int p = lns.indexOf(nls.toString(), o);
+    /**
+     * Earliest first, then longest, then in label order.
+     */
+    private final Comparator<SeriesOccurrence> occurrenceOrder = new Comparator<SeriesOccurrence>() {
+        public int compare(SeriesOccurrence a, SeriesOccurrence b)
+        {
+            if (a.start != b.start) {
+                return (a.start < b.start) ? -1 : 1;
+            }
 
-            if (p >= 0) {
-                int nsEnd = p + nls.toString().length();
-                /* Require word delimiting */
-                if (((p == 0) || (lns.charAt(p - 1) == ' '))
-                    && ((nsEnd == lns.length()) || (lns.charAt(nsEnd) == ' ')))
-                {
-                    if ((m == null) || (p < m.start) || (p == m.start && nls.toString().length() > m.matchLength())) {
-                        m = new Matching<T>(s, ns.getOriginalPosition(p), ns.getOriginalPosition(p + nls.toString().length()),
-                                         label, series);
-                    }
-                }
+            if (a.end != b.end) {
+                return (a.end > b.end) ? -1 : 1;
             }
+
+            return (a.label < b.label) ? -1 : ((a.label == b.label) ? 0 : 1);
         }
+    };
 
-        return m;
+    /**
+     * Find all word-delimited occurrences of series labels in a normalised
+     * string, in a single pass.
+     *
+     * @param ns
+     * @return the occurrences, best first
+     * @throws SeriesDataException
+     */
+    private List<SeriesOccurrence> findDelimitedSeries(Snapshot sn, NormalisedString ns) throws SeriesDataException
+    {
+        RecognitionStats st = activeStats();
+        if (st == null) {
+            return findDelimitedSeriesImpl(sn, ns);
+        }
+
+        long t0 = System.nanoTime();
+        try {
+            return findDelimitedSeriesImpl(sn, ns);
+        } finally {
+            st.seriesMatching.record(System.nanoTime() - t0);
+        }
     }
 
-    /* Patterns for season and episode numbers */
-    Pattern[] pa = {
-            Pattern.compile("^(\\d+)x(\\d+)\\b", Pattern.CASE_INSENSITIVE),
-            Pattern.compile("^s(\\d+)ep?(\\d+)\\b", Pattern.CASE_INSENSITIVE),
+    private List<SeriesOccurrence> findDelimitedSeriesImpl(Snapshot sn, NormalisedString ns) throws SeriesDataException
+    {
+        final String lns = ns.toString();
 
-            /* "Series", rather than "Season" - en_GB terminology */
-            Pattern.compile("^series\\s+(\\d+)\\s+episode\\s+(\\d+)\\b", Pattern.CASE_INSENSITIVE)
-    };
+        final List<SeriesOccurrence> l = new ArrayList<SeriesOccurrence>();
 
-    /* A single number */
-    Pattern p2 = Pattern.compile("^(\\d+)\\b");
+        final SeriesIndex<T> si = getSeriesIndex(sn);
 
-    /* A 'part' number, for single-season series */
-    Pattern p3 = Pattern.compile("^p(?:ar)?t\\s*(\\d+)\\b", Pattern.CASE_INSENSITIVE);
+        si.findAll(lns, new AhoCorasick.MatchHandler() {
+            public void match(int start, int end, int key)
+            {
+                /* Require word delimiting */
+                if (((start == 0) || (lns.charAt(start - 1) == ' '))
+                    && ((end == lns.length()) || (lns.charAt(end) == ' ')))
+                {
+                    l.add(new SeriesOccurrence(start, end, key, si.getLabel(key)));
+                }
+            }
+        });
+
+        Collections.sort(l, occurrenceOrder);
+
+        return l;
+    }
 
-    private void addBySeasonAndProgramNumber(T series, String s, NormalisedString ns, Matcher m, int season, int num, List<Matching<T>> l) throws SeriesDataException
+    private void addBySeasonAndProgramNumber(SeriesDetails<T> sd, String s, int start, int end, int season, int num, List<Matching<T>> l)
     {
-        T episode = getBySeasonAndProgramNumber(series, season, num);
+        T episode = sd.episodeNumbers.get(season, num);
 
-        l.add(new Matching<T>(s, ns.getOriginalPosition(m.start()),
-                            ns.getOriginalPosition(m.end()),
+        l.add(new Matching<T>(s, start, end,
                             season + "x" + num,
                             episode));
     }
@@ -407,48 +704,61 @@ public class FilenameProcessor<T>
     public List<Matching<T>> findEpisodes(T series, String s)
         throws SeriesDataException
     {
-        List<Matching<T>> l = new ArrayList<Matching<T>>(2);
+        return findEpisodes(snapshot, series, s);
+    }
 
-        NormalisedString ns = new NormalisedString(s);
+    private List<Matching<T>> findEpisodes(Snapshot sn, T series, String s)
+        throws SeriesDataException
+    {
+        RecognitionStats st = activeStats();
+        if (st == null) {
+            return findEpisodesImpl(sn, series, s);
+        }
 
-        Matcher m = null;
+        long t0 = System.nanoTime();
+        try {
+            return findEpisodesImpl(sn, series, s);
+        } finally {
+            st.episodeCodes.record(System.nanoTime() - t0);
+        }
+    }
 
-        for (int i = 0; (m == null) && (i < pa.length); i++) {
-            m = pa[i].matcher(ns.toString());
-            if (!m.find()) {
-                m = null;
-            }
+    private List<Matching<T>> findEpisodesImpl(Snapshot sn, T series, String s)
+        throws SeriesDataException
+    {
+        List<Matching<T>> l = new ArrayList<Matching<T>>(2);
+
+        Normaliser ns = Normaliser.forThread().normalise(s);
+
+        EpisodeCodeLexer code = new EpisodeCodeLexer();
+        if (!code.scan(ns)) {
+            return l;
         }
 
-        if (m != null) {
-            int season = Integer.parseInt(m.group(1)),
-                num = Integer.parseInt(m.group(2));
+        /* Map back to the original before anything else can normalise */
+        int start = ns.getOriginalPosition(0),
+            end = ns.getOriginalPosition(code.end);
 
-            addBySeasonAndProgramNumber(series, s, ns, m, season, num, l);
-        } else {
+        int num = code.number;
 
-            m = p2.matcher(ns.toString());
+        SeriesDetails<T> sd = getSeriesDetails(sn, series);
 
-            if (m.find()) {
-                int num = Integer.parseInt(m.group(1));
+        switch (code.kind) {
+            case EpisodeCodeLexer.SEASON_AND_EPISODE:
+            case EpisodeCodeLexer.PART:
+                addBySeasonAndProgramNumber(sd, s, start, end, code.season, num, l);
+                break;
 
-                T episode = getByEpisodeNumber(series, num);
-                l.add(new Matching<T>(s, ns.getOriginalPosition(m.start(1)),
-                                             ns.getOriginalPosition(m.end(1)),
+            case EpisodeCodeLexer.NUMBER:
+                T episode = sd.episodeNumbers.getAbsolute(num);
+                l.add(new Matching<T>(s, start, end,
                                              Integer.toString(num),
                                              episode));
 
                 if (num >= 100) {
-                    addBySeasonAndProgramNumber(series, s, ns, m, num / 100, num % 100, l);
+                    addBySeasonAndProgramNumber(sd, s, start, end, num / 100, num % 100, l);
                 }
-            } else {
-                m = p3.matcher(ns.toString());
-                if (m.find()) {
-                    int num = Integer.parseInt(m.group(1));
-
-                    addBySeasonAndProgramNumber(series, s, ns, m, 1, num, l);
-                }
-            }
+                break;
         }
 
         return l;
@@ -483,12 +793,12 @@ public class FilenameProcessor<T>
 
     public T getByEpisodeNumber(T series, int i) throws SeriesDataException
     {
-        return getSeriesDetails(series).episodesByNumber.get(Integer.toString(i));
+        return getSeriesDetails(snapshot, series).episodeNumbers.getAbsolute(i);
     }
 
     public T getBySeasonAndProgramNumber(T series, int season, int i) throws SeriesDataException
     {
-        return getSeriesDetails(series).episodesByNumber.get(season + "x" + i);
+        return getSeriesDetails(snapshot, series).episodeNumbers.get(season, i);
     }
 
     /**
@@ -501,22 +811,7 @@ public class FilenameProcessor<T>
      */
     public List<T> getAllEpisodesWithEpisodeNumber(T series, int n) throws SeriesDataException
     {
-        List<T> l = new ArrayList<T>();
-
-        String s = "x" + n;
-
-        Map<String, T> m = getSeriesDetails(series).episodesByNumber;
-
-        Iterator<Entry<String, T>> i = m.entrySet().iterator();
-        while (i.hasNext()) {
-            Entry<String, T> e = i.next();
-
-            if (e.getKey().endsWith(s)) {
-                l.add(e.getValue());
-            }
-        }
-
-        return l;
+        return getSeriesDetails(snapshot, series).episodeNumbers.getAllAtPosition(n);
     }
 
     /**
@@ -529,55 +824,59 @@ public class FilenameProcessor<T>
      */
     public T getEpisodeByTitle(T series, String title) throws SeriesDataException
     {
-        NormalisedString nt = new NormalisedString(title);
-
-        List<EpisodeTitleDetails<T>> l = getSeriesDetails(series).episodeTitlesAndDescriptions;
-
-        Iterator<EpisodeTitleDetails<T>> i = l.iterator();
-        while (i.hasNext()) {
-            EpisodeTitleDetails<T> etd = i.next();
+        return getEpisodeByTitle(snapshot, series, title);
+    }
 
-            if (nt.toString().equals(new NormalisedString(etd.title).toString()))
-                return etd.res;
-        }
+    private T getEpisodeByTitle(Snapshot sn, T series, String title) throws SeriesDataException
+    {
+        EpisodeTitleIndex<T> eti = getTitleIndex(sn, series);
 
-        return null;
+        return eti.getByNormalisedTitle(Normaliser.forThread().normalise(title).toString());
     }
 
     public T getEpisodeByTitleApprox(T series, String title) throws SeriesDataException
     {
-        T res = getEpisodeByTitle(series, title);
+        Snapshot sn = snapshot;
+
+        T res = getEpisodeByTitle(sn, series, title);
 
         if (res != null)
             return res;
 
-        for (TitleMatching<T> tm : getClosestEpisodes(series, title)) {
-//            System.out.println(title + ", " + tm.weight + ", " + tm.realString);
+        /* The closest that covers the whole title */
+        final int length = title.length();
+        final TitleSelection<T> closest = new TitleSelection<T>(TitleMatching.MATCHING_COMPARATOR, 1);
+
+        scoreTitles(sn, series, new NormalisedString(title), new TitleSink<T>() {
+            public void add(TitleMatching<T> tm)
+            {
+//                System.out.println(title + ", " + tm.weight + ", " + tm.realString);
+
+                if (tm.matchLength() == length)
+                    closest.offer(tm);
+                /*
+                if (tm.isExact && tm.matchLength() == title.length()) {
+                    // If there's ambiguity, fail
+                    if (res != null)
+                        return null;
+                    res = tm.getResource();
+                }
+                */
+            }
 
-            if (tm.matchLength() == title.length())
-                return tm.getResource();
-            /*
-            if (tm.isExact && tm.matchLength() == title.length()) {
-                // If there's ambiguity, fail
-                if (res != null)
-                    return null;
-                res = tm.getResource();
+            public boolean needsSuggestions()
+            {
+                return !closest.isFullOfExact();
             }
-            */
-        }
+        });
 
-        return res;
+        TitleMatching<T> tm = closest.best();
+        return (tm != null) ? tm.getResource() : res;
     }
 
-    private Map<T, SeriesDetails<T>> seriesDetails = new HashMap<T, SeriesDetails<T>>();
-
-    private SeriesDetails<T> getSeriesDetails(T series) throws SeriesDataException
+    private SeriesDetails<T> getSeriesDetails(Snapshot sn, T series) throws SeriesDataException
     {
-        SeriesDetails<T> sd = seriesDetails.get(series);
-        if (sd == null) {
-            sd = getSeriesDetailsImpl(series);
-            seriesDetails.put(series, sd);
-        }
+        SeriesDetails<T> sd = sn.seriesDetails.get(series, seriesDetailsLoader);
 
         if (sd == null) {
             throw new SeriesDataException("No data available for series " + series);
@@ -586,28 +885,31 @@ public class FilenameProcessor<T>
         return sd;
     }
 
-    private List<EpisodeTitleDetails<T>> getEpisodeTitles(T series) throws SeriesDataException
+    private EpisodeTitleIndex<T> getTitleIndex(Snapshot sn, T series) throws SeriesDataException
     {
-        return getSeriesDetails(series).episodeTitlesAndDescriptions;
+        return getSeriesDetails(sn, series).getTitleIndex();
     }
 
     public Matching<T> matchEpisodeTitle(T series, String s) throws SeriesDataException
     {
         Matching<T> m = null;
 
-        NormalisedString ns = new NormalisedString(s);
+        EpisodeTitleIndex<T> eti = getTitleIndex(snapshot, series);
 
-        for (EpisodeTitleDetails<T> etd : getEpisodeTitles(series)) {
+        Normaliser ns = Normaliser.forThread().normalise(s);
+
+        for (int i = 0; i < eti.size(); i++) {
+            EpisodeTitleDetails<T> etd = eti.get(i);
             String label = etd.title;
 
-            NormalisedString nls = new NormalisedString(label);
+            String nls = eti.getNormalisedTitle(i);
 
-            if (nls.toString().length() == 0)
+            if (nls.length() == 0)
                 continue;
 
-            if (ns.toString().startsWith(nls.toString())) {
+            if (ns.startsWith(nls)) {
                 /* The amount of the original string covered by this match */
-                int origMatchAmount = ns.getOriginalPosition(nls.toString().length());
+                int origMatchAmount = ns.getOriginalPosition(nls.length());
                 if ((m == null) || (origMatchAmount > m.matchLength()))
                     m = new Matching<T>(s, ns.getOriginalPosition(0), origMatchAmount, label, etd.res);
             }
@@ -616,65 +918,243 @@ public class FilenameProcessor<T>
         return m;
     }
 
-    private List<NormalisedString> keywords = null;
-
-    public Matching<T> matchKeyword(String s) throws SeriesDataException
+    /**
+     * The keywords, normalised and compiled into a trie.
+     */
+    private static class Keywords
     {
-        NormalisedString ns = new NormalisedString(s);
+        final String[] labels;
+        final Trie trie;
 
-        if (keywords == null) {
-            List<NormalisedString> l = new ArrayList<NormalisedString>();
+        Keywords(Iterable<String> source)
+        {
+            List<String> l = new ArrayList<String>();
+            List<String> nl = new ArrayList<String>();
+
+            Normaliser n = new Normaliser();
 
-            for (String label : namingData.getKeywords()) {
-                l.add(new NormalisedString(label));
+            for (String label : source) {
+                l.add(label);
+                nl.add(n.normalise(label).toString());
             }
 
-            this.keywords = l;
+            this.labels = l.toArray(new String[l.size()]);
+            this.trie = new Trie(nl);
         }
+    }
 
-        Matching<T> m = null;
+    /**
+     * Chooses among the keywords that start a normalised string at some
+     * offset, just as the original scan through the keyword list did: a
+     * later keyword replaces the current choice if its match reaches further
+     * than the current choice's length. When the string starts with
+     * delimiters, that isn't quite the same as choosing the longest.
+     */
+    private static class KeywordChoice implements Trie.PrefixHandler
+    {
+        private final Normaliser ns;
 
-        for (NormalisedString nls : keywords) {
-            if (nls.toString().length() == 0)
-                continue;
+        /* Candidates, in keyword order, with their original end positions */
+        private int[] keys = new int[4];
+        private int[] ends = new int[4];
+        private int count;
 
-            if (ns.toString().startsWith(nls.toString())) {
-                /* The amount of the original string covered by this match */
-                int origMatchAmount = ns.getOriginalPosition(nls.toString().length());
-                if ((m == null) || (origMatchAmount > m.matchLength()))
-                    m = new Matching<T>(s, ns.getOriginalPosition(0), origMatchAmount, nls.getOriginal(), null);
+        /* The chosen keyword, and its original end position */
+        int key;
+        int end;
+
+        KeywordChoice(Normaliser ns)
+        {
+            this.ns = ns;
+        }
+
+        public void prefix(int e, int k)
+        {
+            if (count == keys.length) {
+                keys = Arrays.copyOf(keys, count * 2);
+                ends = Arrays.copyOf(ends, count * 2);
             }
+
+            int i = count++;
+            while (i > 0 && keys[i - 1] > k) {
+                keys[i] = keys[i - 1];
+                ends[i] = ends[i - 1];
+                i--;
+            }
+            keys[i] = k;
+            ends[i] = ns.getOriginalPosition(e);
+        }
+
+        /**
+         * @param t
+         * @param j the normalised offset to match at
+         * @param o the original offset the remaining string starts at
+         * @return whether any keyword matched
+         */
+        boolean choose(Trie t, int j, int o)
+        {
+            count = 0;
+            t.findPrefixes(ns, j, this);
+
+            int start = ns.getOriginalPosition(j) - o;
+
+            key = -1;
+            for (int i = 0; i < count; i++) {
+                if (key < 0 || (ends[i] - o) > (end - o) - start) {
+                    key = keys[i];
+                    end = ends[i];
+                }
+            }
+
+            return key >= 0;
         }
-        return m;
+    }
+
+    private Keywords getKeywords(Snapshot sn) throws SeriesDataException
+    {
+        Keywords keywords = sn.keywords;
+        if (keywords == null) {
+            keywords = new Keywords(namingData.getKeywords());
+            sn.keywords = keywords;
+        }
+        return keywords;
+    }
+
+    public Matching<T> matchKeyword(String s) throws SeriesDataException
+    {
+        Keywords keywords = getKeywords(snapshot);
+
+        Normaliser ns = Normaliser.forThread().normalise(s);
+
+        KeywordChoice c = new KeywordChoice(ns);
+        if (!c.choose(keywords.trie, 0, 0)) {
+            return null;
+        }
+
+        return new Matching<T>(s, ns.getOriginalPosition(0), c.end, keywords.labels[c.key], null);
     }
 
     public List<TitleMatching<T>> getClosestEpisodes(T series, String s, float maxDistance) throws SeriesDataException
     {
-        return getClosestEpisodes(series, new NormalisedString(s), maxDistance);
+        return getClosestEpisodes(snapshot, series, new NormalisedString(s), maxDistance, Integer.MAX_VALUE);
+    }
+
+    private List<TitleMatching<T>> getClosestEpisodes(Snapshot sn, T series, NormalisedString ns, float maxDistance, int limit)
+        throws SeriesDataException
+    {
+        final TitleSelection<T> sel = new TitleSelection<T>(TitleMatching.MATCHING_COMPARATOR, limit);
+
+        scoreTitles(sn, series, ns, maxDistance, new TitleSink<T>() {
+            public void add(TitleMatching<T> m)
+            {
+                sel.offer(m);
+            }
+
+            public boolean needsSuggestions()
+            {
+                return !sel.isFullOfExact();
+            }
+        });
+
+        return sel.toList();
+    }
+
+    /**
+     * Receives each episode title close enough to be suggested, in no
+     * particular order, except that every exact match comes before any
+     * that is only a suggestion.
+     */
+    private interface TitleSink<T>
+    {
+        void add(TitleMatching<T> m) throws SeriesDataException;
+
+        /**
+         * @return whether a match that is only close enough to suggest
+         *  could still change the outcome, once every exact match has
+         *  been added
+         */
+        boolean needsSuggestions();
+    }
+
+    private void scoreTitles(Snapshot sn, T series, NormalisedString ns, TitleSink<T> sink) throws SeriesDataException
+    {
+        scoreTitles(sn, series, ns, StringUtil.maxDistance(ns.toString()), sink);
     }
 
-    private List<TitleMatching<T>> getClosestEpisodes(T series, NormalisedString ns, float maxDistance) throws SeriesDataException
+    private void scoreTitles(Snapshot sn, T series, NormalisedString ns, float maxDistance, TitleSink<T> sink)
+        throws SeriesDataException
     {
-        List<TitleMatching<T>> matches = new ArrayList<TitleMatching<T>>();
+        RecognitionStats st = activeStats();
+        if (st == null) {
+            scoreTitlesImpl(sn, series, ns, maxDistance, sink, null);
+            return;
+        }
 
+        long t0 = System.nanoTime();
+        try {
+            scoreTitlesImpl(sn, series, ns, maxDistance, sink, st);
+        } finally {
+            st.titleScoring.record(System.nanoTime() - t0);
+        }
+    }
+
+    private void scoreTitlesImpl(Snapshot sn, T series, NormalisedString ns, float maxDistance, TitleSink<T> sink,
+            RecognitionStats st) throws SeriesDataException
+    {
         float maxDistPerChar = StringUtil.weight(maxDistance, ns.toString().length());
         float suggestionDistPerChar = StringUtil.weight(StringUtil.suggestionFactor(maxDistance), ns.toString().length());
-//        float bestDistPerChar = Float.MAX_VALUE;
-//        int bestLength = 0;
 
-        List<EpisodeTitleDetails<T>> l = getEpisodeTitles(series);
+        EpisodeTitleIndex<T> eti = getTitleIndex(sn, series);
+
+        /*
+         * Exact matches need a much tighter bound, which lets the bigram
+         * index rule out most titles. Each one outranks any suggestion, so
+         * only look further if the sink could still use a suggestion.
+         */
+        scoreCandidates(eti, ns, maxDistPerChar, maxDistPerChar, Float.NEGATIVE_INFINITY, sink, st);
+
+        if (sink.needsSuggestions()) {
+            scoreCandidates(eti, ns, suggestionDistPerChar, maxDistPerChar, maxDistPerChar, sink, st);
+        }
+    }
+
+    /**
+     * Score the titles against an input, adding those within a weighted
+     * distance to the sink.
+     *
+     * @param eti
+     * @param ns
+     * @param limitPerChar the greatest weighted distance to add
+     * @param exactPerChar the greatest weighted distance for an exact match
+     * @param donePerChar matches no further than this have already been added
+     * @param sink
+     * @param st
+     * @throws SeriesDataException
+     */
+    private void scoreCandidates(EpisodeTitleIndex<T> eti, NormalisedString ns, float limitPerChar,
+            float exactPerChar, float donePerChar, TitleSink<T> sink, RecognitionStats st)
+        throws SeriesDataException
+    {
+        /* No candidate can be added if its unpadded distance exceeds this */
+        int bound = (int) Math.ceil(limitPerChar * (ns.toString().length() + 1));
 
-        Iterator<EpisodeTitleDetails<T>> i = l.iterator();
-        while (i.hasNext()) {
-            EpisodeTitleDetails<T> etd = i.next();
+        for (int i : eti.candidates(ns.toString(), bound)) {
+            EpisodeTitleDetails<T> etd = eti.get(i);
 
             String label = etd.title;
 
-            NormalisedString nls = new NormalisedString(label);
+            String nls = eti.getNormalisedTitle(i);
 
             StringUtil.LevenshteinResult lr;
-            
-            lr = StringUtil.levenshteinDistance(nls.toString(), ns.toString());
+
+            lr = levenshtein.distance(nls, ns.toString(), bound);
+
+            if (st != null) {
+                st.levenshteinEvaluations.increment();
+            }
+
+            if (lr == null)
+                continue;
 
             int dist = lr.distanceWithoutSuffix;
             int length = lr.lengthWithoutSuffix;
@@ -689,26 +1169,42 @@ public class FilenameProcessor<T>
 
             float distPerChar = StringUtil.weight(dist, length);
 
-
-            if (distPerChar <= suggestionDistPerChar) {
+            if (distPerChar <= limitPerChar && distPerChar > donePerChar) {
                 TitleMatching<T> m = new TitleMatching<T>(ns.getOriginal(), 0, ns.getOriginalPosition(length), label, etd.res,
-                                 distPerChar <= maxDistPerChar,
+                                 distPerChar <= exactPerChar,
                                  etd.isPrimary,
                                  distPerChar);
-                matches.add(m);
+                sink.add(m);
+
+                if (st != null) {
+                    st.candidatesScored.increment();
+                }
             }
         }
-
-        Collections.sort(matches, TitleMatching.MATCHING_COMPARATOR);
-
-        return matches;
     }
 
     public List<TitleMatching<T>> getClosestEpisodes(T series, String s) throws SeriesDataException
     {
         NormalisedString ns = new NormalisedString(s);
 
-        return getClosestEpisodes(series, ns, StringUtil.maxDistance(ns.toString()));
+        return getClosestEpisodes(snapshot, series, ns, StringUtil.maxDistance(ns.toString()), Integer.MAX_VALUE);
+    }
+
+    /**
+     * The closest episode titles, best first, keeping no more than are
+     * wanted.
+     *
+     * @param series
+     * @param s
+     * @param maxDistance
+     * @param limit the most matches to return
+     * @return
+     * @throws SeriesDataException
+     */
+    public List<TitleMatching<T>> getClosestEpisodes(T series, String s, float maxDistance, int limit)
+        throws SeriesDataException
+    {
+        return getClosestEpisodes(snapshot, series, new NormalisedString(s), maxDistance, limit);
     }
 
     static Pattern pDate = Pattern.compile("^\\s*(\\d{4})(\\d{2})(\\d{2})\\b");
@@ -734,34 +1230,74 @@ public class FilenameProcessor<T>
         return null;
     }
 
+    /**
+     * Match a run of keywords at the start of a string.
+     *
+     * @param string
+     * @return a match, possibly empty, with the keywords' labels separated by spaces
+     * @throws SeriesDataException
+     */
     public Matching<T> matchKeywords(String string) throws SeriesDataException
     {
+        return matchKeywords(snapshot, string);
+    }
+
+    private Matching<T> matchKeywords(Snapshot sn, String string) throws SeriesDataException
+    {
+        Keywords keywords = getKeywords(sn);
+
+        Normaliser ns = Normaliser.forThread().normalise(string);
+        KeywordChoice c = new KeywordChoice(ns);
+
         int start = 0, end = 0;
-        StringBuffer sb = new StringBuffer(string.length());
+        StringBuilder sb = new StringBuilder();
 
-        Matching<T> m;
+        /*
+         * What follows a keyword normalises just as the rest of the whole
+         * string does, from the first character at or after the keyword's
+         * end. An '&' is expanded again if a keyword ended inside "and".
+         */
+        int j = 0;
 
-        do {
-            m = matchKeyword(string);
+        while (true) {
+            while (j < ns.length()
+                    && (ns.getOriginalPosition(j) < end || ns.charAt(j) == ' ')) {
+                j++;
+            }
 
-            if (m != null) {
-                if (end > 0) {
-                    sb.append(" ");
-                } else {
-                    start = m.start;
-                }
-                end += m.end;
-                sb.append(m.realString);
+            if (!c.choose(keywords.trie, j, end)) {
+                break;
+            }
+
+            /* A keyword that consumes nothing would match forever */
+            if (c.end == end) {
+                break;
+            }
 
-                string = string.substring(m.end);
+            if (end > 0) {
+                sb.append(' ');
+            } else {
+                start = ns.getOriginalPosition(j);
             }
-        } while (m != null);
+            end = c.end;
+            sb.append(keywords.labels[c.key]);
+        }
 
         return new Matching<T>(string, start, end, sb.toString(), null);
     }
 
     private SeriesDetails<T> getSeriesDetailsImpl(T series) throws SeriesDataException
     {
-        return data.getSeriesDetails(series);
+        RecognitionStats st = activeStats();
+        if (st == null) {
+            return data.getSeriesDetails(series);
+        }
+
+        long t0 = System.nanoTime();
+        try {
+            return data.getSeriesDetails(series);
+        } finally {
+            st.seriesDetailsLoading.record(System.nanoTime() - t0);
+        }
     }
 }
@@ -19,9 +19,13 @@
 package org.kafsemo.mivvi.recognise;
 
 /**
+ * An immutable normalised string, with a mapping back to positions in the
+ * original. The work is done by {@link Normaliser}; use that directly to
+ * avoid keeping a copy.
+ *
  * @author joe
  */
-public class NormalisedString
+public class NormalisedString implements CharSequence
 {
     private final String s;
     private final int[] origPos;
@@ -31,53 +35,35 @@ public class NormalisedString
     public NormalisedString(String s)
     {
         this.original = s;
-//        this.s = process(s); //s.replaceAll("\\W+", " ").toLowerCase().trim();
-
-        char[] ca = s.toCharArray();
-        StringBuffer sb = new StringBuffer(ca.length);
-        int[] origPos = new int[ca.length * 3 + 1];
 
-        int lastRealChar = -1;
+        Normaliser n = Normaliser.forThread().normalise(s);
 
-        boolean needsSpace = false;
-
-        int i = 0;
-        while (i < ca.length) {
-            char c = ca[i];
+        this.s = n.toString();
+        this.origPos = n.copyPositions();
+    }
 
-            if (Character.isLetterOrDigit(c) || (c == '&')) {
-                if (needsSpace) {
-                    if (sb.length() > 0) {
-//                        origPos[sb.length()] = i - 1;
-                        sb.append(' ');
-                    }
-                    needsSpace = false;
-                }
-                if (c == '&') {
-                    for (int x = 0; x < 3; x++)
-                        origPos[sb.length() + x] = i;
-                    sb.append("and");
-                } else {
-                    origPos[sb.length()] = i;
-                    sb.append(Character.toLowerCase(c));
-                }
-                lastRealChar = i;
-            } else if (!needsSpace) {
-                origPos[sb.length()] = i;
-                needsSpace = true;
-            }
-            i++;
+    public int getOriginalPosition(int i)
+    {
+        /* Positions past the end have always read as zero */
+        if (i >= origPos.length && i <= original.length() * 3) {
+            return 0;
         }
+        return origPos[i];
+    }
 
-        origPos[sb.length()] = lastRealChar + 1;
+    public int length()
+    {
+        return s.length();
+    }
 
-        this.s = sb.toString();
-        this.origPos = origPos;
+    public char charAt(int index)
+    {
+        return s.charAt(index);
     }
 
-    public int getOriginalPosition(int i)
+    public CharSequence subSequence(int start, int end)
     {
-        return origPos[i];
+        return s.subSequence(start, end);
     }
 
     public String toString()
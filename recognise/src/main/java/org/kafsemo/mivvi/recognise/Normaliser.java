@@ -0,0 +1,216 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.Arrays;
+
+/**
+ * <p>Normalises strings the same way as {@link NormalisedString}, into
+ * buffers that are reused from one string to the next. Runs of anything
+ * other than letters and digits become a single space, leading and trailing
+ * runs are dropped, letters are lower-cased and <code>&amp;</code> becomes
+ * <code>and</code>.</p>
+ * <p>The result is available as a {@link CharSequence} until the next call
+ * to {@link #normalise(CharSequence)}. An instance must not be shared
+ * between threads; {@link #forThread()} gives each thread its own.</p>
+ *
+ * @author joe
+ */
+public class Normaliser implements CharSequence
+{
+    private static final ThreadLocal<Normaliser> PER_THREAD = new ThreadLocal<Normaliser>() {
+        protected Normaliser initialValue()
+        {
+            return new Normaliser();
+        }
+    };
+
+    private char[] chars;
+    private int[] positions;
+    private int length;
+
+    public Normaliser()
+    {
+        this(32);
+    }
+
+    public Normaliser(int capacity)
+    {
+        this.chars = new char[capacity];
+        this.positions = new int[capacity + 1];
+    }
+
+    /**
+     * This thread's instance. Only use it where nothing else on the same
+     * thread could normalise another string before the result is finished
+     * with.
+     *
+     * @return
+     */
+    public static Normaliser forThread()
+    {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Would this string normalise to nothing at all?
+     *
+     * @param s
+     * @return
+     */
+    public static boolean isBlank(CharSequence s)
+    {
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isLetterOrDigit(c) || (c == '&')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Normalise a string, replacing the previous result.
+     *
+     * @param s
+     * @return this normaliser, holding the result
+     */
+    public Normaliser normalise(CharSequence s)
+    {
+        int n = s.length();
+
+        /* Each '&' expands to three characters */
+        if (chars.length < n * 3) {
+            chars = new char[n * 3];
+            positions = new int[n * 3 + 1];
+        }
+
+        char[] ca = chars;
+        int[] pa = positions;
+
+        int len = 0;
+        int lastRealChar = -1;
+
+        boolean needsSpace = false;
+
+        for (int i = 0; i < n; i++) {
+            char c = s.charAt(i);
+
+            if (Character.isLetterOrDigit(c) || (c == '&')) {
+                if (needsSpace) {
+                    /* The space's position was recorded when the run started */
+                    if (len > 0) {
+                        ca[len++] = ' ';
+                    }
+                    needsSpace = false;
+                }
+                if (c == '&') {
+                    pa[len] = i;
+                    ca[len++] = 'a';
+                    pa[len] = i;
+                    ca[len++] = 'n';
+                    pa[len] = i;
+                    ca[len++] = 'd';
+                } else {
+                    pa[len] = i;
+                    ca[len++] = Character.toLowerCase(c);
+                }
+                lastRealChar = i;
+            } else if (!needsSpace) {
+                pa[len] = i;
+                needsSpace = true;
+            }
+        }
+
+        pa[len] = lastRealChar + 1;
+
+        this.length = len;
+
+        return this;
+    }
+
+    public int length()
+    {
+        return length;
+    }
+
+    public char charAt(int index)
+    {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException(Integer.toString(index));
+        }
+        return chars[index];
+    }
+
+    public CharSequence subSequence(int start, int end)
+    {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException(start + "-" + end);
+        }
+        return new String(chars, start, end - start);
+    }
+
+    /**
+     * The position in the original string of a normalised character,
+     * or of the end of the string for <code>length()</code>.
+     *
+     * @param i from zero to <code>length()</code>, inclusive
+     * @return
+     */
+    public int getOriginalPosition(int i)
+    {
+        if (i < 0 || i > length) {
+            throw new IndexOutOfBoundsException(Integer.toString(i));
+        }
+        return positions[i];
+    }
+
+    /**
+     * Does the normalised string start with this prefix?
+     *
+     * @param prefix
+     * @return
+     */
+    public boolean startsWith(CharSequence prefix)
+    {
+        int pl = prefix.length();
+        if (pl > length)
+            return false;
+
+        for (int i = 0; i < pl; i++) {
+            if (chars[i] != prefix.charAt(i))
+                return false;
+        }
+        return true;
+    }
+
+    /**
+     * A copy of the position mapping, covering every index accepted by
+     * {@link #getOriginalPosition(int)}.
+     */
+    int[] copyPositions()
+    {
+        return Arrays.copyOf(positions, length + 1);
+    }
+
+    public String toString()
+    {
+        return new String(chars, 0, length);
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Remembers the results of {@link FilenameProcessor#processName}, including
+ * names that weren't recognised, for names that turn up again and again.
+ * The least recently used results are dropped beyond a maximum size, and
+ * everything is dropped when the processor's series data changes.
+ *
+ * <p>Results are keyed by the name exactly as given, since the
+ * {@link FilenameMatch#ignored} parts are offsets into it. Cached matches
+ * are shared between callers, and must not be modified.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class RecognitionCache<T>
+{
+    private final FilenameProcessor<T> fp;
+    private final int maximumSize;
+
+    /* Guarded by itself */
+    private final Map<Key<T>, FilenameMatch<T>> entries;
+    private long entriesVersion;
+
+    private final AtomicLong hits = new AtomicLong(),
+        misses = new AtomicLong();
+
+    public RecognitionCache(FilenameProcessor<T> fp, int maximumSize)
+    {
+        if (maximumSize <= 0) {
+            throw new IllegalArgumentException("Cache size must be positive: " + maximumSize);
+        }
+
+        this.fp = fp;
+        this.maximumSize = maximumSize;
+        this.entries = new LinkedHashMap<Key<T>, FilenameMatch<T>>(16, 0.75f, true) {
+            protected boolean removeEldestEntry(Map.Entry<Key<T>, FilenameMatch<T>> eldest)
+            {
+                return size() > RecognitionCache.this.maximumSize;
+            }
+        };
+        this.entriesVersion = fp.getDataVersion();
+    }
+
+    private static final class Key<T>
+    {
+        final String name;
+        final T directorySeries;
+
+        Key(String name, T directorySeries)
+        {
+            this.name = name;
+            this.directorySeries = directorySeries;
+        }
+
+        public boolean equals(Object o)
+        {
+            if (!(o instanceof Key<?>))
+                return false;
+
+            Key<?> k = (Key<?>) o;
+            return name.equals(k.name)
+                    && (directorySeries == null ? k.directorySeries == null : directorySeries.equals(k.directorySeries));
+        }
+
+        public int hashCode()
+        {
+            return name.hashCode() * 31 + (directorySeries == null ? 0 : directorySeries.hashCode());
+        }
+    }
+
+    public FilenameMatch<T> processName(String name) throws SeriesDataException
+    {
+        return processName(name, null);
+    }
+
+    public FilenameMatch<T> processName(String name, T directorySeries) throws SeriesDataException
+    {
+        Key<T> k = new Key<T>(name, directorySeries);
+
+        long version = fp.getDataVersion();
+
+        synchronized (entries) {
+            if (version > entriesVersion) {
+                entries.clear();
+                entriesVersion = version;
+            }
+
+            if (version == entriesVersion) {
+                FilenameMatch<T> m = entries.get(k);
+                if (m != null || entries.containsKey(k)) {
+                    hits.incrementAndGet();
+                    return m;
+                }
+            }
+        }
+
+        misses.incrementAndGet();
+
+        FilenameMatch<T> m = fp.processName(name, directorySeries);
+
+        synchronized (entries) {
+            /* Don't keep a result from data that has since changed */
+            if (version == entriesVersion) {
+                entries.put(k, m);
+            }
+        }
+
+        return m;
+    }
+
+    public long getHitCount()
+    {
+        return hits.get();
+    }
+
+    public long getMissCount()
+    {
+        return misses.get();
+    }
+
+    public int getMaximumSize()
+    {
+        return maximumSize;
+    }
+
+    public int size()
+    {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+
+    public void clear()
+    {
+        synchronized (entries) {
+            entries.clear();
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counters and latency histograms for the stages of recognition, to
+ * attach to a {@link FilenameProcessor} with
+ * {@link FilenameProcessor#setStats(RecognitionStats)}. A processor without
+ * stats does no timing at all.
+ *
+ * @author joe
+ */
+public class RecognitionStats implements RecognitionStatsMXBean
+{
+    /**
+     * The timings for a single stage.
+     */
+    static final class Stage
+    {
+        private final LongAdder calls = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final AtomicLongArray histogram = new AtomicLongArray(64);
+
+        void record(long elapsed)
+        {
+            calls.increment();
+            nanos.add(elapsed);
+            histogram.incrementAndGet(63 - Long.numberOfLeadingZeros(Math.max(elapsed, 1)));
+        }
+
+        StageStatistics snapshot()
+        {
+            long[] h = new long[histogram.length()];
+            for (int i = 0; i < h.length; i++) {
+                h[i] = histogram.get(i);
+            }
+            return new StageStatistics(calls.sum(), nanos.sum(), h);
+        }
+
+        void reset()
+        {
+            calls.reset();
+            nanos.reset();
+            for (int i = 0; i < histogram.length(); i++) {
+                histogram.set(i, 0);
+            }
+        }
+    }
+
+    final Stage seriesMatching = new Stage(),
+        episodeCodes = new Stage(),
+        dateMatching = new Stage(),
+        titleScoring = new Stage(),
+        seriesDetailsLoading = new Stage();
+
+    final LongAdder levenshteinEvaluations = new LongAdder(),
+        candidatesScored = new LongAdder();
+
+    private volatile boolean enabled = true;
+
+    public boolean isEnabled()
+    {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled)
+    {
+        this.enabled = enabled;
+    }
+
+    public StageStatistics getSeriesMatching()
+    {
+        return seriesMatching.snapshot();
+    }
+
+    public StageStatistics getEpisodeCodes()
+    {
+        return episodeCodes.snapshot();
+    }
+
+    public StageStatistics getDateMatching()
+    {
+        return dateMatching.snapshot();
+    }
+
+    public StageStatistics getTitleScoring()
+    {
+        return titleScoring.snapshot();
+    }
+
+    public StageStatistics getSeriesDetailsLoading()
+    {
+        return seriesDetailsLoading.snapshot();
+    }
+
+    public long getLevenshteinEvaluations()
+    {
+        return levenshteinEvaluations.sum();
+    }
+
+    public long getCandidatesScored()
+    {
+        return candidatesScored.sum();
+    }
+
+    public void reset()
+    {
+        seriesMatching.reset();
+        episodeCodes.reset();
+        dateMatching.reset();
+        titleScoring.reset();
+        seriesDetailsLoading.reset();
+        levenshteinEvaluations.reset();
+        candidatesScored.reset();
+    }
+
+    /**
+     * Publish these statistics as an MXBean.
+     *
+     * @param server
+     * @param name distinguishes these from other statistics in the same server
+     * @return the name they were registered under
+     * @throws JMException
+     */
+    public ObjectName register(MBeanServer server, String name) throws JMException
+    {
+        ObjectName on = new ObjectName("org.kafsemo.mivvi:type=RecognitionStats,name=" + ObjectName.quote(name));
+        server.registerMBean(this, on);
+        return on;
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+/**
+ * Where time goes during recognition, stage by stage. A stage that needs
+ * series details or indexes that haven't been loaded yet includes the time
+ * taken to load them; that is also counted in
+ * {@link #getSeriesDetailsLoading()}.
+ *
+ * @author joe
+ */
+public interface RecognitionStatsMXBean
+{
+    boolean isEnabled();
+
+    void setEnabled(boolean enabled);
+
+    /**
+     * Finding series names in a filename.
+     */
+    StageStatistics getSeriesMatching();
+
+    /**
+     * Recognising episode codes such as <code>3x05</code>.
+     */
+    StageStatistics getEpisodeCodes();
+
+    StageStatistics getDateMatching();
+
+    /**
+     * Scoring episode titles by edit distance.
+     */
+    StageStatistics getTitleScoring();
+
+    /**
+     * Loading the details of a series from the data source.
+     */
+    StageStatistics getSeriesDetailsLoading();
+
+    /**
+     * Edit distances calculated while scoring titles.
+     */
+    long getLevenshteinEvaluations();
+
+    /**
+     * Titles close enough to be given a score.
+     */
+    long getCandidatesScored();
+
+    void reset();
+}
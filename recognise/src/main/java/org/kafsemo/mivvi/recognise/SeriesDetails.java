@@ -22,7 +22,6 @@
 package org.kafsemo.mivvi.recognise;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -30,5 +29,29 @@ import java.util.Map;
 public class SeriesDetails<T>
 {
     public final List<EpisodeTitleDetails<T>> episodeTitlesAndDescriptions = new ArrayList<EpisodeTitleDetails<T>>();
-    public final Map<String, T> episodesByNumber = new HashMap<String, T>();
+    public final EpisodeNumberIndex<T> episodeNumbers = new EpisodeNumberIndex<T>();
+
+    /**
+     * The same episode numbers, keyed by strings such as <code>"3x5"</code>
+     * and <code>"42"</code>.
+     */
+    public final Map<String, T> episodesByNumber = episodeNumbers.asStringMap();
+
+    private volatile EpisodeTitleIndex<T> titleIndex;
+
+    /**
+     * An index over the episode titles, built on first use. Titles
+     * should not be added after this has been called.
+     *
+     * @return
+     */
+    public EpisodeTitleIndex<T> getTitleIndex()
+    {
+        EpisodeTitleIndex<T> ti = titleIndex;
+        if (ti == null) {
+            ti = new EpisodeTitleIndex<T>(episodeTitlesAndDescriptions);
+            titleIndex = ti;
+        }
+        return ti;
+    }
 }
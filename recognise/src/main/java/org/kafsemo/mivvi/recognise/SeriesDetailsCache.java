@@ -0,0 +1,64 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise;
+
+/**
+ * Holds the {@link SeriesDetails} a {@link FilenameProcessor} has loaded,
+ * so each series is only read from the data source when it's needed.
+ * How much is kept, and for how long, is up to the implementation.
+ *
+ * <p>A processor replaces its cache with {@link #emptyCopy()} whenever its
+ * series data changes, so an implementation only ever sees details from
+ * a single version of the data.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public interface SeriesDetailsCache<T>
+{
+    /**
+     * Reads the details for a series on a cache miss.
+     */
+    interface Loader<T>
+    {
+        SeriesDetails<T> load(T series) throws SeriesDataException;
+    }
+
+    /**
+     * The details for a series, loading them if they aren't held.
+     *
+     * @param series
+     * @param loader
+     * @return the details, or <code>null</code> if the loader found none
+     * @throws SeriesDataException
+     */
+    SeriesDetails<T> get(T series, Loader<T> loader) throws SeriesDataException;
+
+    /**
+     * @return the number of series held
+     */
+    int size();
+
+    /**
+     * @return a new, empty cache with the same settings, sharing any
+     *  counters with this one
+     */
+    SeriesDetailsCache<T> emptyCopy();
+}
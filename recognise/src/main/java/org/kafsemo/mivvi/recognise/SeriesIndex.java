@@ -0,0 +1,158 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kafsemo.mivvi.algo.AhoCorasick;
+
+/**
+ * An immutable index of every label that identifies a series: titles,
+ * descriptions and titles without a definite article. Labels are
+ * normalised once, when the index is built.
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class SeriesIndex<T>
+{
+    private final List<Item<T>> labels;
+    private final String[] normalisedLabels;
+    private final Map<String, T> byLabel;
+    private final AhoCorasick automaton;
+
+    public SeriesIndex(SeriesDataSource<T> data) throws SeriesDataException
+    {
+        this(data.getSeriesTitles(), data.getSeriesDescriptions());
+    }
+
+    public SeriesIndex(Iterable<Item<T>> titles, Iterable<Item<T>> descriptions)
+    {
+        List<Item<T>> l = new ArrayList<Item<T>>();
+
+        for (Item<T> i : titles) {
+            l.add(i);
+        }
+
+        for (Item<T> i : descriptions) {
+            l.add(i);
+        }
+
+        /* Add titles without definite article */
+        for (Item<T> i : titles) {
+            if (i.label.toLowerCase().startsWith("the ")) {
+                l.add(new Item<T>(i.label.substring(4), i.resource));
+            }
+        }
+
+        String[] nl = new String[l.size()];
+        Map<String, T> m = new HashMap<String, T>();
+
+        Normaliser n = new Normaliser();
+
+        for (int i = 0; i < nl.length; i++) {
+            Item<T> item = l.get(i);
+
+            nl[i] = n.normalise(item.label).toString();
+
+            /* Earlier labels take priority */
+            String k = foldCase(item.label);
+            if (!m.containsKey(k)) {
+                m.put(k, item.resource);
+            }
+        }
+
+        this.labels = Collections.unmodifiableList(l);
+        this.normalisedLabels = nl;
+        this.byLabel = m;
+        this.automaton = new AhoCorasick(Arrays.asList(nl));
+    }
+
+    /**
+     * Case-fold a label so that folded labels are equal exactly when
+     * the originals are {@link String#equalsIgnoreCase(String)}.
+     *
+     * @param s
+     * @return
+     */
+    static String foldCase(String s)
+    {
+        char[] ca = new char[s.length()];
+
+        for (int i = 0; i < ca.length; i++) {
+            ca[i] = Character.toLowerCase(Character.toUpperCase(s.charAt(i)));
+        }
+
+        return new String(ca);
+    }
+
+    /**
+     * Find the series with exactly this label, ignoring case.
+     *
+     * @param label
+     * @return the series, or <code>null</code> if none has this label
+     */
+    public T getSeries(String label)
+    {
+        return byLabel.get(foldCase(label));
+    }
+
+    /**
+     * All labels, in priority order: titles, then descriptions, then titles
+     * without a definite article.
+     *
+     * @return
+     */
+    public List<Item<T>> getLabels()
+    {
+        return labels;
+    }
+
+    public int size()
+    {
+        return labels.size();
+    }
+
+    public Item<T> getLabel(int i)
+    {
+        return labels.get(i);
+    }
+
+    public String getNormalisedLabel(int i)
+    {
+        return normalisedLabels[i];
+    }
+
+    /**
+     * Report every occurrence of a normalised label in a normalised string,
+     * identifying each by its index in {@link #getLabels()}.
+     *
+     * @param normalised
+     * @param h
+     */
+    public void findAll(CharSequence normalised, AhoCorasick.MatchHandler h)
+    {
+        automaton.findAll(normalised, h);
+    }
+}
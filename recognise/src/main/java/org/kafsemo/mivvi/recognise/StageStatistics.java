@@ -0,0 +1,110 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+/**
+ * A snapshot of the timings for one stage of recognition. Percentiles are
+ * estimated from a histogram with power-of-two buckets, so are only
+ * accurate to within a factor of two.
+ *
+ * @author joe
+ */
+public class StageStatistics
+{
+    private final long calls;
+    private final long totalNanos;
+    private final long[] histogram;
+
+    StageStatistics(long calls, long totalNanos, long[] histogram)
+    {
+        this.calls = calls;
+        this.totalNanos = totalNanos;
+        this.histogram = histogram;
+    }
+
+    public long getCalls()
+    {
+        return calls;
+    }
+
+    public long getTotalNanos()
+    {
+        return totalNanos;
+    }
+
+    public long getMeanNanos()
+    {
+        return (calls > 0) ? totalNanos / calls : 0;
+    }
+
+    /**
+     * @return the number of calls taking from <code>2<sup>i</sup></code>
+     *  up to <code>2<sup>i+1</sup></code> nanoseconds, for each
+     *  <code>i</code>
+     */
+    public long[] getHistogram()
+    {
+        return histogram.clone();
+    }
+
+    private long percentile(int p)
+    {
+        long total = 0;
+        for (long c : histogram) {
+            total += c;
+        }
+
+        if (total == 0)
+            return 0;
+
+        long rank = (total * p + 99) / 100;
+
+        long seen = 0;
+        for (int i = 0; i < histogram.length; i++) {
+            seen += histogram[i];
+            if (seen >= rank) {
+                /* The top of the bucket */
+                return (i < 62) ? (2L << i) - 1 : Long.MAX_VALUE;
+            }
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    public long getMedianNanos()
+    {
+        return percentile(50);
+    }
+
+    public long getPercentile90Nanos()
+    {
+        return percentile(90);
+    }
+
+    public long getPercentile99Nanos()
+    {
+        return percentile(99);
+    }
+
+    public String toString()
+    {
+        return calls + " calls, mean " + getMeanNanos() + "ns, median " + getMedianNanos()
+                + "ns, 99% " + getPercentile99Nanos() + "ns";
+    }
+}
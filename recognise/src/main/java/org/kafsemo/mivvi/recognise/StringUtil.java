@@ -74,6 +74,427 @@ public class StringUtil
         		lastRow[lastDecrease]);
     }
 
+    /**
+     * <p>Calculate the same result as {@link #levenshteinDistance(String, String)}
+     * using Myers' bit-parallel algorithm, in Hyyrö's formulation for
+     * edit distance. The first string is held as bit vectors, one bit per
+     * character, and each character of the target string advances a whole
+     * column of the matrix with a handful of word operations. Strings longer
+     * than 64 characters are split into blocks of 64.</p>
+     * <p>The horizontal deltas computed for each column show where the
+     * cost decreases, so the suffix is tracked as in the classic version.</p>
+     *
+     * @param a
+     * @param b
+     */
+    public static LevenshteinResult levenshteinDistanceBitParallel(String a, String b)
+    {
+        int m = a.length(), n = b.length();
+
+        if (m == 0) {
+            return new LevenshteinResult(n, 0, 0);
+        }
+
+        if (n == 0) {
+            return new LevenshteinResult(m, 0, m);
+        }
+
+        PatternMasks pm = PATTERN_MASKS.get();
+        pm.compile(a);
+
+        int blocks = pm.blocks;
+        long[] pv = pm.pv, mv = pm.mv;
+
+        long lastBit = 1L << ((m - 1) & 63);
+
+        int score = m;
+
+        /* The last row where the cost decreased, and the last column it did so */
+        int lastDecreaseRow = 0;
+        int lastDecrease = 0;
+        int distanceWithoutSuffix = m;
+
+        for (int j = 0; j < n; j++) {
+            char c = b.charAt(j);
+
+            int slot = pm.slotFor(c);
+
+            /* The first row always costs one more than the previous column */
+            int hin = 1;
+
+            int decreaseRow = 0;
+
+            for (int k = 0; k < blocks; k++) {
+                long eq = pm.eq(slot, k);
+                long p = pv[k], mn = mv[k];
+
+                long xv = eq | mn;
+                if (hin < 0) {
+                    eq |= 1L;
+                }
+                long xh = (((eq & p) + p) ^ p) | eq;
+
+                long ph = mn | ~(xh | p);
+                long mh = p & xh;
+
+                long high = (k == blocks - 1) ? lastBit : (1L << 63);
+
+                int hout;
+                if ((ph & high) != 0) {
+                    hout = 1;
+                } else if ((mh & high) != 0) {
+                    hout = -1;
+                } else {
+                    hout = 0;
+                }
+
+                /* Rows in this block where the cost decreased */
+                long dec = mh & (high | (high - 1));
+                if (dec != 0) {
+                    decreaseRow = (k << 6) + 64 - Long.numberOfLeadingZeros(dec);
+                }
+
+                ph <<= 1;
+                mh <<= 1;
+                if (hin < 0) {
+                    mh |= 1L;
+                } else if (hin > 0) {
+                    ph |= 1L;
+                }
+
+                pv[k] = mh | ~(xv | ph);
+                mv[k] = ph & xv;
+
+                hin = hout;
+            }
+
+            score += hin;
+
+            if (decreaseRow > 0 && decreaseRow >= lastDecreaseRow) {
+                lastDecreaseRow = decreaseRow;
+                lastDecrease = j + 1;
+                distanceWithoutSuffix = score;
+            }
+        }
+
+        return new LevenshteinResult(score, lastDecrease, distanceWithoutSuffix);
+    }
+
+    /**
+     * <p>Calculate the same result as {@link #levenshteinDistance(String, String)},
+     * but only if its {@link LevenshteinResult#distanceWithoutSuffix} is no
+     * more than a given bound.</p>
+     * <p>Most candidates are rejected by a banded calculation first. Only cells
+     * within <code>maxDistance</code> of the diagonal can cost that little,
+     * and the calculation is abandoned as soon as a whole row exceeds the bound.
+     * Candidates that survive are calculated exactly.</p>
+     *
+     * @param a
+     * @param b
+     * @param maxDistance
+     * @return the result, or <code>null</code> if the distance without suffix
+     *  is over the threshold
+     */
+    public static LevenshteinResult levenshteinDistanceBounded(String a, String b, int maxDistance)
+    {
+        return Levenshtein.BIT_PARALLEL.distance(a, b, maxDistance);
+    }
+
+    static LevenshteinResult levenshteinDistanceBounded(Levenshtein exact, String a, String b, int maxDistance)
+    {
+        if (maxDistance < 0) {
+            return null;
+        }
+
+        if (withinBand(a, b, maxDistance)) {
+            LevenshteinResult lr = exact.distance(a, b);
+
+            if (lr.distanceWithoutSuffix <= maxDistance) {
+                return lr;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Run a banded calculation, with every cost over <code>k</code>
+     * capped at <code>k + 1</code>, to see whether the distance without
+     * suffix may be within <code>k</code>. A <code>false</code> result is
+     * definite; a <code>true</code> one needs to be confirmed.
+     */
+    private static boolean withinBand(String a, String b, int k)
+    {
+        int m = a.length(), n = b.length();
+
+        /*
+         * If the final row never decreases, the suffix comes from an
+         * earlier row and costs at least m. Only the full calculation
+         * can tell whether that's within k.
+         */
+        if (k >= m || n == 0) {
+            return true;
+        }
+
+        int cap = k + 1;
+
+        BandRows br = BAND_ROWS.get();
+        br.ensureCapacity(n + 1);
+
+        int[] lastRow = br.lastRow, thisRow = br.thisRow;
+
+        int lastLo = 0, lastHi = Math.min(n, k);
+        for (int c = lastLo; c <= lastHi; c++) {
+            lastRow[c] = c;
+        }
+
+        for (int r = 1; r <= m; r++) {
+            int lo = Math.max(0, r - k), hi = Math.min(n, r + k);
+
+            /* The whole row is further than k from the diagonal */
+            if (lo > hi) {
+                return false;
+            }
+
+            char ca = a.charAt(r - 1);
+
+            int rowMin = cap;
+
+            for (int c = lo; c <= hi; c++) {
+                int v;
+
+                if (c == 0) {
+                    v = r;
+                } else {
+                    int costInsertion = ((c - 1 >= lo) ? thisRow[c - 1] : cap) + 1;
+                    int costDeletion = ((c <= lastHi) ? lastRow[c] : cap) + 1;
+                    int costSubstitution = ((c - 1 >= lastLo) ? lastRow[c - 1] : cap)
+                            + ((ca == b.charAt(c - 1)) ? 0 : 1);
+
+                    v = Math.min(costInsertion, Math.min(costDeletion, costSubstitution));
+                }
+
+                if (v > cap) {
+                    v = cap;
+                }
+
+                thisRow[c] = v;
+
+                if (v < rowMin) {
+                    rowMin = v;
+                }
+            }
+
+            /* Costs never fall from one row to the next */
+            if (rowMin > k) {
+                return false;
+            }
+
+            int[] t = lastRow;
+            lastRow = thisRow;
+            thisRow = t;
+
+            lastLo = lo;
+            lastHi = hi;
+        }
+
+        /*
+         * Any decrease in the final row that costs no more than k is
+         * visible within the band. Without one, the distance without
+         * suffix must be over k.
+         */
+        for (int c = Math.max(1, lastLo); c <= lastHi; c++) {
+            int prev = (c - 1 >= lastLo) ? lastRow[c - 1] : cap;
+            if (lastRow[c] < prev) {
+                return true;
+            }
+        }
+
+        return false;
+    }
+
+    private static final ThreadLocal<BandRows> BAND_ROWS = new ThreadLocal<BandRows>() {
+        @Override
+        protected BandRows initialValue()
+        {
+            return new BandRows();
+        }
+    };
+
+    /**
+     * Reusable per-thread rows for the banded calculation.
+     */
+    static class BandRows
+    {
+        int[] lastRow = new int[64], thisRow = new int[64];
+
+        void ensureCapacity(int n)
+        {
+            if (lastRow.length < n) {
+                lastRow = new int[n];
+                thisRow = new int[n];
+            }
+        }
+    }
+
+    private static final ThreadLocal<PatternMasks> PATTERN_MASKS = new ThreadLocal<PatternMasks>() {
+        @Override
+        protected PatternMasks initialValue()
+        {
+            return new PatternMasks();
+        }
+    };
+
+    /**
+     * Reusable per-thread storage for the bit vectors of the pattern
+     * string: a match mask per distinct character and block, found through
+     * a small open-addressed hash, and the vertical delta vectors.
+     */
+    static class PatternMasks
+    {
+        private char[] chars = new char[128];
+        private int[] slots = new int[128];
+        private int[] used = new int[64];
+        private int usedCount;
+
+        private long[] peq = new long[64];
+
+        long[] pv = new long[1], mv = new long[1];
+        int blocks;
+
+        void compile(String a)
+        {
+            int m = a.length();
+
+            /* Clear the previous pattern */
+            for (int i = 0; i < usedCount; i++) {
+                slots[used[i]] = 0;
+            }
+            usedCount = 0;
+
+            int cap = slots.length;
+            while (cap < m * 2) {
+                cap <<= 1;
+            }
+            if (cap != slots.length) {
+                chars = new char[cap];
+                slots = new int[cap];
+            }
+
+            if (used.length < m) {
+                used = new int[m];
+            }
+
+            blocks = (m + 63) >>> 6;
+
+            if (peq.length < m * blocks) {
+                peq = new long[m * blocks];
+            }
+
+            if (pv.length < blocks) {
+                pv = new long[blocks];
+                mv = new long[blocks];
+            }
+
+            for (int k = 0; k < blocks; k++) {
+                pv[k] = -1L;
+                mv[k] = 0;
+            }
+
+            for (int i = 0; i < m; i++) {
+                char c = a.charAt(i);
+
+                int s = slotFor(c);
+                if (s < 0) {
+                    int h = probe(c);
+
+                    s = usedCount;
+                    chars[h] = c;
+                    slots[h] = s + 1;
+                    used[usedCount++] = h;
+
+                    for (int k = 0; k < blocks; k++) {
+                        peq[s * blocks + k] = 0;
+                    }
+                }
+
+                peq[s * blocks + (i >>> 6)] |= 1L << (i & 63);
+            }
+        }
+
+        private int probe(char c)
+        {
+            int mask = slots.length - 1;
+            int h = (c * 0x9E3779B1) >>> 16 & mask;
+
+            while (slots[h] != 0 && chars[h] != c) {
+                h = (h + 1) & mask;
+            }
+
+            return h;
+        }
+
+        /**
+         * @param c
+         * @return the slot for this character, or -1 if it's not in the pattern
+         */
+        int slotFor(char c)
+        {
+            int h = probe(c);
+            return slots[h] - 1;
+        }
+
+        long eq(int slot, int block)
+        {
+            if (slot < 0) {
+                return 0;
+            } else {
+                return peq[slot * blocks + block];
+            }
+        }
+    }
+
+    /**
+     * The available implementations of {@link LevenshteinResult} calculation.
+     */
+    public enum Levenshtein
+    {
+        /**
+         * The classic dynamic programming version; the reference implementation.
+         */
+        CLASSIC {
+            public LevenshteinResult distance(String a, String b)
+            {
+                return levenshteinDistance(a, b);
+            }
+        },
+
+        /**
+         * The bit-parallel version.
+         */
+        BIT_PARALLEL {
+            public LevenshteinResult distance(String a, String b)
+            {
+                return levenshteinDistanceBitParallel(a, b);
+            }
+        };
+
+        public abstract LevenshteinResult distance(String a, String b);
+
+        /**
+         * @param a
+         * @param b
+         * @param maxDistance
+         * @return the result, or <code>null</code> if the distance without
+         *  suffix is over the threshold
+         * @see StringUtil#levenshteinDistanceBounded(String, String, int)
+         */
+        public LevenshteinResult distance(String a, String b, int maxDistance)
+        {
+            return levenshteinDistanceBounded(this, a, b, maxDistance);
+        }
+    }
+
     public static class LevenshteinResult
     {
         /**
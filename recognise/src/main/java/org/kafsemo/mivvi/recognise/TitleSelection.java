@@ -0,0 +1,152 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Keeps the best few of the title matches offered to it, in a bounded
+ * heap, rather than collecting and sorting them all. Matches that compare
+ * as equal stay in the order they were offered, just as a stable sort
+ * would leave them.
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+class TitleSelection<T>
+{
+    private static final class Entry<T>
+    {
+        final TitleMatching<T> match;
+        final long sequence;
+
+        Entry(TitleMatching<T> match, long sequence)
+        {
+            this.match = match;
+            this.sequence = sequence;
+        }
+    }
+
+    private final Comparator<Entry<T>> order;
+    private final int limit;
+
+    /* The worst of the kept matches at the head */
+    private final PriorityQueue<Entry<T>> heap;
+
+    private long offered;
+
+    /**
+     * @param order better matches first
+     * @param limit how many matches to keep
+     */
+    TitleSelection(final Comparator<? super TitleMatching<T>> order, int limit)
+    {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Limit must be positive: " + limit);
+        }
+
+        this.order = new Comparator<Entry<T>>() {
+            public int compare(Entry<T> a, Entry<T> b)
+            {
+                int c = order.compare(a.match, b.match);
+                if (c != 0) {
+                    return c;
+                }
+                return Long.compare(a.sequence, b.sequence);
+            }
+        };
+
+        this.limit = limit;
+        this.heap = new PriorityQueue<Entry<T>>(Math.min(limit, 16), Collections.reverseOrder(this.order));
+    }
+
+    void offer(TitleMatching<T> m)
+    {
+        Entry<T> e = new Entry<T>(m, offered++);
+
+        if (heap.size() < limit) {
+            heap.add(e);
+        } else if (order.compare(e, heap.peek()) < 0) {
+            heap.poll();
+            heap.add(e);
+        }
+    }
+
+    boolean isEmpty()
+    {
+        return heap.isEmpty();
+    }
+
+    /**
+     * Whether every place is taken by an exact match. As long as the order
+     * puts exact matches first, as {@link TitleMatching.MatchPriorityComparator}
+     * does, no match that is only a suggestion could then be kept.
+     *
+     * @return
+     */
+    boolean isFullOfExact()
+    {
+        if (heap.size() < limit) {
+            return false;
+        }
+
+        for (Entry<T> e : heap) {
+            if (!e.match.isExact) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    /**
+     * @return the kept matches, best first
+     */
+    List<TitleMatching<T>> toList()
+    {
+        List<Entry<T>> entries = new ArrayList<Entry<T>>(heap);
+        Collections.sort(entries, order);
+
+        List<TitleMatching<T>> l = new ArrayList<TitleMatching<T>>(entries.size());
+        for (Entry<T> e : entries) {
+            l.add(e.match);
+        }
+        return l;
+    }
+
+    /**
+     * @return the best match, or <code>null</code> if none were offered
+     */
+    TitleMatching<T> best()
+    {
+        Entry<T> best = null;
+
+        for (Entry<T> e : heap) {
+            if (best == null || order.compare(e, best) < 0) {
+                best = e;
+            }
+        }
+
+        return (best != null) ? best.match : null;
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Function;
+
+/**
+ * Keeps the details of every series once loaded, until the series data
+ * changes. This is the default, and suits a catalogue that fits
+ * comfortably in memory.
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class UnboundedSeriesDetailsCache<T> implements SeriesDetailsCache<T>
+{
+    private final ConcurrentMap<T, SeriesDetails<T>> seriesDetails =
+            new ConcurrentHashMap<T, SeriesDetails<T>>();
+
+    /**
+     * Carries a checked failure out of {@link ConcurrentMap#computeIfAbsent}.
+     */
+    private static class LoadFailure extends RuntimeException
+    {
+        private static final long serialVersionUID = 1L;
+
+        LoadFailure(SeriesDataException cause)
+        {
+            super(cause);
+        }
+    }
+
+    public SeriesDetails<T> get(T series, final Loader<T> loader) throws SeriesDataException
+    {
+        SeriesDetails<T> sd = seriesDetails.get(series);
+        if (sd != null) {
+            return sd;
+        }
+
+        /* Load each series once, however many threads ask for it */
+        try {
+            return seriesDetails.computeIfAbsent(series, new Function<T, SeriesDetails<T>>() {
+                public SeriesDetails<T> apply(T t)
+                {
+                    try {
+                        return loader.load(t);
+                    } catch (SeriesDataException sde) {
+                        throw new LoadFailure(sde);
+                    }
+                }
+            });
+        } catch (LoadFailure lf) {
+            throw (SeriesDataException) lf.getCause();
+        }
+    }
+
+    public int size()
+    {
+        return seriesDetails.size();
+    }
+
+    public SeriesDetailsCache<T> emptyCopy()
+    {
+        return new UnboundedSeriesDetailsCache<T>();
+    }
+}
@@ -0,0 +1,336 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise.impl;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.EpisodeTitleIndex;
+import org.kafsemo.mivvi.recognise.FileNamingData;
+import org.kafsemo.mivvi.recognise.Item;
+import org.kafsemo.mivvi.recognise.SeriesDataException;
+import org.kafsemo.mivvi.recognise.SeriesDataSource;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+
+/**
+ * Series data read from a catalogue compiled by
+ * {@link CompiledCatalogueWriter}, usually mapped straight from a file.
+ * Nothing is decoded up front; each series' details are read only when
+ * they're asked for, and titles come already normalised.
+ *
+ * <p>The buffer is only ever read, and is safe to share between
+ * threads.</p>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class CompiledCatalogue<T> implements SeriesDataSource<T>, FileNamingData
+{
+    static final int MAGIC = 0x4d564343;
+    static final int VERSION = 1;
+    static final int HEADER_INTS = 8;
+
+    private final ByteBuffer buf;
+    private final IdentifierCodec<T> codec;
+
+    private final int stringCount, titleCount, descriptionCount, keywordCount, seriesCount;
+
+    /* Where each section starts */
+    private final int stringEndsOffset, titlesOffset, descriptionsOffset, keywordsOffset,
+        directoryOffset, textOffset;
+
+    /**
+     * Map a compiled catalogue into memory.
+     *
+     * @param f
+     * @param codec
+     * @return
+     * @throws IOException if the file can't be read, or isn't a catalogue
+     */
+    public static <T> CompiledCatalogue<T> open(File f, IdentifierCodec<T> codec) throws IOException
+    {
+        RandomAccessFile raf = new RandomAccessFile(f, "r");
+        try {
+            FileChannel ch = raf.getChannel();
+
+            /* The mapping stays valid once the file is closed */
+            return new CompiledCatalogue<T>(ch.map(FileChannel.MapMode.READ_ONLY, 0, ch.size()), codec);
+        } finally {
+            raf.close();
+        }
+    }
+
+    public CompiledCatalogue(ByteBuffer buf, IdentifierCodec<T> codec) throws IOException
+    {
+        this.buf = buf.duplicate();
+        this.codec = codec;
+
+        if (this.buf.limit() < HEADER_INTS * 4 || this.buf.getInt(0) != MAGIC) {
+            throw new IOException("Not a compiled catalogue");
+        }
+
+        int version = this.buf.getInt(4);
+        if (version != VERSION) {
+            throw new IOException("Unsupported compiled catalogue version: " + version);
+        }
+
+        stringCount = this.buf.getInt(8);
+        titleCount = this.buf.getInt(12);
+        descriptionCount = this.buf.getInt(16);
+        keywordCount = this.buf.getInt(20);
+        seriesCount = this.buf.getInt(24);
+        textOffset = this.buf.getInt(28);
+
+        long o = HEADER_INTS * 4L;
+
+        stringEndsOffset = (int) o;
+        o += 4L * stringCount;
+        titlesOffset = (int) o;
+        o += 8L * titleCount;
+        descriptionsOffset = (int) o;
+        o += 8L * descriptionCount;
+        keywordsOffset = (int) o;
+        o += 4L * keywordCount;
+        directoryOffset = (int) o;
+        o += 8L * seriesCount;
+
+        if (stringCount < 0 || titleCount < 0 || descriptionCount < 0 || keywordCount < 0 || seriesCount < 0
+                || o > textOffset || textOffset > this.buf.limit()
+                || (stringCount > 0 && textOffset + (long) stringEnd(stringCount - 1) > this.buf.limit())) {
+            throw new IOException("Compiled catalogue is truncated or corrupt");
+        }
+    }
+
+    /**
+     * Compare two byte strings as unsigned bytes, the order the series
+     * directory is sorted in.
+     */
+    static int compareBytes(byte[] a, byte[] b)
+    {
+        int n = Math.min(a.length, b.length);
+        for (int i = 0; i < n; i++) {
+            int c = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (c != 0)
+                return c;
+        }
+        return a.length - b.length;
+    }
+
+    private int stringEnd(int i)
+    {
+        return buf.getInt(stringEndsOffset + 4 * i);
+    }
+
+    private int stringStart(int i)
+    {
+        return (i == 0) ? 0 : stringEnd(i - 1);
+    }
+
+    private void checkString(int i) throws SeriesDataException
+    {
+        if (i < 0 || i >= stringCount) {
+            throw new SeriesDataException("Bad string reference in compiled catalogue: " + i);
+        }
+
+        int start = stringStart(i), end = stringEnd(i);
+
+        if (start < 0 || start > end || end > buf.limit() - textOffset) {
+            throw new SeriesDataException("Bad string bounds in compiled catalogue: " + start + "-" + end);
+        }
+    }
+
+    String string(int i) throws SeriesDataException
+    {
+        checkString(i);
+
+        int start = textOffset + stringStart(i), end = textOffset + stringEnd(i);
+
+        /* Absolute reads only, to leave the buffer's position alone */
+        byte[] b = new byte[end - start];
+        for (int j = 0; j < b.length; j++) {
+            b[j] = buf.get(start + j);
+        }
+
+        return new String(b, StandardCharsets.UTF_8);
+    }
+
+    private T id(int i) throws SeriesDataException
+    {
+        return codec.decode(string(i));
+    }
+
+    private T id(int i, Map<Integer, T> decoded) throws SeriesDataException
+    {
+        T id = decoded.get(i);
+        if (id == null) {
+            id = id(i);
+            decoded.put(i, id);
+        }
+        return id;
+    }
+
+    /**
+     * Compare a stored string with some UTF-8 bytes, without decoding it.
+     */
+    private int compareString(int i, byte[] key) throws SeriesDataException
+    {
+        checkString(i);
+
+        int start = textOffset + stringStart(i), length = stringEnd(i) - stringStart(i);
+
+        int n = Math.min(length, key.length);
+        for (int j = 0; j < n; j++) {
+            int c = (buf.get(start + j) & 0xFF) - (key[j] & 0xFF);
+            if (c != 0)
+                return c;
+        }
+        return length - key.length;
+    }
+
+    private List<Item<T>> items(int offset, int count) throws SeriesDataException
+    {
+        List<Item<T>> l = new ArrayList<Item<T>>(count);
+        for (int i = 0; i < count; i++) {
+            int p = offset + 8 * i;
+            l.add(new Item<T>(string(buf.getInt(p)), id(buf.getInt(p + 4))));
+        }
+        return l;
+    }
+
+    public Collection<Item<T>> getSeriesTitles() throws SeriesDataException
+    {
+        return items(titlesOffset, titleCount);
+    }
+
+    public Collection<Item<T>> getSeriesDescriptions() throws SeriesDataException
+    {
+        return items(descriptionsOffset, descriptionCount);
+    }
+
+    public Iterable<String> getKeywords() throws SeriesDataException
+    {
+        List<String> l = new ArrayList<String>(keywordCount);
+        for (int i = 0; i < keywordCount; i++) {
+            l.add(string(buf.getInt(keywordsOffset + 4 * i)));
+        }
+        return l;
+    }
+
+    /**
+     * @return the number of series with details
+     */
+    public int getSeriesCount()
+    {
+        return seriesCount;
+    }
+
+    public SeriesDetails<T> getSeriesDetails(T series) throws SeriesDataException
+    {
+        byte[] key = codec.encode(series).getBytes(StandardCharsets.UTF_8);
+
+        int lo = 0, hi = seriesCount - 1;
+
+        while (lo <= hi) {
+            int mid = (lo + hi) >>> 1;
+            int p = directoryOffset + 8 * mid;
+
+            int c = compareString(buf.getInt(p), key);
+            if (c < 0) {
+                lo = mid + 1;
+            } else if (c > 0) {
+                hi = mid - 1;
+            } else {
+                return readDetails(buf.getInt(p + 4));
+            }
+        }
+
+        return null;
+    }
+
+    private SeriesDetails<T> readDetails(int p) throws SeriesDataException
+    {
+        if (p < directoryOffset || p >= textOffset) {
+            throw new SeriesDataException("Bad series offset in compiled catalogue: " + p);
+        }
+
+        int titles = buf.getInt(p);
+        p += 4;
+
+        List<String> normalised = new ArrayList<String>(titles);
+        CompiledSeriesDetails<T> sd = new CompiledSeriesDetails<T>(normalised);
+
+        /* Each episode is referred to several times; decode it once */
+        Map<Integer, T> ids = new HashMap<Integer, T>();
+
+        for (int i = 0; i < titles; i++) {
+            T ep = id(buf.getInt(p), ids);
+            String title = string(buf.getInt(p + 4));
+            normalised.add(string(buf.getInt(p + 8)));
+            boolean primary = buf.getInt(p + 12) != 0;
+            p += 16;
+
+            sd.episodeTitlesAndDescriptions.add(new EpisodeTitleDetails<T>(ep, title, primary));
+        }
+
+        int numbers = buf.getInt(p);
+        p += 4;
+
+        for (int i = 0; i < numbers; i++) {
+            sd.episodesByNumber.put(string(buf.getInt(p)), id(buf.getInt(p + 4), ids));
+            p += 8;
+        }
+
+        return sd;
+    }
+
+    /**
+     * Details whose title index uses the stored normalised titles.
+     */
+    private static class CompiledSeriesDetails<T> extends SeriesDetails<T>
+    {
+        private final List<String> normalisedTitles;
+        private volatile EpisodeTitleIndex<T> titleIndex;
+
+        CompiledSeriesDetails(List<String> normalisedTitles)
+        {
+            this.normalisedTitles = normalisedTitles;
+        }
+
+        public EpisodeTitleIndex<T> getTitleIndex()
+        {
+            EpisodeTitleIndex<T> ti = titleIndex;
+            if (ti == null) {
+                ti = new EpisodeTitleIndex<T>(episodeTitlesAndDescriptions, normalisedTitles);
+                titleIndex = ti;
+            }
+            return ti;
+        }
+    }
+}
@@ -0,0 +1,267 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise.impl;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
+import org.kafsemo.mivvi.recognise.FileNamingData;
+import org.kafsemo.mivvi.recognise.Item;
+import org.kafsemo.mivvi.recognise.Normaliser;
+import org.kafsemo.mivvi.recognise.SeriesDataException;
+import org.kafsemo.mivvi.recognise.SeriesDataSource;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+
+/**
+ * Compiles the series data needed for recognition into the binary format
+ * read by {@link CompiledCatalogue}.
+ *
+ * <p>The file is a header, then fixed-size sections of big-endian
+ * <code>int</code>s, then the text. Every string is stored once, as UTF-8,
+ * and referred to elsewhere by its index:</p>
+ * <ul>
+ * <li>the header: magic, version, and the number of strings, series
+ *  titles, series descriptions, keywords and series, and the offset of
+ *  the text;</li>
+ * <li>the end offset of each string within the text;</li>
+ * <li>series titles and descriptions, as label and identifier pairs;</li>
+ * <li>keywords;</li>
+ * <li>the series, as identifier and details offset pairs, in order of
+ *  their encoded identifiers' UTF-8 bytes;</li>
+ * <li>the details of each series: the count of titles, and identifier,
+ *  title, normalised title and primary flag for each, then the count of
+ *  episode numbers, and key and identifier for each;</li>
+ * <li>the text.</li>
+ * </ul>
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public class CompiledCatalogueWriter<T>
+{
+    private final IdentifierCodec<T> codec;
+
+    /* Each distinct string, with its index */
+    private final Map<String, Integer> strings = new LinkedHashMap<String, Integer>();
+
+    public CompiledCatalogueWriter(IdentifierCodec<T> codec)
+    {
+        this.codec = codec;
+    }
+
+    private int stringIndex(String s)
+    {
+        Integer i = strings.get(s);
+        if (i == null) {
+            i = strings.size();
+            strings.put(s, i);
+        }
+        return i.intValue();
+    }
+
+    private int idIndex(T id)
+    {
+        return stringIndex(codec.encode(id));
+    }
+
+    public void write(SeriesDataSource<T> source, FileNamingData naming, File f)
+        throws IOException, SeriesDataException
+    {
+        OutputStream out = new BufferedOutputStream(new FileOutputStream(f));
+        try {
+            write(source, naming, out);
+        } finally {
+            out.close();
+        }
+    }
+
+    public void write(SeriesDataSource<T> source, FileNamingData naming, OutputStream out)
+        throws IOException, SeriesDataException
+    {
+        strings.clear();
+
+        Set<T> series = new LinkedHashSet<T>();
+
+        List<Integer> titles = new ArrayList<Integer>();
+        for (Item<T> i : source.getSeriesTitles()) {
+            titles.add(stringIndex(i.label));
+            titles.add(idIndex(i.resource));
+            series.add(i.resource);
+        }
+
+        List<Integer> descriptions = new ArrayList<Integer>();
+        for (Item<T> i : source.getSeriesDescriptions()) {
+            descriptions.add(stringIndex(i.label));
+            descriptions.add(idIndex(i.resource));
+            series.add(i.resource);
+        }
+
+        List<Integer> keywords = new ArrayList<Integer>();
+        if (naming != null) {
+            for (String k : naming.getKeywords()) {
+                keywords.add(stringIndex(k));
+            }
+        }
+
+        /* Each series' details, with the index of its identifier */
+        List<int[]> details = new ArrayList<int[]>();
+        List<Integer> detailsIds = new ArrayList<Integer>();
+
+        Normaliser n = new Normaliser();
+
+        for (T s : series) {
+            SeriesDetails<T> sd = source.getSeriesDetails(s);
+            if (sd == null)
+                continue;
+
+            List<Integer> l = new ArrayList<Integer>();
+
+            l.add(sd.episodeTitlesAndDescriptions.size());
+            for (EpisodeTitleDetails<T> etd : sd.episodeTitlesAndDescriptions) {
+                l.add(idIndex(etd.getResource()));
+                l.add(stringIndex(etd.getTitle()));
+                l.add(stringIndex(n.normalise(etd.getTitle()).toString()));
+                l.add(etd.isPrimary() ? 1 : 0);
+            }
+
+            l.add(sd.episodesByNumber.size());
+            for (Map.Entry<String, T> e : sd.episodesByNumber.entrySet()) {
+                l.add(stringIndex(e.getKey()));
+                l.add(idIndex(e.getValue()));
+            }
+
+            details.add(toArray(l));
+            detailsIds.add(idIndex(s));
+        }
+
+        /* The text, and where each string ends */
+        List<String> stringList = new ArrayList<String>(strings.keySet());
+        final List<byte[]> encoded = new ArrayList<byte[]>(stringList.size());
+
+        ByteArrayOutputStream text = new ByteArrayOutputStream();
+        int[] stringEnds = new int[stringList.size()];
+
+        for (int i = 0; i < stringList.size(); i++) {
+            byte[] b = stringList.get(i).getBytes(StandardCharsets.UTF_8);
+            encoded.add(b);
+            text.write(b);
+            stringEnds[i] = text.size();
+        }
+
+        /* Sort the series directory so it can be searched */
+        List<Integer> directory = new ArrayList<Integer>();
+        for (int i = 0; i < details.size(); i++) {
+            directory.add(i);
+        }
+
+        final List<Integer> ids = detailsIds;
+        Collections.sort(directory, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b)
+            {
+                return CompiledCatalogue.compareBytes(encoded.get(ids.get(a)), encoded.get(ids.get(b)));
+            }
+        });
+
+        long offset = 4L * (CompiledCatalogue.HEADER_INTS + stringEnds.length
+                + titles.size() + descriptions.size() + keywords.size() + 2 * details.size());
+
+        int[] detailsOffsets = new int[details.size()];
+        for (int i = 0; i < details.size(); i++) {
+            detailsOffsets[i] = checkOffset(offset);
+            offset += 4L * details.get(i).length;
+        }
+
+        int textOffset = checkOffset(offset);
+        checkOffset(offset + text.size());
+
+        DataOutputStream dos = new DataOutputStream(out);
+
+        dos.writeInt(CompiledCatalogue.MAGIC);
+        dos.writeInt(CompiledCatalogue.VERSION);
+        dos.writeInt(stringEnds.length);
+        dos.writeInt(titles.size() / 2);
+        dos.writeInt(descriptions.size() / 2);
+        dos.writeInt(keywords.size());
+        dos.writeInt(details.size());
+        dos.writeInt(textOffset);
+
+        for (int e : stringEnds) {
+            dos.writeInt(e);
+        }
+
+        writeInts(dos, titles);
+        writeInts(dos, descriptions);
+        writeInts(dos, keywords);
+
+        for (Integer i : directory) {
+            dos.writeInt(detailsIds.get(i));
+            dos.writeInt(detailsOffsets[i]);
+        }
+
+        for (int[] d : details) {
+            for (int x : d) {
+                dos.writeInt(x);
+            }
+        }
+
+        text.writeTo(dos);
+
+        dos.flush();
+    }
+
+    private static int checkOffset(long offset) throws IOException
+    {
+        if (offset > Integer.MAX_VALUE) {
+            throw new IOException("Catalogue too large to compile: " + offset + " bytes");
+        }
+        return (int) offset;
+    }
+
+    private static int[] toArray(List<Integer> l)
+    {
+        int[] a = new int[l.size()];
+        for (int i = 0; i < a.length; i++) {
+            a[i] = l.get(i).intValue();
+        }
+        return a;
+    }
+
+    private static void writeInts(DataOutputStream dos, List<Integer> l) throws IOException
+    {
+        for (Integer i : l) {
+            dos.writeInt(i.intValue());
+        }
+    }
+}
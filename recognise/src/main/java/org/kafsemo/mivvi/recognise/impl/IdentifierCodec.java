@@ -0,0 +1,58 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise.impl;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+
+import org.kafsemo.mivvi.recognise.SeriesDataException;
+
+/**
+ * Writes identifiers as strings and reads them back, for storing them
+ * outside of the data source they came from.
+ *
+ * @author joe
+ * @param <T> the underlying identifier type
+ */
+public interface IdentifierCodec<T>
+{
+    String encode(T id);
+
+    T decode(String s) throws SeriesDataException;
+
+    /**
+     * For {@link URI}s, as used by {@link SimpleSeriesData}.
+     */
+    IdentifierCodec<URI> URIS = new IdentifierCodec<URI>() {
+        public String encode(URI id)
+        {
+            return id.toString();
+        }
+
+        public URI decode(String s) throws SeriesDataException
+        {
+            try {
+                return new URI(s);
+            } catch (URISyntaxException use) {
+                throw new SeriesDataException("Bad identifier in catalogue: " + s, use);
+            }
+        }
+    };
+}
@@ -27,18 +27,19 @@ import java.net.URI;
 import java.net.URISyntaxException;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
+import org.kafsemo.mivvi.recognise.BulkSeriesDataSource;
 import org.kafsemo.mivvi.recognise.EpisodeTitleDetails;
 import org.kafsemo.mivvi.recognise.Item;
-import org.kafsemo.mivvi.recognise.SeriesDataSource;
 import org.kafsemo.mivvi.recognise.SeriesDetails;
 
 
-public class SimpleSeriesData implements SeriesDataSource<URI>
+public class SimpleSeriesData implements BulkSeriesDataSource<URI>
 {
     private final Collection<Item<URI>> titles = new ArrayList<Item<URI>>();
     private final Collection<Item<URI>> descriptions = new ArrayList<Item<URI>>();
@@ -59,6 +60,11 @@ public class SimpleSeriesData implements SeriesDataSource<URI>
         return seriesDetails.get(series);
     }
 
+    public Map<URI, SeriesDetails<URI>> getAllSeriesDetails()
+    {
+        return Collections.unmodifiableMap(seriesDetails);
+    }
+
     private static final Pattern EPLINE = Pattern.compile("(\\d+|[A-Z])x(\\d+)\\s+(\\S+)(?:\\s+(.+))?");
     private static final Pattern CONTINUATION = Pattern.compile("\\s+(.*)");
 
@@ -127,14 +133,10 @@ public class SimpleSeriesData implements SeriesDataSource<URI>
 
             String season = m.group(1);
 
-            sd.episodesByNumber.put(
-                    season + "x" + Integer.parseInt(m.group(2)),
-                    ep);
+            sd.episodeNumbers.put(season, Integer.parseInt(m.group(2)), ep);
 
             episode++;
-            sd.episodesByNumber.put(
-                    Integer.toString(episode),
-                    ep);
+            sd.episodeNumbers.putAbsolute(episode, ep);
 
             if(m.group(4) != null) {
                 EpisodeTitleDetails<URI> etd = new EpisodeTitleDetails<URI>(ep, m.group(4), true);
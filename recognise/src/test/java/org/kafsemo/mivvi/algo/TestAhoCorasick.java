@@ -0,0 +1,110 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.algo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link AhoCorasick}.
+ *
+ * @author joe
+ */
+public class TestAhoCorasick
+{
+    static List<String> findAll(AhoCorasick ac, String s)
+    {
+        final List<String> l = new ArrayList<String>();
+
+        ac.findAll(s, new AhoCorasick.MatchHandler() {
+            public void match(int start, int end, int key)
+            {
+                l.add(start + "-" + end + ":" + key);
+            }
+        });
+
+        return l;
+    }
+
+    @Test
+    public void nothingFoundWithNoKeys()
+    {
+        AhoCorasick ac = new AhoCorasick(Collections.<String>emptyList());
+        assertEquals(Collections.emptyList(), findAll(ac, "anything"));
+    }
+
+    @Test
+    public void emptyKeysAreIgnored()
+    {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("", "a"));
+        assertEquals(Arrays.asList("0-1:1"), findAll(ac, "a"));
+    }
+
+    @Test
+    public void findsEveryOccurrence()
+    {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("show"));
+        assertEquals(Arrays.asList("0-4:0", "5-9:0"), findAll(ac, "show show"));
+    }
+
+    @Test
+    public void findsOverlappingKeysThroughFailureLinks()
+    {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("he", "she", "his", "hers"));
+
+        assertEquals(Arrays.asList("1-4:1", "2-4:0", "2-6:3"),
+                findAll(ac, "ushers"));
+    }
+
+    @Test
+    public void duplicateKeysAreAllReportedInOrder()
+    {
+        AhoCorasick ac = new AhoCorasick(Arrays.asList("tla", "x", "tla"));
+        assertEquals(Arrays.asList("0-3:0", "0-3:2"), findAll(ac, "tla"));
+    }
+
+    @Test
+    public void agreesWithIndexOf()
+    {
+        List<String> keys = Arrays.asList("a", "ab", "bab", "aba", "bb", "abab");
+
+        AhoCorasick ac = new AhoCorasick(keys);
+
+        String s = "ababbababbaab";
+
+        List<String> expected = new ArrayList<String>();
+        for (int end = 1; end <= s.length(); end++) {
+            for (int start = 0; start < end; start++) {
+                for (int k = 0; k < keys.size(); k++) {
+                    if (s.substring(start, end).equals(keys.get(k))) {
+                        expected.add(start + "-" + end + ":" + k);
+                    }
+                }
+            }
+        }
+
+        assertEquals(expected, findAll(ac, s));
+    }
+}
@@ -20,10 +20,20 @@ package org.kafsemo.mivvi.algo;
 
 import static org.junit.Assert.assertEquals;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
 import java.util.Set;
 
 import org.junit.Test;
@@ -72,4 +82,161 @@ public class TestBkTree
         f.find(Integer.valueOf(0), 4, results);
         assertEquals(set, results);
     }
+
+    private static List<Integer> randomInts(Random r, int n, int range)
+    {
+        List<Integer> l = new ArrayList<Integer>();
+        for (int i = 0; i < n; i++) {
+            l.add(r.nextInt(range));
+        }
+        return l;
+    }
+
+    @Test
+    public void findMatchesBruteForce()
+    {
+        Random r = new Random(0);
+        IntMetric m = new IntMetric();
+
+        for (int round = 0; round < 100; round++) {
+            List<Integer> contents = randomInts(r, r.nextInt(200), 500);
+            BkTree<Integer> f = new BkTree<Integer>(m, contents, r);
+
+            assertEquals(contents.size(), f.size());
+
+            int target = r.nextInt(600) - 50, maxDistance = r.nextInt(30);
+
+            List<Integer> expected = new ArrayList<Integer>();
+            for (Integer i : contents) {
+                if (m.dist(i, target) <= maxDistance) {
+                    expected.add(i);
+                }
+            }
+
+            List<Integer> results = new ArrayList<Integer>();
+            f.find(target, maxDistance, results);
+
+            Collections.sort(expected);
+            Collections.sort(results);
+            assertEquals(expected, results);
+        }
+    }
+
+    @Test
+    public void nearestMatchesBruteForce()
+    {
+        Random r = new Random(1);
+        IntMetric m = new IntMetric();
+
+        for (int round = 0; round < 100; round++) {
+            List<Integer> contents = randomInts(r, r.nextInt(200), 500);
+            BkTree<Integer> f = new BkTree<Integer>(m, contents, r);
+
+            int target = r.nextInt(500), k = 1 + r.nextInt(10), maxDistance = r.nextInt(100);
+
+            List<Integer> distances = new ArrayList<Integer>();
+            for (Integer i : contents) {
+                int d = m.dist(i, target);
+                if (d <= maxDistance) {
+                    distances.add(d);
+                }
+            }
+            Collections.sort(distances);
+
+            List<Integer> found = new ArrayList<Integer>();
+            for (BkTree.Neighbour<Integer> nb : f.nearest(target, k, maxDistance)) {
+                assertEquals(m.dist(nb.value, target), nb.distance);
+                found.add(nb.distance);
+            }
+
+            assertEquals(distances.subList(0, Math.min(k, distances.size())), found);
+        }
+    }
+
+    @Test
+    public void nearestInEmptyTree()
+    {
+        BkTree<Integer> f = newFinder(new IntMetric(), Collections.<Integer>emptySet());
+        assertEquals(Collections.emptyList(), f.nearest(0, 3));
+    }
+
+    @Test
+    public void treeRoundTrips() throws IOException
+    {
+        Metric<String> m = new Metric<String>() {
+            public int dist(String a, String b)
+            {
+                return Math.abs(a.length() - b.length());
+            }
+        };
+
+        List<String> contents = Arrays.asList("", "a", "bb", "ccc", "dddd", "ee", "f");
+        BkTree<String> f = new BkTree<String>(m, contents, new Random(0));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        f.write(new DataOutputStream(out), BkTree.STRINGS);
+
+        BkTree<String> g = BkTree.read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())),
+                m, BkTree.STRINGS);
+
+        assertEquals(f.size(), g.size());
+
+        for (String t : Arrays.asList("", "xx", "yyyyy")) {
+            for (int d = 0; d < 4; d++) {
+                List<String> a = new ArrayList<String>(), b = new ArrayList<String>();
+                f.find(t, d, a);
+                g.find(t, d, b);
+                assertEquals(a, b);
+            }
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void otherDataIsNotATree() throws IOException
+    {
+        BkTree.read(new DataInputStream(new ByteArrayInputStream(new byte[8])), new IntMetric(),
+                new BkTree.Codec<Integer>() {
+                    public void write(DataOutput out, Integer value)
+                    {
+                    }
+
+                    public Integer read(DataInput in) throws IOException
+                    {
+                        return in.readInt();
+                    }
+                });
+    }
+
+    @Test
+    public void seededTreesAreRepeatable()
+    {
+        List<Integer> contents = randomInts(new Random(2), 100, 1000);
+
+        List<Integer> a = new ArrayList<Integer>(), b = new ArrayList<Integer>();
+        new BkTree<Integer>(new IntMetric(), contents, new Random(3)).find(500, 100, a);
+        new BkTree<Integer>(new IntMetric(), contents, new Random(3)).find(500, 100, b);
+
+        assertEquals(a, b);
+    }
+
+    @Test
+    public void memoisedDistancesAreReused()
+    {
+        MemoisingMetric<Integer> m = new MemoisingMetric<Integer>(new IntMetric(), 100);
+
+        assertEquals(3, m.dist(1, 4));
+        assertEquals(3, m.dist(4, 1));
+        assertEquals(1, m.getHitCount());
+        assertEquals(1, m.getMissCount());
+
+        BkTree<Integer> f = new BkTree<Integer>(m, Arrays.asList(0, 1, 2, 3, 4), new Random(0));
+
+        List<Integer> a = new ArrayList<Integer>(), b = new ArrayList<Integer>();
+        f.find(2, 1, a);
+        long misses = m.getMissCount();
+        f.find(2, 1, b);
+
+        assertEquals(a, b);
+        assertEquals(misses, m.getMissCount());
+    }
 }
@@ -0,0 +1,86 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.algo;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Tests for {@link Trie}.
+ *
+ * @author joe
+ */
+public class TestTrie
+{
+    static List<String> findPrefixes(Trie t, String s, int start)
+    {
+        final List<String> l = new ArrayList<String>();
+
+        t.findPrefixes(s, start, new Trie.PrefixHandler() {
+            public void prefix(int end, int key)
+            {
+                l.add(end + ":" + key);
+            }
+        });
+
+        return l;
+    }
+
+    @Test
+    public void nothingFoundWithNoKeys()
+    {
+        Trie t = new Trie(Collections.<String>emptyList());
+        assertEquals(Collections.emptyList(), findPrefixes(t, "anything", 0));
+    }
+
+    @Test
+    public void emptyKeysAreIgnored()
+    {
+        Trie t = new Trie(Arrays.asList("", "a"));
+        assertEquals(Arrays.asList("1:1"), findPrefixes(t, "a", 0));
+    }
+
+    @Test
+    public void allPrefixesAreReportedShortestFirst()
+    {
+        Trie t = new Trie(Arrays.asList("hdtv", "hd", "h", "x"));
+        assertEquals(Arrays.asList("1:2", "2:1", "4:0"), findPrefixes(t, "hdtvrip", 0));
+    }
+
+    @Test
+    public void onlyPrefixesFromTheOffset()
+    {
+        Trie t = new Trie(Arrays.asList("tv", "hd"));
+        assertEquals(Arrays.asList("4:0"), findPrefixes(t, "hdtv", 2));
+        assertEquals(Collections.emptyList(), findPrefixes(t, "xhdtv", 0));
+    }
+
+    @Test
+    public void duplicateKeysAreAllReportedInOrder()
+    {
+        Trie t = new Trie(Arrays.asList("tla", "x", "tla"));
+        assertEquals(Arrays.asList("3:0", "3:2"), findPrefixes(t, "tla", 0));
+    }
+}
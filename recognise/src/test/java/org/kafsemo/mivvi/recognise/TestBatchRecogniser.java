@@ -0,0 +1,159 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * @author joe
+ */
+public class TestBatchRecogniser
+{
+    private static final List<String> NAMES = Arrays.asList(
+            "Example Show 1x01",
+            "TLA - Named Episode",
+            "Unknown Show 1x01",
+            "Example Show - 2x02",
+            "Three-Letter Acronym 1x1",
+            "Example Show 9x09");
+
+    private FilenameProcessor<URI> fp;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-example.txt");
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-tla.txt");
+
+        fp = new FilenameProcessor<URI>(ssd, TestFilenameProcessor.kw());
+    }
+
+    private static List<URI> episodes(List<FilenameMatch<URI>> l)
+    {
+        List<URI> r = new ArrayList<URI>();
+        for (FilenameMatch<URI> fnm : l) {
+            r.add((fnm != null) ? fnm.episode : null);
+        }
+        return r;
+    }
+
+    private List<URI> serially(List<String> names) throws SeriesDataException
+    {
+        List<FilenameMatch<URI>> l = new ArrayList<FilenameMatch<URI>>();
+        for (String n : names) {
+            l.add(fp.processName(n));
+        }
+        return episodes(l);
+    }
+
+    @Test
+    public void resultsAreInInputOrder() throws Exception
+    {
+        BatchRecogniser.Result<URI> r = new BatchRecogniser<URI>(fp).processNames(NAMES);
+
+        List<URI> expected = serially(NAMES);
+
+        assertEquals(expected, episodes(r.getMatches()));
+        assertEquals(URI.create("http://www.example.com/1/1#"), expected.get(0));
+        assertNull(expected.get(2));
+    }
+
+    @Test
+    public void manyInputsOnAnExecutor() throws Exception
+    {
+        List<String> names = new ArrayList<String>();
+        for (int i = 0; i < 1000; i++) {
+            names.add(NAMES.get((i * 7) % NAMES.size()));
+        }
+
+        ExecutorService es = Executors.newFixedThreadPool(4);
+        try {
+            BatchRecogniser.Result<URI> r = new BatchRecogniser<URI>(fp, es).processNames(names.stream());
+            assertEquals(serially(names), episodes(r.getMatches()));
+        } finally {
+            es.shutdown();
+        }
+    }
+
+    @Test
+    public void filesAreRecognisedByName() throws Exception
+    {
+        List<File> files = Arrays.asList(
+                new File("Example Show 1x02.avi"),
+                new File("Nothing.avi"));
+
+        BatchRecogniser.Result<URI> r = new BatchRecogniser<URI>(fp).processFiles(files);
+
+        assertEquals(Arrays.asList(URI.create("http://www.example.com/1/2#"), null),
+                episodes(r.getMatches()));
+    }
+
+    @Test
+    public void statsCountTheBatch() throws Exception
+    {
+        BatchRecogniser.Stats s = new BatchRecogniser<URI>(fp).processNames(NAMES).getStats();
+
+        int recognised = 0;
+        for (URI u : serially(NAMES)) {
+            if (u != null)
+                recognised++;
+        }
+
+        assertEquals(NAMES.size(), s.inputs);
+        assertEquals(recognised, s.recognised);
+        assertTrue(s.exact <= s.recognised);
+        assertEquals(2, s.series);
+        assertTrue(s.elapsedNanos >= 0);
+    }
+
+    @Test
+    public void emptyBatch() throws Exception
+    {
+        BatchRecogniser.Result<URI> r = new BatchRecogniser<URI>(fp).processNames(Collections.<String>emptyList());
+
+        assertEquals(Collections.emptyList(), r.getMatches());
+        assertEquals(0, r.getStats().inputs);
+    }
+
+    @Test
+    public void everySeriesCanBePreloaded() throws Exception
+    {
+        int n = new BatchRecogniser<URI>(fp).preloadAllSeriesDetails();
+
+        assertEquals(2, n);
+        assertEquals(2, fp.getSeriesDetailsCache().size());
+    }
+}
@@ -0,0 +1,183 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * @author joe
+ */
+public class TestBoundedSeriesDetailsCache
+{
+    /**
+     * Makes up details with a given number of titles, and records each load.
+     */
+    private static class CountingLoader implements SeriesDetailsCache.Loader<String>
+    {
+        final List<String> loaded = new ArrayList<String>();
+
+        public SeriesDetails<String> load(String series)
+        {
+            loaded.add(series);
+
+            if (series.equals("missing")) {
+                return null;
+            }
+
+            SeriesDetails<String> sd = new SeriesDetails<String>();
+            int titles = series.length() - 1;
+            for (int i = 0; i < titles; i++) {
+                sd.episodeTitlesAndDescriptions.add(new EpisodeTitleDetails<String>(series + i, "Title " + i, true));
+            }
+            return sd;
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void weightMustBePositive()
+    {
+        new BoundedSeriesDetailsCache<String>(0);
+    }
+
+    @Test
+    public void detailsAreLoadedOnce() throws Exception
+    {
+        BoundedSeriesDetailsCache<String> c = new BoundedSeriesDetailsCache<String>(100);
+        CountingLoader l = new CountingLoader();
+
+        SeriesDetails<String> sd = c.get("abc", l);
+        assertNotNull(sd);
+        assertSame(sd, c.get("abc", l));
+
+        assertEquals(1, l.loaded.size());
+        assertEquals(1, c.getHitCount());
+        assertEquals(1, c.getMissCount());
+        assertEquals(3, c.getWeight());
+    }
+
+    @Test
+    public void leastRecentlyUsedAreEvictedByWeight() throws Exception
+    {
+        BoundedSeriesDetailsCache<String> c = new BoundedSeriesDetailsCache<String>(6);
+        CountingLoader l = new CountingLoader();
+
+        c.get("aa", l);
+        c.get("bb", l);
+        c.get("cc", l);
+        assertEquals(6, c.getWeight());
+
+        /* Touch the first, so the second is the eldest */
+        c.get("aa", l);
+        c.get("dd", l);
+
+        assertEquals(3, c.size());
+        assertEquals(1, c.getEvictionCount());
+
+        l.loaded.clear();
+        c.get("aa", l);
+        c.get("bb", l);
+        assertEquals(1, l.loaded.size());
+        assertEquals("bb", l.loaded.get(0));
+    }
+
+    @Test
+    public void anOversizedSeriesIsStillKept() throws Exception
+    {
+        BoundedSeriesDetailsCache<String> c = new BoundedSeriesDetailsCache<String>(2);
+        CountingLoader l = new CountingLoader();
+
+        c.get("a", l);
+        SeriesDetails<String> sd = c.get("abcdef", l);
+
+        assertEquals(1, c.size());
+        assertSame(sd, c.get("abcdef", l));
+        assertEquals(6, c.getWeight());
+    }
+
+    @Test
+    public void missingDetailsAreNotKept() throws Exception
+    {
+        BoundedSeriesDetailsCache<String> c = new BoundedSeriesDetailsCache<String>(10);
+        CountingLoader l = new CountingLoader();
+
+        assertNull(c.get("missing", l));
+        assertNull(c.get("missing", l));
+        assertEquals(2, l.loaded.size());
+        assertEquals(0, c.size());
+    }
+
+    @Test
+    public void countersAreSharedWithCopies() throws Exception
+    {
+        BoundedSeriesDetailsCache<String> c = new BoundedSeriesDetailsCache<String>(10);
+        CountingLoader l = new CountingLoader();
+
+        c.get("abc", l);
+
+        BoundedSeriesDetailsCache<String> copy = (BoundedSeriesDetailsCache<String>) c.emptyCopy();
+        assertEquals(0, copy.size());
+        assertEquals(10, copy.getMaximumWeight());
+
+        copy.get("abc", l);
+        assertEquals(2, c.getMissCount());
+    }
+
+    @Test
+    public void recognitionWorksWithATinyCache() throws Exception
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-example.txt");
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-tla.txt");
+
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(ssd, TestFilenameProcessor.kw());
+        FilenameProcessor<URI> bounded = new FilenameProcessor<URI>(ssd, TestFilenameProcessor.kw());
+        BoundedSeriesDetailsCache<URI> c = new BoundedSeriesDetailsCache<URI>(1);
+        bounded.setSeriesDetailsCache(c);
+
+        String[] names = {
+            "Example Show 1x01",
+            "TLA - Named Episode",
+            "Example Show - 2x02",
+            "Three-Letter Acronym 1x1"
+        };
+
+        for (String n : names) {
+            FilenameMatch<URI> expected = fp.processName(n);
+            FilenameMatch<URI> actual = bounded.processName(n);
+            assertEquals(n, expected.episode, actual.episode);
+        }
+
+        assertEquals(1, c.size());
+        assertSame(c, bounded.getSeriesDetailsCache());
+
+        bounded.seriesDataChanged();
+        assertEquals(0, bounded.getSeriesDetailsCache().size());
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.junit.Test;
+
+/**
+ * Compare the lexer with the regular expressions it replaced.
+ *
+ * @author joe
+ */
+public class TestEpisodeCodeLexer
+{
+    private static final Pattern[] PA = {
+        Pattern.compile("^(\\d+)x(\\d+)\\b", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("^s(\\d+)ep?(\\d+)\\b", Pattern.CASE_INSENSITIVE),
+        Pattern.compile("^series\\s+(\\d+)\\s+episode\\s+(\\d+)\\b", Pattern.CASE_INSENSITIVE)
+    };
+
+    private static final Pattern P2 = Pattern.compile("^(\\d+)\\b");
+
+    private static final Pattern P3 = Pattern.compile("^p(?:ar)?t\\s*(\\d+)\\b", Pattern.CASE_INSENSITIVE);
+
+    private static String describe(int kind, int season, int number, int end)
+    {
+        return kind + ":" + season + ":" + number + ":" + end;
+    }
+
+    private static String reference(String ns)
+    {
+        for (Pattern p : PA) {
+            Matcher m = p.matcher(ns);
+            if (m.find()) {
+                return describe(EpisodeCodeLexer.SEASON_AND_EPISODE,
+                        Integer.parseInt(m.group(1)), Integer.parseInt(m.group(2)), m.end());
+            }
+        }
+
+        Matcher m = P2.matcher(ns);
+        if (m.find()) {
+            return describe(EpisodeCodeLexer.NUMBER, 0, Integer.parseInt(m.group(1)), m.end(1));
+        }
+
+        m = P3.matcher(ns);
+        if (m.find()) {
+            return describe(EpisodeCodeLexer.PART, 1, Integer.parseInt(m.group(1)), m.end());
+        }
+
+        return null;
+    }
+
+    private static String lex(String ns)
+    {
+        EpisodeCodeLexer l = new EpisodeCodeLexer();
+        if (l.scan(ns)) {
+            return describe(l.kind, l.season, l.number, l.end);
+        } else {
+            assertEquals(EpisodeCodeLexer.NONE, l.kind);
+            return null;
+        }
+    }
+
+    private static void assertSameAsReference(String s)
+    {
+        String ns = new NormalisedString(s).toString();
+
+        String expected;
+        try {
+            expected = reference(ns);
+        } catch (NumberFormatException nfe) {
+            /* The expressions matched, but the number was too large */
+            return;
+        }
+
+        assertEquals(s, expected, lex(ns));
+    }
+
+    @Test
+    public void examplesMatchReference()
+    {
+        String[] examples = {
+            "", "1", "1x2", "01x02 title", "1x2x3", "1x", "x2", "1xa",
+            "s01e02", "S1E2", "s1ep2", "s1ep", "s1e2b", "se1", "s 1 e 2",
+            "series 3 episode 4", "Series 3  Episode 4 - Title", "series 3 episode",
+            "series3 episode 4", "101", "101 Title", "9999", "1 Named Episode",
+            "pt 5", "part 5", "Pt.5", "part5", "parts 5", "pat 5", "p 5", "pt5x",
+            "WordsX2", "1x999", "da39a3ee5e6b4b0d3255bfef95601890afd80709",
+            "123é", "12 é", "s1e2é", "1x2_3"
+        };
+
+        for (String s : examples) {
+            assertSameAsReference(s);
+        }
+    }
+
+    @Test
+    public void randomCodesMatchReference()
+    {
+        String[] pieces = {
+            "1", "2", "0", "12", "99", "101", "x", "X", "s", "e", "ep", "p",
+            "t", "pt", "part", "series", "episode", " ", ".", "-", "a", "é"
+        };
+
+        Random r = new Random(0);
+
+        for (int round = 0; round < 20000; round++) {
+            StringBuilder sb = new StringBuilder();
+            int n = r.nextInt(7);
+            for (int i = 0; i < n; i++) {
+                sb.append(pieces[r.nextInt(pieces.length)]);
+            }
+
+            assertSameAsReference(sb.toString());
+        }
+    }
+
+    @Test
+    public void numbersTooLargeAreNotEpisodeCodes()
+    {
+        assertFalse(new EpisodeCodeLexer().scan("99999999999"));
+        assertFalse(new EpisodeCodeLexer().scan("1x99999999999"));
+        assertFalse(new EpisodeCodeLexer().scan("s99999999999e1"));
+    }
+}
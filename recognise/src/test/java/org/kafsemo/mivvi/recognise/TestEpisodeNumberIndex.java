@@ -0,0 +1,239 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author joe
+ */
+public class TestEpisodeNumberIndex
+{
+    @Test
+    public void emptyIndexFindsNothing()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        assertNull(eni.get(1, 1));
+        assertNull(eni.getAbsolute(1));
+        assertEquals(Collections.emptyList(), eni.getAllAtPosition(1));
+        assertEquals(Collections.emptyMap(), eni.asStringMap());
+    }
+
+    @Test
+    public void episodesFoundBySeasonAndAbsoluteNumber()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        eni.put("1", 1, "a");
+        eni.put("1", 2, "b");
+        eni.put(2, 1, "c");
+        eni.putAbsolute(1, "a");
+        eni.putAbsolute(2, "b");
+        eni.putAbsolute(3, "c");
+
+        assertEquals("a", eni.get(1, 1));
+        assertEquals("b", eni.get(1, 2));
+        assertEquals("c", eni.get("2", 1));
+        assertNull(eni.get(2, 2));
+
+        assertEquals("c", eni.getAbsolute(3));
+        assertNull(eni.getAbsolute(4));
+
+        assertEquals(6, eni.size());
+    }
+
+    @Test
+    public void laterEpisodesReplaceEarlierOnes()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        assertNull(eni.put("1", 1, "a"));
+        assertEquals("a", eni.put(1, 1, "b"));
+
+        assertEquals("b", eni.get(1, 1));
+        assertEquals(Arrays.asList("b"), eni.getAllAtPosition(1));
+    }
+
+    @Test
+    public void seasonsWithOtherNamesAreOnlyFoundByName()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        eni.put("A", 1, "special");
+        eni.put("01", 1, "padded");
+
+        assertEquals("special", eni.get("A", 1));
+        assertEquals("padded", eni.get("01", 1));
+        assertNull(eni.get(1, 1));
+
+        assertEquals(Arrays.asList("special", "padded"), eni.getAllAtPosition(1));
+    }
+
+    @Test
+    public void negativeSeasonsAreFoundByNumber()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        eni.put("-1", 3, "x");
+
+        assertEquals("x", eni.get(-1, 3));
+        assertNull(eni.get(-2, 3));
+    }
+
+    @Test
+    public void stringViewMatchesStringKeys()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        eni.put("1", 1, "a");
+        eni.put("A", 2, "b");
+        eni.putAbsolute(7, "a");
+
+        Map<String, String> expected = new HashMap<String, String>();
+        expected.put("1x1", "a");
+        expected.put("Ax2", "b");
+        expected.put("7", "a");
+
+        Map<String, String> m = eni.asStringMap();
+
+        assertEquals(expected, m);
+        assertEquals(m, expected);
+
+        assertEquals("b", m.get("Ax2"));
+        assertTrue(m.containsKey("7"));
+        assertFalse(m.containsKey("07"));
+        assertFalse(m.containsKey("1x01"));
+        assertNull(m.get("Bx2"));
+        assertNull(m.get(Integer.valueOf(7)));
+    }
+
+    @Test
+    public void stringViewWritesThrough()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+
+        eni.asStringMap().put("3x5", "a");
+        eni.asStringMap().put("42", "b");
+
+        assertEquals("a", eni.get(3, 5));
+        assertEquals("b", eni.getAbsolute(42));
+        assertEquals(Arrays.asList("a"), eni.getAllAtPosition(5));
+    }
+
+    @Test
+    public void stringViewOnlyTakesCanonicalNumbers()
+    {
+        EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+        eni.putAbsolute(0, "zero");
+        eni.putAbsolute(-3, "negative");
+        eni.putAbsolute(Integer.MAX_VALUE, "max");
+
+        Map<String, String> m = eni.asStringMap();
+
+        assertEquals("zero", m.get("0"));
+        assertEquals("negative", m.get("-3"));
+        assertEquals("max", m.get("2147483647"));
+
+        assertNull(m.get("-0"));
+        assertNull(m.get("+3"));
+        assertNull(m.get("-03"));
+        assertNull(m.get("2147483648"));
+        assertNull(m.get("-2147483648"));
+        assertNull(m.get("-"));
+        assertNull(m.get(""));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void stringViewRejectsUnknownKeys()
+    {
+        new EpisodeNumberIndex<String>().asStringMap().put("pilot", "a");
+    }
+
+    /**
+     * Compare against the string keys the index replaces.
+     */
+    @Test
+    public void agreesWithStringKeys()
+    {
+        String[] seasons = {"0", "1", "2", "3", "10", "A", "B", "01"};
+
+        Random r = new Random(0);
+
+        for (int round = 0; round < 50; round++) {
+            EpisodeNumberIndex<String> eni = new EpisodeNumberIndex<String>();
+            Map<String, String> m = new HashMap<String, String>();
+
+            for (int i = 0; i < 60; i++) {
+                String ep = "ep" + r.nextInt(40);
+
+                if (r.nextBoolean()) {
+                    String s = seasons[r.nextInt(seasons.length)];
+                    int p = r.nextInt(15);
+                    eni.put(s, p, ep);
+                    m.put(s + "x" + p, ep);
+                } else {
+                    int n = r.nextInt(50);
+                    eni.putAbsolute(n, ep);
+                    m.put(Integer.toString(n), ep);
+                }
+            }
+
+            assertEquals(m, eni.asStringMap());
+
+            for (int s = 0; s < 12; s++) {
+                for (int p = 0; p < 16; p++) {
+                    assertEquals(m.get(s + "x" + p), eni.get(s, p));
+                }
+            }
+
+            for (int n = 0; n < 52; n++) {
+                assertEquals(m.get(Integer.toString(n)), eni.getAbsolute(n));
+            }
+
+            for (int p = 0; p < 16; p++) {
+                List<String> expected = new ArrayList<String>();
+                for (Map.Entry<String, String> e : m.entrySet()) {
+                    if (e.getKey().endsWith("x" + p)) {
+                        expected.add(e.getValue());
+                    }
+                }
+
+                List<String> actual = eni.getAllAtPosition(p);
+
+                Collections.sort(expected);
+                Collections.sort(actual);
+                assertEquals(expected, actual);
+            }
+        }
+    }
+}
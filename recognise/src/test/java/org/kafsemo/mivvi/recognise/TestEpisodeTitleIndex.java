@@ -0,0 +1,128 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class TestEpisodeTitleIndex
+{
+    private static EpisodeTitleIndex<String> index(String... titles)
+    {
+        List<EpisodeTitleDetails<String>> l = new ArrayList<EpisodeTitleDetails<String>>();
+
+        for (int i = 0; i < titles.length; i++) {
+            l.add(new EpisodeTitleDetails<String>("ep" + i, titles[i], true));
+        }
+
+        return new EpisodeTitleIndex<String>(l);
+    }
+
+    @Test
+    public void titlesArePreNormalised()
+    {
+        EpisodeTitleIndex<String> eti = index("Named Episode", "Pilot (Part 1)");
+
+        assertEquals("named episode", eti.getNormalisedTitle(0));
+        assertEquals("pilot part 1", eti.getNormalisedTitle(1));
+    }
+
+    @Test
+    public void exactTitleLookupPrefersEarlierTitles()
+    {
+        EpisodeTitleIndex<String> eti = index("Pilot", "Named Episode", "PILOT");
+
+        assertEquals("ep0", eti.getByNormalisedTitle("pilot"));
+        assertEquals("ep1", eti.getByNormalisedTitle("named episode"));
+        assertNull(eti.getByNormalisedTitle("Named Episode"));
+    }
+
+    @Test
+    public void distantLongTitlesAreNotCandidates()
+    {
+        EpisodeTitleIndex<String> eti = index("pilot", "a very long title with nothing in common");
+
+        assertArrayEquals(new int[] {0}, eti.candidates("pilot", 2));
+    }
+
+    @Test
+    public void everythingIsACandidateWithALargeEnoughDistance()
+    {
+        EpisodeTitleIndex<String> eti = index("pilot", "a very long title with nothing in common");
+
+        assertArrayEquals(new int[] {0, 1}, eti.candidates("pilot", Integer.MAX_VALUE));
+    }
+
+    private static String randomString(Random r, int maxLength, String alphabet)
+    {
+        int len = r.nextInt(maxLength + 1);
+
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        }
+
+        return sb.toString();
+    }
+
+    @Test
+    public void noTitleWithinDistanceIsMissed()
+    {
+        Random r = new Random(0);
+
+        String[] titles = new String[200];
+        for (int i = 0; i < titles.length; i++) {
+            titles[i] = randomString(r, 16, "abc");
+        }
+
+        EpisodeTitleIndex<String> eti = index(titles);
+
+        boolean pruned = false;
+
+        for (int i = 0; i < 500; i++) {
+            String input = randomString(r, 12, "abcd");
+            int k = r.nextInt(5);
+
+            List<Integer> candidates = new ArrayList<Integer>();
+            for (int c : eti.candidates(input, k)) {
+                candidates.add(c);
+            }
+
+            for (int t = 0; t < titles.length; t++) {
+                String title = eti.getNormalisedTitle(t);
+                if (StringUtil.levenshteinDistanceBounded(title, input, k) != null) {
+                    assertTrue(title + " within " + k + " of " + input,
+                            candidates.contains(t));
+                }
+            }
+
+            pruned |= (candidates.size() < titles.length);
+        }
+
+        assertTrue("Some titles should have been ruled out", pruned);
+    }
+}
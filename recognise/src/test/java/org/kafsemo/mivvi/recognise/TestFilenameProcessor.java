@@ -779,6 +779,20 @@ public class TestFilenameProcessor
         assertNull(m);
     }
 
+    public void testMatchSeriesAllowingPrefixFindsLaterDelimitedOccurrence()
+        throws Exception
+    {
+        replaceData("tla");
+        Matching<URI> m;
+
+        m = fp.matchSeriesAllowingPrefix("xTLA TLA");
+        assertNotNull(m);
+        assertEquals(TLA_SHOW, m.matchedResource);
+        assertEquals("TLA", m.realString);
+        assertEquals(5, m.start);
+        assertEquals(8, m.end);
+    }
+
     public void testUnwantedPrefix() throws Exception
     {
         replaceData("named-episode-example");
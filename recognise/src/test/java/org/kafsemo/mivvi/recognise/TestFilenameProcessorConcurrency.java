@@ -0,0 +1,124 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * Recognise the same names from many threads at once, starting from a
+ * cold processor so that the lazily-built state is filled concurrently.
+ *
+ * @author joe
+ */
+public class TestFilenameProcessorConcurrency
+{
+    private static final int THREADS = 8;
+    private static final int ROUNDS = 50;
+
+    private static final List<String> NAMES = Arrays.asList(
+            "Example Show 1x01",
+            "Example Show - 2x02.avi",
+            "/srv/media/Example Show/1x02.avi",
+            "TLA - Named Episode",
+            "Three-Letter Acronym 1x1",
+            "TLA - Named Episdoe",
+            "Unknown Show 1x01",
+            "");
+
+    private static FilenameProcessor<URI> newProcessor() throws Exception
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-example.txt");
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-tla.txt");
+
+        return new FilenameProcessor<URI>(ssd, TestFilenameProcessor.kw());
+    }
+
+    private static String describe(FilenameMatch<URI> fnm)
+    {
+        if (fnm == null) {
+            return null;
+        } else {
+            return fnm.episode + " " + fnm.isExact;
+        }
+    }
+
+    private static List<String> recogniseAll(FilenameProcessor<URI> fp) throws SeriesDataException
+    {
+        List<String> l = new ArrayList<String>();
+        for (String n : NAMES) {
+            l.add(describe(fp.processName(n)));
+        }
+        return l;
+    }
+
+    @Test
+    public void concurrentRecognitionMatchesSerialRecognition() throws Exception
+    {
+        final List<String> expected = recogniseAll(newProcessor());
+
+        ExecutorService es = Executors.newFixedThreadPool(THREADS);
+
+        try {
+            for (int r = 0; r < ROUNDS; r++) {
+                final FilenameProcessor<URI> fp = newProcessor();
+                final CountDownLatch start = new CountDownLatch(1);
+
+                List<Future<List<String>>> results = new ArrayList<Future<List<String>>>();
+
+                for (int t = 0; t < THREADS; t++) {
+                    final boolean invalidate = (t == 0);
+
+                    results.add(es.submit(new Callable<List<String>>() {
+                        public List<String> call() throws Exception
+                        {
+                            start.await();
+                            if (invalidate) {
+                                fp.seriesDataChanged();
+                            }
+                            return recogniseAll(fp);
+                        }
+                    }));
+                }
+
+                start.countDown();
+
+                for (Future<List<String>> f : results) {
+                    assertEquals(expected, f.get());
+                }
+            }
+        } finally {
+            es.shutdown();
+        }
+    }
+}
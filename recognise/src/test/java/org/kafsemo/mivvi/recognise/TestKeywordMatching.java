@@ -0,0 +1,206 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+/**
+ * Compare keyword matching with the linear scan it replaced.
+ *
+ * @author joe
+ */
+public class TestKeywordMatching
+{
+    /**
+     * Keywords, in the order the processor will see them.
+     */
+    private static List<String> keywords(FileNamingData fnd) throws SeriesDataException
+    {
+        List<String> l = new ArrayList<String>();
+        for (String k : fnd.getKeywords()) {
+            l.add(k);
+        }
+        return l;
+    }
+
+    /**
+     * The original single keyword match.
+     */
+    private static int[] referenceMatchKeyword(Iterable<String> keywords, String s, String[] label)
+    {
+        NormalisedString ns = new NormalisedString(s);
+
+        int[] m = null;
+
+        for (String k : keywords) {
+            NormalisedString nls = new NormalisedString(k);
+
+            if (nls.toString().length() == 0)
+                continue;
+
+            if (ns.toString().startsWith(nls.toString())) {
+                int origMatchAmount = ns.getOriginalPosition(nls.toString().length());
+                int start = ns.getOriginalPosition(0);
+                if ((m == null) || (origMatchAmount > m[1] - m[0])) {
+                    m = new int[] {start, origMatchAmount};
+                    label[0] = k;
+                }
+            }
+        }
+
+        return m;
+    }
+
+    /**
+     * The original run of keywords, stopping where that would have
+     * looped forever.
+     */
+    private static String referenceMatchKeywords(Iterable<String> keywords, String string)
+    {
+        int start = 0, end = 0;
+        StringBuffer sb = new StringBuffer();
+
+        String[] label = new String[1];
+        int[] m;
+
+        do {
+            m = referenceMatchKeyword(keywords, string, label);
+
+            if (m != null) {
+                if (m[1] == 0)
+                    break;
+
+                if (end > 0) {
+                    sb.append(" ");
+                } else {
+                    start = m[0];
+                }
+                end += m[1];
+                sb.append(label[0]);
+
+                string = string.substring(m[1]);
+            }
+        } while (m != null);
+
+        return start + "-" + end + ":" + sb;
+    }
+
+    private static String describe(Matching<URI> m)
+    {
+        return m.start + "-" + m.end + ":" + m.realString;
+    }
+
+    @Test
+    public void singleKeyword() throws Exception
+    {
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(new SimpleSeriesData(),
+                TestFilenameProcessor.kw("HD", "HDTV", "x264"));
+
+        assertEquals("1-5:HDTV", describe(fp.matchKeyword(" HDTV.x264")));
+        assertNull(fp.matchKeyword("720p"));
+    }
+
+    @Test
+    public void runOfKeywords() throws Exception
+    {
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(new SimpleSeriesData(),
+                TestFilenameProcessor.kw("HD", "HDTV", "x264", "Web-DL"));
+
+        assertEquals("3-19:HDTV x264 Web-DL", describe(fp.matchKeywords(" - HDTV.x264 web dl - Title")));
+        assertEquals("0-0:", describe(fp.matchKeywords("Title")));
+    }
+
+    @Test
+    public void ampersandsAreExpandedAgain() throws Exception
+    {
+        FileNamingData fnd = TestFilenameProcessor.kw("hda", "and more");
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(new SimpleSeriesData(), fnd);
+        List<String> keywords = keywords(fnd);
+
+        String s = "hd&more";
+        assertEquals(referenceMatchKeywords(keywords, s), describe(fp.matchKeywords(s)));
+    }
+
+    @Test
+    public void keywordsWithinAndDoNotLoopForever() throws Exception
+    {
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(new SimpleSeriesData(),
+                TestFilenameProcessor.kw("a"));
+
+        assertEquals("0-0:", describe(fp.matchKeywords("& rest")));
+    }
+
+    @Test
+    public void randomKeywordsMatchReference() throws Exception
+    {
+        String[] pieces = {
+            "hd", "tv", "HD", "x", "264", "web", "dl", "&", "and", "a", "n", "d",
+            " ", ".", " - ", "-", "_", "720p", "p"
+        };
+
+        Random r = new Random(0);
+
+        for (int round = 0; round < 2000; round++) {
+            String[] kws = new String[1 + r.nextInt(6)];
+            for (int i = 0; i < kws.length; i++) {
+                StringBuilder sb = new StringBuilder();
+                int n = 1 + r.nextInt(3);
+                for (int j = 0; j < n; j++) {
+                    sb.append(pieces[r.nextInt(pieces.length)]);
+                }
+                kws[i] = sb.toString();
+            }
+
+            FileNamingData fnd = TestFilenameProcessor.kw(kws);
+            FilenameProcessor<URI> fp = new FilenameProcessor<URI>(new SimpleSeriesData(), fnd);
+            List<String> keywords = keywords(fnd);
+
+            for (int t = 0; t < 10; t++) {
+                StringBuilder sb = new StringBuilder();
+                int n = r.nextInt(10);
+                for (int j = 0; j < n; j++) {
+                    sb.append(pieces[r.nextInt(pieces.length)]);
+                }
+                String s = sb.toString();
+
+                assertEquals(keywords + " " + s,
+                        referenceMatchKeywords(keywords, s), describe(fp.matchKeywords(s)));
+
+                String[] label = new String[1];
+                int[] m = referenceMatchKeyword(keywords, s, label);
+                Matching<URI> mk = fp.matchKeyword(s);
+                if (m == null) {
+                    assertNull(mk);
+                } else {
+                    assertEquals(keywords + " " + s,
+                            m[0] + "-" + m[1] + ":" + label[0], describe(mk));
+                }
+            }
+        }
+    }
+}
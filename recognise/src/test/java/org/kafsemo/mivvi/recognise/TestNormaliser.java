@@ -0,0 +1,181 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author joe
+ */
+public class TestNormaliser
+{
+    /**
+     * The original normalisation, kept as a reference.
+     */
+    private static String referenceNormalise(String s, int[] origPos)
+    {
+        char[] ca = s.toCharArray();
+        StringBuffer sb = new StringBuffer(ca.length);
+
+        int lastRealChar = -1;
+
+        boolean needsSpace = false;
+
+        int i = 0;
+        while (i < ca.length) {
+            char c = ca[i];
+
+            if (Character.isLetterOrDigit(c) || (c == '&')) {
+                if (needsSpace) {
+                    if (sb.length() > 0) {
+                        sb.append(' ');
+                    }
+                    needsSpace = false;
+                }
+                if (c == '&') {
+                    for (int x = 0; x < 3; x++)
+                        origPos[sb.length() + x] = i;
+                    sb.append("and");
+                } else {
+                    origPos[sb.length()] = i;
+                    sb.append(Character.toLowerCase(c));
+                }
+                lastRealChar = i;
+            } else if (!needsSpace) {
+                origPos[sb.length()] = i;
+                needsSpace = true;
+            }
+            i++;
+        }
+
+        origPos[sb.length()] = lastRealChar + 1;
+
+        return sb.toString();
+    }
+
+    private static void assertSameAsReference(Normaliser n, String s)
+    {
+        int[] expectedPos = new int[s.length() * 3 + 1];
+        String expected = referenceNormalise(s, expectedPos);
+
+        n.normalise(s);
+
+        assertEquals(expected, n.toString());
+        assertEquals(expected.length(), n.length());
+
+        for (int i = 0; i <= expected.length(); i++) {
+            assertEquals(s + " @ " + i, expectedPos[i], n.getOriginalPosition(i));
+        }
+
+        NormalisedString ns = new NormalisedString(s);
+        assertEquals(expected, ns.toString());
+        for (int i = 0; i < expectedPos.length; i++) {
+            assertEquals(expectedPos[i], ns.getOriginalPosition(i));
+        }
+    }
+
+    @Test
+    public void examplesMatchReference()
+    {
+        Normaliser n = new Normaliser(1);
+
+        String[] examples = {
+            "", " ", "test", "this..is.a.test.", " - 1 ", "ab c", "a  b",
+            "  a", "&", "Law & Order", "&&", "a&b", " &", "& ", "Ünïcödé Shöw",
+            "Example.Show.S01E02.720p", "!!!", "x"
+        };
+
+        for (String s : examples) {
+            assertSameAsReference(n, s);
+        }
+    }
+
+    @Test
+    public void randomStringsMatchReference()
+    {
+        Normaliser n = new Normaliser();
+
+        char[] alphabet = {'a', 'B', '1', ' ', '.', '-', '&', '_', 'é', 'Ж', '\t'};
+
+        Random r = new Random(0);
+
+        for (int round = 0; round < 5000; round++) {
+            int l = r.nextInt(30);
+
+            StringBuilder sb = new StringBuilder(l);
+            for (int i = 0; i < l; i++) {
+                sb.append(alphabet[r.nextInt(alphabet.length)]);
+            }
+
+            assertSameAsReference(n, sb.toString());
+        }
+    }
+
+    @Test
+    public void charSequenceView()
+    {
+        Normaliser n = new Normaliser().normalise("Law & Order.");
+
+        assertEquals('l', n.charAt(0));
+        assertEquals("and", n.subSequence(4, 7).toString());
+        assertTrue(n.startsWith("law and"));
+        assertFalse(n.startsWith("law and order and more"));
+        assertFalse(n.startsWith("lawn"));
+    }
+
+    @Test(expected = IndexOutOfBoundsException.class)
+    public void charAtPastEndFails()
+    {
+        new Normaliser().normalise("a").charAt(1);
+    }
+
+    @Test
+    public void blankStrings()
+    {
+        assertTrue(Normaliser.isBlank(""));
+        assertTrue(Normaliser.isBlank(" .-_ "));
+        assertFalse(Normaliser.isBlank(" & "));
+        assertFalse(Normaliser.isBlank("-1-"));
+    }
+
+    @Test
+    public void eachThreadHasItsOwn() throws Exception
+    {
+        final Normaliser[] other = new Normaliser[1];
+
+        Thread t = new Thread() {
+            public void run()
+            {
+                other[0] = Normaliser.forThread();
+            }
+        };
+        t.start();
+        t.join();
+
+        assertSame(Normaliser.forThread(), Normaliser.forThread());
+        assertFalse(other[0] == Normaliser.forThread());
+    }
+}
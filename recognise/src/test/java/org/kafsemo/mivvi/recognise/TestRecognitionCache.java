@@ -0,0 +1,134 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.net.URI;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleFileNamingData;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+public class TestRecognitionCache
+{
+    private SimpleSeriesData ssd;
+    private FilenameProcessor<URI> fp;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ssd = new SimpleSeriesData();
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-example.txt");
+
+        fp = new FilenameProcessor<URI>(ssd, new SimpleFileNamingData());
+    }
+
+    @Test
+    public void repeatedNamesAreHits() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 10);
+
+        FilenameMatch<URI> m = c.processName("Example Show - 1x01");
+        assertNotNull(m);
+        assertEquals(0, c.getHitCount());
+        assertEquals(1, c.getMissCount());
+
+        assertSame(m, c.processName("Example Show - 1x01"));
+        assertEquals(1, c.getHitCount());
+        assertEquals(1, c.getMissCount());
+    }
+
+    @Test
+    public void unrecognisedNamesAreCached() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 10);
+
+        assertNull(c.processName("Unknown Show - 1x01"));
+        assertNull(c.processName("Unknown Show - 1x01"));
+        assertEquals(1, c.getHitCount());
+        assertEquals(1, c.size());
+    }
+
+    @Test
+    public void namesDifferingOnlyInPunctuationAreSeparate() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 10);
+
+        c.processName("Example Show - 1x01");
+        c.processName("Example.Show.1x01");
+        assertEquals(0, c.getHitCount());
+        assertEquals(2, c.size());
+    }
+
+    @Test
+    public void directorySeriesIsPartOfTheKey() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 10);
+
+        assertNull(c.processName("1x01"));
+        assertNotNull(c.processName("1x01", new URI("http://www.example.com/#")));
+        assertEquals(0, c.getHitCount());
+    }
+
+    @Test
+    public void leastRecentlyUsedIsEvicted() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 2);
+
+        c.processName("Example Show - 1x01");
+        c.processName("Example Show - 1x02");
+        c.processName("Example Show - 1x01");
+        c.processName("Example Show - 2x01");
+        assertEquals(2, c.size());
+
+        assertEquals(1, c.getHitCount());
+        c.processName("Example Show - 1x01");
+        assertEquals(2, c.getHitCount());
+        c.processName("Example Show - 1x02");
+        assertEquals(2, c.getHitCount());
+    }
+
+    @Test
+    public void changedDataInvalidatesResults() throws Exception
+    {
+        RecognitionCache<URI> c = new RecognitionCache<URI>(fp, 10);
+
+        assertNull(c.processName("Documentary - Episode About Example Show"));
+
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-documentary.txt");
+        fp.seriesDataChanged();
+
+        FilenameMatch<URI> m = c.processName("Documentary - Episode About Example Show");
+        assertNotNull(m);
+        assertEquals(new URI("http://www.example.com/doc/1/1#"), m.episode);
+        assertEquals(0, c.getHitCount());
+        assertEquals(1, c.size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void sizeMustBePositive()
+    {
+        new RecognitionCache<URI>(fp, 0);
+    }
+}
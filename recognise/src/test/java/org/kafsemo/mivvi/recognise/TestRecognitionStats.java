@@ -0,0 +1,173 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+import java.io.StringReader;
+import java.net.URI;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.kafsemo.mivvi.recognise.impl.SimpleFileNamingData;
+import org.kafsemo.mivvi.recognise.impl.SimpleSeriesData;
+
+public class TestRecognitionStats
+{
+    private FilenameProcessor<URI> fp;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        SimpleSeriesData ssd = new SimpleSeriesData();
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-example.txt");
+
+        fp = new FilenameProcessor<URI>(ssd, new SimpleFileNamingData());
+    }
+
+    @Test
+    public void everyStageIsTimed() throws Exception
+    {
+        RecognitionStats stats = new RecognitionStats();
+        fp.setStats(stats);
+
+        fp.processName("Example Show - 1x01 - Named Episode");
+        fp.processName("Example Show - 1x02 - Theatre");
+
+        assertEquals(2, stats.getSeriesMatching().getCalls());
+        assertTrue(stats.getEpisodeCodes().getCalls() >= 2);
+        assertEquals(2, stats.getDateMatching().getCalls());
+        assertEquals(2, stats.getTitleScoring().getCalls());
+        assertEquals(1, stats.getSeriesDetailsLoading().getCalls());
+
+        assertTrue(stats.getLevenshteinEvaluations() > 0);
+        assertTrue(stats.getCandidatesScored() > 0);
+        assertTrue(stats.getCandidatesScored() <= stats.getLevenshteinEvaluations());
+
+        StageStatistics ss = stats.getTitleScoring();
+        assertTrue(ss.getTotalNanos() > 0);
+        assertTrue(ss.getMedianNanos() <= ss.getPercentile99Nanos());
+
+        long histogramCalls = 0;
+        for (long c : ss.getHistogram()) {
+            histogramCalls += c;
+        }
+        assertEquals(ss.getCalls(), histogramCalls);
+    }
+
+    @Test
+    public void nothingIsRecordedWhenDisabled() throws Exception
+    {
+        RecognitionStats stats = new RecognitionStats();
+        stats.setEnabled(false);
+        fp.setStats(stats);
+
+        fp.processName("Example Show - 1x01 - Named Episode");
+
+        assertEquals(0, stats.getSeriesMatching().getCalls());
+        assertEquals(0, stats.getLevenshteinEvaluations());
+
+        stats.setEnabled(true);
+        fp.processName("Example Show - 1x01 - Named Episode");
+        assertEquals(1, stats.getSeriesMatching().getCalls());
+    }
+
+    @Test
+    public void resetClearsEverything() throws Exception
+    {
+        RecognitionStats stats = new RecognitionStats();
+        fp.setStats(stats);
+
+        fp.processName("Example Show - 1x01 - Named Episode");
+        stats.reset();
+
+        assertEquals(0, stats.getSeriesMatching().getCalls());
+        assertEquals(0, stats.getSeriesMatching().getMedianNanos());
+        assertEquals(0, stats.getCandidatesScored());
+    }
+
+    @Test
+    public void percentilesComeFromTheHistogram()
+    {
+        long[] h = new long[64];
+        h[3] = 50;
+        h[10] = 49;
+        h[20] = 1;
+
+        StageStatistics ss = new StageStatistics(100, 1000, h);
+        assertEquals(15, ss.getMedianNanos());
+        assertEquals(2047, ss.getPercentile90Nanos());
+        assertEquals(2047, ss.getPercentile99Nanos());
+        assertEquals(10, ss.getMeanNanos());
+    }
+
+    @Test
+    public void statsArePublishedAsAnMXBean() throws Exception
+    {
+        RecognitionStats stats = new RecognitionStats();
+        fp.setStats(stats);
+        fp.processName("Example Show - 1x01 - Named Episode");
+
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        ObjectName on = stats.register(server, "test");
+        try {
+            CompositeData cd = (CompositeData) server.getAttribute(on, "SeriesMatching");
+            assertEquals(Long.valueOf(1), cd.get("calls"));
+
+            assertEquals(stats.getLevenshteinEvaluations(), server.getAttribute(on, "LevenshteinEvaluations"));
+        } finally {
+            server.unregisterMBean(on);
+        }
+    }
+
+    @Test
+    public void exactTitlesAreFoundWithoutScoringEveryTitle() throws Exception
+    {
+        String[] words = {"Harbour", "Orchard", "Quarry", "Junction", "Meadow",
+                "Summit", "Glacier", "Canyon", "Volcano", "Lagoon"};
+
+        StringBuilder sb = new StringBuilder("http://www.example.com/#\nExample Show\n\n");
+        int n = 0;
+        for (String a : words) {
+            for (String b : words) {
+                n++;
+                sb.append("1x" + n + " http://www.example.com/1/" + n + "# " + a + " " + b + "\n");
+            }
+        }
+
+        SimpleSeriesData ssd = new SimpleSeriesData();
+        ssd.load(new StringReader(sb.toString()));
+
+        FilenameProcessor<URI> fp = new FilenameProcessor<URI>(ssd, new SimpleFileNamingData());
+
+        RecognitionStats stats = new RecognitionStats();
+        fp.setStats(stats);
+
+        FilenameMatch<URI> m = fp.processName("Example Show - Summit Canyon");
+        assertEquals(new URI("http://www.example.com/1/58#"), m.episode);
+
+        assertTrue(stats.getLevenshteinEvaluations() < n / 2);
+    }
+}
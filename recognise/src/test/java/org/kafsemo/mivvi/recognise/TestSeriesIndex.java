@@ -0,0 +1,82 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.junit.Test;
+
+public class TestSeriesIndex
+{
+    private static SeriesIndex<String> index()
+    {
+        return new SeriesIndex<String>(
+                Arrays.asList(new Item<String>("The Example Show", "example"),
+                        new Item<String>("Three-Letter Acronym", "tla")),
+                Arrays.asList(new Item<String>("TLA", "tla")));
+    }
+
+    @Test
+    public void labelsAreInPriorityOrder()
+    {
+        SeriesIndex<String> si = index();
+
+        assertEquals(Arrays.asList(
+                new Item<String>("The Example Show", "example"),
+                new Item<String>("Three-Letter Acronym", "tla"),
+                new Item<String>("TLA", "tla"),
+                new Item<String>("Example Show", "example")),
+                si.getLabels());
+    }
+
+    @Test
+    public void labelsArePreNormalised()
+    {
+        SeriesIndex<String> si = index();
+
+        assertEquals("three letter acronym", si.getNormalisedLabel(1));
+    }
+
+    @Test
+    public void exactLookupIgnoresCase()
+    {
+        SeriesIndex<String> si = index();
+
+        assertEquals("tla", si.getSeries("tla"));
+        assertEquals("tla", si.getSeries("THREE-LETTER ACRONYM"));
+        assertEquals("example", si.getSeries("example show"));
+        assertNull(si.getSeries("three letter acronym"));
+        assertNull(si.getSeries(""));
+    }
+
+    @Test
+    public void earlierLabelsTakePriority()
+    {
+        SeriesIndex<String> si = new SeriesIndex<String>(
+                Arrays.asList(new Item<String>("Example", "first"),
+                        new Item<String>("EXAMPLE", "second")),
+                Collections.<Item<String>>emptyList());
+
+        assertEquals("first", si.getSeries("example"));
+    }
+}
@@ -18,6 +18,8 @@
 
 package org.kafsemo.mivvi.recognise;
 
+import java.util.Random;
+
 import junit.framework.TestCase;
 
 import org.kafsemo.mivvi.recognise.StringUtil;
@@ -81,6 +83,135 @@ public class TestStringUtil extends TestCase
         assertEquals(0, r.distanceWithoutSuffix);
     }
 
+    private static void assertSameResult(String a, String b)
+    {
+        LevenshteinResult expected = StringUtil.levenshteinDistance(a, b);
+        LevenshteinResult actual = StringUtil.levenshteinDistanceBitParallel(a, b);
+
+        String msg = "'" + a + "' -> '" + b + "'";
+
+        assertEquals(msg, expected.distance, actual.distance);
+        assertEquals(msg, expected.lengthWithoutSuffix, actual.lengthWithoutSuffix);
+        assertEquals(msg, expected.distanceWithoutSuffix, actual.distanceWithoutSuffix);
+    }
+
+    public void testBitParallelMatchesExamples()
+    {
+        assertSameResult("", "");
+        assertSameResult("Test", "");
+        assertSameResult("", "Test");
+        assertSameResult("pzzel", "puzzle");
+        assertSameResult("puzzle", "pzzel");
+        assertSameResult("abcd", "efgh");
+        assertSameResult("test", "testing");
+        assertSameResult("aaa", "aaaaaa");
+        assertSameResult("ab", "xa");
+        assertSameResult("bab", "abcaba");
+    }
+
+    private static String randomString(Random r, int maxLength, String alphabet)
+    {
+        int len = r.nextInt(maxLength + 1);
+
+        StringBuilder sb = new StringBuilder(len);
+        for (int i = 0; i < len; i++) {
+            sb.append(alphabet.charAt(r.nextInt(alphabet.length())));
+        }
+
+        return sb.toString();
+    }
+
+    public void testBitParallelMatchesClassicForShortStrings()
+    {
+        Random r = new Random(0);
+
+        for (int i = 0; i < 5000; i++) {
+            assertSameResult(randomString(r, 12, "abc "), randomString(r, 16, "abcd "));
+        }
+    }
+
+    public void testBitParallelMatchesClassicAcrossBlocks()
+    {
+        Random r = new Random(1);
+
+        for (int i = 0; i < 500; i++) {
+            assertSameResult(randomString(r, 200, "ab \u00e9\u4e00"), randomString(r, 200, "abc \u00e9\u4e00"));
+        }
+    }
+
+    public void testBitParallelAtBlockBoundaries()
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 130; i++) {
+            sb.append((char) ('a' + (i % 7)));
+        }
+
+        String s = sb.toString();
+
+        for (int len : new int[] {63, 64, 65, 127, 128, 129}) {
+            assertSameResult(s.substring(0, len), s);
+            assertSameResult(s, s.substring(0, len));
+            assertSameResult(s.substring(0, len), "x" + s.substring(1, len) + "yy");
+        }
+    }
+
+    private static void assertSameBoundedResult(String a, String b, int k)
+    {
+        LevenshteinResult expected = StringUtil.levenshteinDistance(a, b);
+        LevenshteinResult actual = StringUtil.levenshteinDistanceBounded(a, b, k);
+
+        String msg = "'" + a + "' -> '" + b + "' within " + k;
+
+        if (expected.distanceWithoutSuffix > k) {
+            assertNull(msg, actual);
+        } else {
+            assertNotNull(msg, actual);
+            assertEquals(msg, expected.distance, actual.distance);
+            assertEquals(msg, expected.lengthWithoutSuffix, actual.lengthWithoutSuffix);
+            assertEquals(msg, expected.distanceWithoutSuffix, actual.distanceWithoutSuffix);
+        }
+    }
+
+    public void testBoundedReportsOverThreshold()
+    {
+        assertNull(StringUtil.levenshteinDistanceBounded("abcd", "efgh", 3));
+        assertNotNull(StringUtil.levenshteinDistanceBounded("abcd", "efgh", 4));
+        assertNull(StringUtil.levenshteinDistanceBounded("test", "test", -1));
+    }
+
+    public void testBoundedKeepsSuffix()
+    {
+        LevenshteinResult r = StringUtil.levenshteinDistanceBounded("test", "testing", 0);
+
+        assertNotNull(r);
+        assertEquals(3, r.distance);
+        assertEquals(4, r.lengthWithoutSuffix);
+        assertEquals(0, r.distanceWithoutSuffix);
+    }
+
+    /**
+     * The last decrease in cost is beyond the band, so the distance
+     * without suffix is over the bound, despite an earlier decrease
+     * within it.
+     */
+    public void testBoundedUsesLastDecrease()
+    {
+        assertSameBoundedResult("bab", "abcaba", 1);
+    }
+
+    public void testBoundedMatchesClassic()
+    {
+        Random r = new Random(2);
+
+        for (int i = 0; i < 5000; i++) {
+            String a = randomString(r, 10, "ab "), b = randomString(r, 16, "abc ");
+
+            for (int k = 0; k <= a.length() + 1; k++) {
+                assertSameBoundedResult(a, b, k);
+            }
+        }
+    }
+
     private static final boolean isNumeric(float f)
     {
         return !Float.isInfinite(f) && !Float.isNaN(f);
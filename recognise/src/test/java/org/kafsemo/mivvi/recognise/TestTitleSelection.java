@@ -0,0 +1,114 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * Check that selecting the best few matches gives the same answer as
+ * sorting them all.
+ *
+ * @author joe
+ */
+public class TestTitleSelection
+{
+    @Test(expected = IllegalArgumentException.class)
+    public void limitMustBePositive()
+    {
+        new TitleSelection<URI>(TitleMatching.MATCHING_COMPARATOR, 0);
+    }
+
+    @Test
+    public void emptySelection()
+    {
+        TitleSelection<URI> sel = new TitleSelection<URI>(TitleMatching.MATCHING_COMPARATOR, 3);
+
+        assertTrue(sel.isEmpty());
+        assertNull(sel.best());
+        assertEquals(Collections.emptyList(), sel.toList());
+    }
+
+    @Test
+    public void equalMatchesKeepTheirOrder() throws Exception
+    {
+        URI r = new URI("http://www.example.com/#1");
+
+        TitleMatching<URI> tm1 = new TitleMatching<URI>("", 0, 0, "", r, false, false, 0),
+            tm2 = new TitleMatching<URI>("", 0, 0, "", r, false, false, 0);
+
+        TitleSelection<URI> sel = new TitleSelection<URI>(TitleMatching.MATCHING_COMPARATOR, 1);
+        sel.offer(tm1);
+        sel.offer(tm2);
+
+        assertSame(tm1, sel.best());
+    }
+
+    @Test
+    public void randomSelectionsMatchSorting() throws Exception
+    {
+        URI[] resources = new URI[4];
+        for (int i = 0; i < resources.length; i++) {
+            resources[i] = new URI("http://www.example.com/#" + i);
+        }
+
+        Comparator<TitleMatching<?>> order = TitleMatching.episodePriorityComparator(
+                Collections.singleton(resources[0]));
+
+        Random r = new Random(0);
+
+        for (int round = 0; round < 1000; round++) {
+            List<TitleMatching<URI>> all = new ArrayList<TitleMatching<URI>>();
+
+            int n = r.nextInt(20);
+            for (int i = 0; i < n; i++) {
+                all.add(new TitleMatching<URI>("", 0, r.nextInt(3), "",
+                        resources[r.nextInt(resources.length)],
+                        r.nextBoolean(), r.nextBoolean(), r.nextInt(3)));
+            }
+
+            int limit = 1 + r.nextInt(5);
+
+            TitleSelection<URI> sel = new TitleSelection<URI>(order, limit);
+            for (TitleMatching<URI> tm : all) {
+                sel.offer(tm);
+            }
+
+            List<TitleMatching<URI>> sorted = new ArrayList<TitleMatching<URI>>(all);
+            Collections.sort(sorted, order);
+
+            List<TitleMatching<URI>> expected = sorted.subList(0, Math.min(limit, sorted.size()));
+
+            assertEquals(expected, sel.toList());
+            assertSame(sorted.isEmpty() ? null : sorted.get(0), sel.best());
+        }
+    }
+}
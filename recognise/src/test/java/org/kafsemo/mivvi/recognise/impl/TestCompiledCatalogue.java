@@ -0,0 +1,189 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+
+package org.kafsemo.mivvi.recognise.impl;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kafsemo.mivvi.recognise.FileNamingData;
+import org.kafsemo.mivvi.recognise.FilenameMatch;
+import org.kafsemo.mivvi.recognise.FilenameProcessor;
+import org.kafsemo.mivvi.recognise.Item;
+import org.kafsemo.mivvi.recognise.SeriesDataException;
+import org.kafsemo.mivvi.recognise.SeriesDetails;
+import org.kafsemo.mivvi.recognise.TestFilenameProcessor;
+
+/**
+ * @author joe
+ */
+public class TestCompiledCatalogue
+{
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String[] NAMES = {
+        "Example Show - 1x01 - Named Episode",
+        "Example Show - 1x02 - Theatre",
+        "example.show.s02e01.hdtv",
+        "Example Show - Alternate Title",
+        "TLA - Named Episode",
+        "Three-Letter Acronym - 1x1",
+        "Documentary - Episode About Example Show",
+        "Unknown Show - 1x01"
+    };
+
+    private SimpleSeriesData ssd;
+    private FileNamingData fnd;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        ssd = new SimpleSeriesData();
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-with-alternates-example.txt");
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-named-episode-tla.txt");
+        ssd.load(TestFilenameProcessor.class, "TestFilenameProcessor-documentary.txt");
+
+        fnd = TestFilenameProcessor.kw("HDTV", "x264");
+    }
+
+    private CompiledCatalogue<URI> compile() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledCatalogueWriter<URI>(IdentifierCodec.URIS).write(ssd, fnd, out);
+
+        return new CompiledCatalogue<URI>(ByteBuffer.wrap(out.toByteArray()), IdentifierCodec.URIS);
+    }
+
+    @Test
+    public void seriesAndKeywordsRoundTrip() throws Exception
+    {
+        CompiledCatalogue<URI> cc = compile();
+
+        assertEquals(new ArrayList<Item<URI>>(ssd.getSeriesTitles()), cc.getSeriesTitles());
+        assertEquals(new ArrayList<Item<URI>>(ssd.getSeriesDescriptions()), cc.getSeriesDescriptions());
+
+        HashSet<String> keywords = new HashSet<String>();
+        for (String k : cc.getKeywords()) {
+            keywords.add(k);
+        }
+        assertEquals(fnd.getKeywords(), keywords);
+
+        assertEquals(3, cc.getSeriesCount());
+    }
+
+    @Test
+    public void detailsRoundTrip() throws Exception
+    {
+        CompiledCatalogue<URI> cc = compile();
+
+        for (Item<URI> i : ssd.getSeriesTitles()) {
+            SeriesDetails<URI> expected = ssd.getSeriesDetails(i.resource),
+                actual = cc.getSeriesDetails(i.resource);
+
+            assertEquals(expected.episodeTitlesAndDescriptions, actual.episodeTitlesAndDescriptions);
+            assertEquals(new HashMap<String, URI>(expected.episodesByNumber),
+                    new HashMap<String, URI>(actual.episodesByNumber));
+
+            for (int j = 0; j < actual.getTitleIndex().size(); j++) {
+                assertEquals(expected.getTitleIndex().getNormalisedTitle(j),
+                        actual.getTitleIndex().getNormalisedTitle(j));
+            }
+        }
+
+        assertNull(cc.getSeriesDetails(URI.create("http://www.example.com/unknown/#")));
+    }
+
+    @Test
+    public void recognitionIsUnchanged() throws Exception
+    {
+        File f = folder.newFile("catalogue.bin");
+        new CompiledCatalogueWriter<URI>(IdentifierCodec.URIS).write(ssd, fnd, f);
+
+        CompiledCatalogue<URI> cc = CompiledCatalogue.open(f, IdentifierCodec.URIS);
+
+        FilenameProcessor<URI> expected = new FilenameProcessor<URI>(ssd, fnd),
+            actual = new FilenameProcessor<URI>(cc, cc);
+
+        List<URI> recognised = new ArrayList<URI>();
+
+        for (String n : NAMES) {
+            FilenameMatch<URI> e = expected.processName(n), a = actual.processName(n);
+
+            if (e == null) {
+                assertNull(n, a);
+            } else {
+                assertEquals(n, e.episode, a.episode);
+                assertEquals(n, e.isExact, a.isExact);
+                recognised.add(a.episode);
+            }
+        }
+
+        assertEquals(NAMES.length - 1, recognised.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void otherDataIsRejected() throws Exception
+    {
+        new CompiledCatalogue<URI>(ByteBuffer.wrap("Not a catalogue at all, honest".getBytes("us-ascii")),
+                IdentifierCodec.URIS);
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedCataloguesAreRejected() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledCatalogueWriter<URI>(IdentifierCodec.URIS).write(ssd, fnd, out);
+
+        byte[] b = out.toByteArray();
+
+        new CompiledCatalogue<URI>(ByteBuffer.wrap(b, 0, b.length - 1).slice(), IdentifierCodec.URIS);
+    }
+
+    @Test(expected = SeriesDataException.class)
+    public void corruptStringOffsetsAreRejected() throws Exception
+    {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new CompiledCatalogueWriter<URI>(IdentifierCodec.URIS).write(ssd, fnd, out);
+
+        ByteBuffer b = ByteBuffer.wrap(out.toByteArray());
+
+        /* Every string but the last now runs off the end */
+        int stringCount = b.getInt(8);
+        for (int i = 0; i < stringCount - 1; i++) {
+            b.putInt(CompiledCatalogue.HEADER_INTS * 4 + 4 * i, Integer.MAX_VALUE);
+        }
+
+        new CompiledCatalogue<URI>(b, IdentifierCodec.URIS).getSeriesTitles();
+    }
+}
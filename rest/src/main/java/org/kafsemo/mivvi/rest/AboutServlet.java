@@ -45,11 +45,7 @@ public class AboutServlet extends MivviBaseServlet
     {
         super.init(config);
 
-        try {
-            pres = new Presentation(rep.getConnection());
-        } catch (RepositoryException e) {
-            throw new ServletException(e);
-        }
+        pres = new Presentation(cn);
     }
 
     @Override
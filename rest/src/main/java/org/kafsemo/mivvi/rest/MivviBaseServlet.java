@@ -18,68 +18,78 @@
 
 package org.kafsemo.mivvi.rest;
 
-import java.io.File;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.util.Collection;
 
 import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletResponse;
 
 import org.eclipse.rdf4j.model.Model;
 import org.eclipse.rdf4j.model.Statement;
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryConnection;
 import org.eclipse.rdf4j.repository.RepositoryException;
-import org.eclipse.rdf4j.repository.sail.SailRepository;
 import org.eclipse.rdf4j.rio.RDFHandlerException;
-import org.eclipse.rdf4j.rio.RDFParseException;
 import org.eclipse.rdf4j.rio.rdfxml.util.RDFXMLPrettyWriter;
-import org.eclipse.rdf4j.sail.SailException;
-import org.eclipse.rdf4j.sail.memory.MemoryStore;
-import org.kafsemo.mivvi.app.FileUtil;
 import org.kafsemo.mivvi.app.SeriesData;
 import org.kafsemo.mivvi.rdf.Mivvi;
 import org.kafsemo.mivvi.rdf.RdfUtil;
 
+/**
+ * The shared parts of the Mivvi servlets. The series data is loaded once
+ * for the application by {@link MivviContextListener}; each servlet only
+ * takes its own connection to the repository.
+ *
+ * @author joe
+ */
 public class MivviBaseServlet extends HttpServlet
 {
-    SailRepository rep;
+    Repository rep;
     SeriesData sd;
 
+    /* This servlet's own connection */
+    RepositoryConnection cn;
+
     @Override
     public void init(ServletConfig config) throws ServletException
     {
         super.init(config);
 
-        String dataPath = config.getServletContext().getInitParameter("mivviDataPath");
+        ServletContext ctx = config.getServletContext();
+
+        this.rep = (Repository) ctx.getAttribute(MivviContextListener.REPOSITORY);
+        this.sd = (SeriesData) ctx.getAttribute(MivviContextListener.SERIES_DATA);
+
+        if (rep == null || sd == null) {
+            throw new ServletException("No Mivvi data loaded; is "
+                    + MivviContextListener.class.getName() + " configured as a listener?");
+        }
 
         try {
-            MemoryStore ms = new MemoryStore();
-            ms.initialize();
-            rep = new SailRepository(ms);
-            this.sd = new SeriesData();
-            sd.initMviRepository(rep);
-
-            File base = new File(dataPath);
-
-            Collection<File> fns = FileUtil.gatherFilenames(base);
-            for (File f : fns) {
-                if (f.getName().endsWith(".rdf")) {
-                    sd.importMivvi(f);
-                }
-            }
-        } catch (SailException e) {
-            throw new ServletException(e);
+            cn = rep.getConnection();
         } catch (RepositoryException e) {
             throw new ServletException(e);
-        } catch (RDFParseException e) {
-            throw new ServletException(e);
-        } catch (IOException e) {
-            throw new ServletException(e);
         }
     }
 
+    @Override
+    public void destroy()
+    {
+        try {
+            if (cn != null) {
+                cn.close();
+                cn = null;
+            }
+        } catch (RepositoryException e) {
+            log("Unable to close repository connection", e);
+        }
+
+        super.destroy();
+    }
+
     void writeGraphAsRdfXml(Model g, HttpServletResponse resp)
         throws IOException, RDFHandlerException
     {
@@ -0,0 +1,151 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.rest;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+import javax.servlet.ServletContextListener;
+
+import org.eclipse.rdf4j.repository.Repository;
+import org.eclipse.rdf4j.repository.RepositoryException;
+import org.eclipse.rdf4j.repository.sail.SailRepository;
+import org.eclipse.rdf4j.rio.RDFParseException;
+import org.eclipse.rdf4j.sail.memory.MemoryStore;
+import org.kafsemo.mivvi.app.FileUtil;
+import org.kafsemo.mivvi.app.SeriesData;
+
+/**
+ * Loads the Mivvi data once for the whole web application, so that every
+ * servlet shares one repository. A repository kept on disk can only be
+ * opened once at a time, and is shut down again when the application is.
+ *
+ * @author joe
+ */
+public class MivviContextListener implements ServletContextListener
+{
+    static final String REPOSITORY = MivviContextListener.class.getName() + ".repository";
+    static final String SERIES_DATA = MivviContextListener.class.getName() + ".seriesData";
+
+    public void contextInitialized(ServletContextEvent sce)
+    {
+        ServletContext ctx = sce.getServletContext();
+
+        String dataPath = ctx.getInitParameter("mivviDataPath");
+
+        /* Optional; keep series data on disk between restarts */
+        String repositoryPath = ctx.getInitParameter("mivviRepositoryPath");
+
+        Repository rep;
+
+        try {
+            if (repositoryPath != null && !repositoryPath.equals("")) {
+                rep = SeriesData.createNativeRepository(new File(repositoryPath));
+            } else {
+                rep = new SailRepository(new MemoryStore());
+                rep.initialize();
+            }
+        } catch (RepositoryException e) {
+            throw new RuntimeException("Unable to open the Mivvi repository", e);
+        }
+
+        SeriesData sd = new SeriesData();
+        boolean opened = false, loaded = false;
+
+        try {
+            if (repositoryPath != null && !repositoryPath.equals("")) {
+                sd.setSourceHashFile(new File(repositoryPath, "sources.properties"));
+            }
+
+            sd.initMviRepository(rep);
+            opened = true;
+
+            importAll(sd, new File(dataPath));
+
+            ctx.setAttribute(REPOSITORY, rep);
+            ctx.setAttribute(SERIES_DATA, sd);
+            loaded = true;
+        } catch (RepositoryException e) {
+            throw new RuntimeException("Unable to load Mivvi data", e);
+        } catch (RDFParseException e) {
+            throw new RuntimeException("Unable to load Mivvi data", e);
+        } catch (IOException e) {
+            throw new RuntimeException("Unable to load Mivvi data", e);
+        } finally {
+            if (!loaded) {
+                close(ctx, opened ? sd : null, rep);
+            }
+        }
+    }
+
+    private static void importAll(SeriesData sd, File base)
+        throws IOException, RDFParseException, RepositoryException
+    {
+        List<String> urls = new ArrayList<String>();
+
+        Collection<File> fns = FileUtil.gatherFilenames(base);
+        for (File f : fns) {
+            if (f.getName().endsWith(".rdf")) {
+                urls.add(f.toURI().toString());
+            }
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors());
+        try {
+            sd.importMivvi(urls, executor, null);
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    public void contextDestroyed(ServletContextEvent sce)
+    {
+        ServletContext ctx = sce.getServletContext();
+
+        SeriesData sd = (SeriesData) ctx.getAttribute(SERIES_DATA);
+        Repository rep = (Repository) ctx.getAttribute(REPOSITORY);
+
+        ctx.removeAttribute(SERIES_DATA);
+        ctx.removeAttribute(REPOSITORY);
+
+        close(ctx, sd, rep);
+    }
+
+    private static void close(ServletContext ctx, SeriesData sd, Repository rep)
+    {
+        try {
+            if (sd != null) {
+                sd.closeMviRepository();
+            }
+        } catch (RepositoryException e) {
+            ctx.log("Unable to close Mivvi series data", e);
+        } finally {
+            if (rep != null) {
+                rep.shutDown();
+            }
+        }
+    }
+}
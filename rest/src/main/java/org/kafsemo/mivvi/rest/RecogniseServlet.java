@@ -49,11 +49,7 @@ public class RecogniseServlet extends MivviBaseServlet
     {
         super.init(config);
 
-        try {
-            pres = new Presentation(rep.getConnection());
-        } catch (RepositoryException e) {
-            throw new ServletException(e);
-        }
+        pres = new Presentation(cn);
     }
 
     @Override
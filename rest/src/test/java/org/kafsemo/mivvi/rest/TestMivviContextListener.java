@@ -0,0 +1,116 @@
+/*
+ * Mivvi - Metadata, organisation and identification for television programs
+ * Copyright © 2004-2016 Joseph Walton
+ *
+ * This library is free software: you can redistribute it and/or
+ * modify it under the terms of the GNU Lesser General Public
+ * License as published by the Free Software Foundation, either
+ * version 3 of the License, or (at your option) any later version.
+ *
+ * This library is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this library.  If not, see <https://www.gnu.org/licenses/>.
+ */
+
+package org.kafsemo.mivvi.rest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletContext;
+import javax.servlet.ServletContextEvent;
+
+import org.eclipse.rdf4j.model.impl.SimpleValueFactory;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.kafsemo.mivvi.app.SeriesData;
+
+public class TestMivviContextListener
+{
+    private static final String EXAMPLE =
+        "<rdf:RDF xmlns:rdf='http://www.w3.org/1999/02/22-rdf-syntax-ns#'"
+        + " xmlns:mvi='http://mivvi.net/rdf#' xmlns:dc='http://purl.org/dc/elements/1.1/'>"
+        + "<mvi:Series rdf:about='http://www.example.com/#' dc:title='Example Show'/>"
+        + "</rdf:RDF>";
+
+    @Rule
+    public TemporaryFolder tmp = new TemporaryFolder();
+
+    /**
+     * A servlet context with nothing but init parameters and attributes.
+     */
+    private static ServletContext context(final Map<String, String> params)
+    {
+        final Map<String, Object> attributes = new HashMap<String, Object>();
+
+        InvocationHandler h = new InvocationHandler() {
+            public Object invoke(Object proxy, Method m, Object[] args)
+            {
+                String n = m.getName();
+
+                if (n.equals("getInitParameter")) {
+                    return params.get(args[0]);
+                } else if (n.equals("getAttribute")) {
+                    return attributes.get(args[0]);
+                } else if (n.equals("setAttribute")) {
+                    attributes.put((String) args[0], args[1]);
+                } else if (n.equals("removeAttribute")) {
+                    attributes.remove(args[0]);
+                }
+
+                return null;
+            }
+        };
+
+        return (ServletContext) Proxy.newProxyInstance(TestMivviContextListener.class.getClassLoader(),
+                new Class<?>[] {ServletContext.class}, h);
+    }
+
+    @Test
+    public void repositoryOnDiskCanBeReopenedAfterShutdown() throws Exception
+    {
+        File data = tmp.newFolder("data");
+        OutputStream out = new FileOutputStream(new File(data, "example.rdf"));
+        try {
+            out.write(EXAMPLE.getBytes("utf-8"));
+        } finally {
+            out.close();
+        }
+
+        Map<String, String> params = new HashMap<String, String>();
+        params.put("mivviDataPath", data.getPath());
+        params.put("mivviRepositoryPath", tmp.newFolder("repository").getPath());
+
+        for (int i = 0; i < 2; i++) {
+            ServletContext ctx = context(params);
+            MivviContextListener l = new MivviContextListener();
+
+            l.contextInitialized(new ServletContextEvent(ctx));
+
+            SeriesData sd = (SeriesData) ctx.getAttribute(MivviContextListener.SERIES_DATA);
+            assertNotNull(sd);
+            assertNotNull(ctx.getAttribute(MivviContextListener.REPOSITORY));
+            assertEquals(SimpleValueFactory.getInstance().createIRI("http://www.example.com/#"),
+                    sd.getSeries("Example Show"));
+
+            l.contextDestroyed(new ServletContextEvent(ctx));
+
+            assertNull(ctx.getAttribute(MivviContextListener.SERIES_DATA));
+        }
+    }
+}